@@ -0,0 +1,43 @@
+#!/usr/bin/env bash
+# Gera o arquivo de CDS (class data sharing) da estação e mede o ganho na partida.
+#
+# Uso: cds/gerar-cds.sh [repeticoes]
+#
+# 1. compila src/ e empacota em out/lumepath.jar (o CDS só arquiva classes vindas de JAR);
+# 2. executa MedicaoPartida --treino com -XX:ArchiveClassesAtExit, gerando out/lumepath.jsa
+#    com as classes da JDK e da aplicação carregadas na partida real do Main (estação, journal
+#    e trilha de auditoria) e em uma sessão completa;
+# 3. compara o tempo de partida, até o primeiro diálogo e até a primeira leitura com e sem o arquivo.
+#
+# Rode com a mesma JDK usada pelas estações: o .jsa só vale para a JVM que o gerou.
+# Com tela disponível (DISPLAY), o treino também carrega as classes Swing do primeiro diálogo.
+set -euo pipefail
+
+RAIZ="$(cd "$(dirname "$0")/.." && pwd)"
+SAIDA="$RAIZ/out"
+CLASSES="$SAIDA/cds-classes"
+JAR="$SAIDA/lumepath.jar"
+ARQUIVO="$SAIDA/lumepath.jsa"
+REPETICOES="${1:-5}"
+
+rm -rf "$CLASSES"
+mkdir -p "$CLASSES"
+find "$RAIZ/src" -name '*.java' > "$SAIDA/fontes.txt"
+javac -encoding UTF-8 -d "$CLASSES" @"$SAIDA/fontes.txt"
+jar --create --file "$JAR" --main-class br.com.lumepath.main.Main -C "$CLASSES" .
+
+rm -f "$ARQUIVO"
+java -XX:ArchiveClassesAtExit="$ARQUIVO" -cp "$JAR" br.com.lumepath.main.MedicaoPartida --treino > /dev/null
+echo "Arquivo gerado: $ARQUIVO"
+
+medir() {
+    for _ in $(seq "$REPETICOES"); do
+        java "$@" -Dlumepath.inicio="$(date +%s%3N)" -cp "$JAR" br.com.lumepath.main.MedicaoPartida | tr '\n' ' '
+        echo
+    done
+}
+
+echo "Sem CDS da aplicação:"
+medir -Xshare:auto
+echo "Com $ARQUIVO:"
+medir -XX:SharedArchiveFile="$ARQUIVO"
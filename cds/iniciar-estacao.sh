@@ -0,0 +1,24 @@
+#!/usr/bin/env bash
+# Inicia a estação usando o arquivo de CDS gerado por cds/gerar-cds.sh, se existir.
+#
+# Uso: cds/iniciar-estacao.sh [classe principal] [argumentos]
+# A classe padrão é br.com.lumepath.main.Main; use br.com.lumepath.main.Daemon para o modo sem tela.
+set -euo pipefail
+
+RAIZ="$(cd "$(dirname "$0")/.." && pwd)"
+JAR="$RAIZ/out/lumepath.jar"
+ARQUIVO="$RAIZ/out/lumepath.jsa"
+CLASSE="${1:-br.com.lumepath.main.Main}"
+shift || true
+
+# A estação com tela roda pouco código quente, e o C1 sozinho encurta a partida. O Daemon
+# processa lotes por horas e precisa do C2, então fica com a compilação completa.
+OPCOES=()
+if [ "$CLASSE" = "br.com.lumepath.main.Main" ]; then
+    OPCOES+=(-XX:TieredStopAtLevel=1)
+fi
+if [ -f "$ARQUIVO" ]; then
+    OPCOES+=(-XX:SharedArchiveFile="$ARQUIVO")
+fi
+
+exec java ${OPCOES[@]+"${OPCOES[@]}"} -cp "$JAR" "$CLASSE" "$@"
@@ -0,0 +1,123 @@
+package br.com.lumepath.codec;
+
+import br.com.lumepath.bean.Amostra;
+import br.com.lumepath.bean.AnalisePatologica;
+import br.com.lumepath.bean.PatologistaResponsavel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compara o {@link CodecBinario} com o {@link CodecJson} na gravação e na leitura de uma análise
+ * completa (com amostra e patologista), o registro mais comum no armazenamento e no journal.
+ *
+ * <p>O codec binário é medido de duas formas: com um codec novo a cada registro, como no
+ * {@code Armazenamento} e no {@code Journal}, e com o mesmo codec para um fluxo de registros,
+ * em que os textos repetidos saem do dicionário. O tamanho de cada formato é impresso na
+ * preparação.</p>
+ *
+ * <pre>
+ *     java -cp ... org.openjdk.jmh.Main CodecBenchmark -prof gc
+ * </pre>
+ *
+ * @author Ricardo
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgs = "-Djava.awt.headless=true")
+public class CodecBenchmark {
+
+    private AnalisePatologica analise;
+    private ByteBuffer buffer;
+    private ByteBuffer binario;
+    private byte[] json;
+    private CodecBinario fluxoEscrita;
+    private CodecBinario fluxoLeitura;
+    private ByteBuffer fluxo;
+    private ByteBuffer fluxoBinario;
+
+    @Setup
+    public void preparar() {
+        Amostra amostra = Amostra.restaurar(31, LocalDate.of(2024, 5, 2), "Hospital Central", "Biópsia",
+                "Pele do dorso", 12.5, 4.25, 3.0, 0.05, 0.02, 0.01);
+        PatologistaResponsavel patologista = PatologistaResponsavel.restaurar(1, "Ana Lima", "SP-123456",
+                "Dermatopatologia", "ana@lumepath.com");
+        analise = AnalisePatologica.restaurar(30, LocalDate.of(2024, 5, 6),
+                "Lesão pigmentada de bordas irregulares, com assimetria e variação de cor.",
+                "Nevo displásico", amostra, patologista);
+
+        buffer = ByteBuffer.allocate((int) CodecBinario.tamanhoMaximo(analise));
+        new CodecBinario().escreverAnalise(buffer, analise);
+        buffer.flip();
+        binario = ByteBuffer.allocate(buffer.remaining()).put(buffer);
+        binario.flip();
+        json = CodecJson.paraJson(analise);
+
+        fluxoEscrita = new CodecBinario();
+        fluxoLeitura = new CodecBinario();
+        fluxo = ByteBuffer.allocate(buffer.capacity());
+        // Primeiro registro do fluxo: os seguintes já encontram os textos no dicionário
+        fluxoEscrita.escreverAnalise(fluxo, analise);
+        fluxo.flip();
+        fluxoLeitura.lerAnalise(fluxo);
+        fluxo.clear();
+        fluxoEscrita.escreverAnalise(fluxo, analise);
+        fluxo.flip();
+        fluxoBinario = ByteBuffer.allocate(fluxo.remaining()).put(fluxo);
+        fluxoBinario.flip();
+
+        System.out.printf("%nBinário: %d bytes (%d no fluxo), JSON: %d bytes%n", binario.remaining(),
+                fluxoBinario.remaining(), json.length);
+    }
+
+    @Benchmark
+    public ByteBuffer escreverBinario() {
+        buffer.clear();
+        new CodecBinario().escreverAnalise(buffer, analise);
+        return buffer;
+    }
+
+    @Benchmark
+    public ByteBuffer escreverBinarioFluxo() {
+        fluxo.clear();
+        fluxoEscrita.escreverAnalise(fluxo, analise);
+        return fluxo;
+    }
+
+    @Benchmark
+    public byte[] escreverJson() {
+        return CodecJson.escrever(EscritorJson.local(), analise).toByteArray();
+    }
+
+    @Benchmark
+    public AnalisePatologica lerBinario() {
+        return new CodecBinario().lerAnalise(binario.duplicate());
+    }
+
+    @Benchmark
+    public AnalisePatologica lerBinarioFluxo() {
+        // Os textos do registro já estão no dicionário, então a leitura não o altera
+        return fluxoLeitura.lerAnalise(fluxoBinario.duplicate());
+    }
+
+    @Benchmark
+    public AnalisePatologica lerJson() {
+        return CodecJson.lerAnalise(new LeitorJson(json));
+    }
+}
@@ -1,16 +1,20 @@
 package br.com.lumepath.bean;
 
+import br.com.lumepath.utils.Auditoria;
+import br.com.lumepath.utils.GeradorId;
+import br.com.lumepath.utils.Morfometria;
+
 import javax.swing.*;
 import java.time.LocalDate;
-import java.util.UUID;
 
 /**
  * Representa uma amostra coletada para análise, contendo informações
  * sobre local, tipo e medidas físicas.
  *
- * <p>Cada amostra possui um identificador único e a data em que foi coletada.</p>
+ * <p>Cada amostra possui um identificador único, a data em que foi coletada e o
+ * {@link Paciente} de quem foi coletada.</p>
  *
- * <p>As medidas físicas são: comprimento, profundidade e altura.</p>
+ * <p>As medidas físicas são: comprimento, profundidade e altura, cada uma com sua incerteza.</p>
  *
  * <p>Valores inválidos (nulos, vazios ou negativos) são rejeitados pelas validações nos setters.</p>
  *
@@ -23,7 +27,7 @@ public class Amostra {
     private int id;
 
     /** Data da coleta, definida automaticamente no momento da criação da amostra. */
-    private final LocalDate dataDeColeta = LocalDate.now();
+    private LocalDate dataDeColeta = LocalDate.now();
 
     private String localDaColeta;
     private String tipoDeColeta;
@@ -32,6 +36,31 @@ public class Amostra {
     private double profundidade;
     private double altura;
 
+    /**
+     * Incerteza (desvio padrão, em mm) de cada medida, resultante da fusão das leituras dos
+     * sensores. Zero enquanto a medida não tiver passado pela fusão.
+     */
+    private double incertezaComprimento;
+    private double incertezaProfundidade;
+    private double incertezaAltura;
+
+    /** Paciente de quem a amostra foi coletada. */
+    private Paciente paciente;
+
+    /** Incrementado a cada alteração bem-sucedida, usado para invalidar laudos em cache. */
+    private int versao;
+
+    /**
+     * Cria uma nova amostra com ID gerado pelo {@link GeradorId}.
+     *
+     * @param localDaColeta local onde a amostra foi coletada.
+     * @param tipoDeColeta tipo de coleta realizada.
+     * @param localAnatomico localização anatômica da coleta.
+     */
+    public Amostra(String localDaColeta, String tipoDeColeta, String localAnatomico) {
+        this(GeradorId.proximaAmostra(), localDaColeta, tipoDeColeta, localAnatomico);
+    }
+
     /**
      * Cria uma nova instância de Amostra com as informações básicas.
      *
@@ -47,6 +76,62 @@ public class Amostra {
         setLocalAnatomico(localAnatomico);
     }
 
+    private Amostra() {
+    }
+
+    /**
+     * Recria uma amostra já registrada, como foi gravada, sem paciente associado. Não valida os
+     * campos, não abre diálogos e não gera eventos de auditoria.
+     *
+     * @param dataDeColeta data original da coleta; {@code null} mantém a data atual.
+     */
+    public static Amostra restaurar(int id, LocalDate dataDeColeta, String localDaColeta, String tipoDeColeta,
+                                    String localAnatomico, double comprimento, double profundidade, double altura,
+                                    double incertezaComprimento, double incertezaProfundidade,
+                                    double incertezaAltura) {
+        Amostra amostra = new Amostra();
+        amostra.id = id;
+        if (dataDeColeta != null) {
+            amostra.dataDeColeta = dataDeColeta;
+        }
+        amostra.localDaColeta = localDaColeta;
+        amostra.tipoDeColeta = tipoDeColeta;
+        amostra.localAnatomico = localAnatomico;
+        amostra.comprimento = comprimento;
+        amostra.profundidade = profundidade;
+        amostra.altura = altura;
+        amostra.incertezaComprimento = incertezaComprimento;
+        amostra.incertezaProfundidade = incertezaProfundidade;
+        amostra.incertezaAltura = incertezaAltura;
+        return amostra;
+    }
+
+    public int getVersao() {
+        return versao;
+    }
+
+    public Paciente getPaciente() {
+        return paciente;
+    }
+
+    /**
+     * Associa a amostra ao paciente de quem foi coletada.
+     *
+     * @param paciente paciente dono da amostra.
+     */
+    public void setPaciente(Paciente paciente) {
+        try {
+            if (paciente == null) {
+                throw new Exception("Paciente não pode ser nulo.");
+            }
+            Auditoria.registrar("Amostra", id, "paciente", this.paciente == null ? null : (Object) this.paciente.getId(), (Object) paciente.getId());
+            this.paciente = paciente;
+            versao++;
+        } catch (Exception e) {
+            JOptionPane.showMessageDialog(null, e.getMessage(), "Erro", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
     public LocalDate getDataDeColeta() {
         return dataDeColeta;
     }
@@ -62,7 +147,9 @@ public class Amostra {
     public void setId(int id) {
         try{
             if (id > 0){
+                Auditoria.registrar("Amostra", id, "id", this.id, id);
                 this.id = id;
+                versao++;
             }else{
                 throw new Exception("ID Invalido, deve ser maior que 0");
             }
@@ -82,7 +169,9 @@ public class Amostra {
             if (localDaColeta == null || localDaColeta.trim().isEmpty()) {
                 throw new Exception("Local de coleta não pode ser vazio");
             }
+            Auditoria.registrar("Amostra", id, "localDaColeta", this.localDaColeta, localDaColeta);
             this.localDaColeta = localDaColeta;
+            versao++;
         } catch (Exception e) {
             JOptionPane.showMessageDialog(null, e.getMessage(), "Erro", JOptionPane.ERROR_MESSAGE);
             setLocalDaColeta(JOptionPane.showInputDialog("Digite novamente o local da coleta: "));
@@ -103,7 +192,9 @@ public class Amostra {
             if (tipoDeColeta == null || tipoDeColeta.trim().isEmpty()) {
                 throw new Exception("Tipo de coleta não pode ser vazio");
             }
+            Auditoria.registrar("Amostra", id, "tipoDeColeta", this.tipoDeColeta, tipoDeColeta);
             this.tipoDeColeta = tipoDeColeta;
+            versao++;
         } catch (Exception e) {
             JOptionPane.showMessageDialog(null, e.getMessage(), "Erro", JOptionPane.ERROR_MESSAGE);
             setTipoDeColeta(JOptionPane.showInputDialog("Digite novamente o tipo de coleta: "));
@@ -125,7 +216,9 @@ public class Amostra {
             if (localAnatomico == null || localAnatomico.trim().isEmpty()) {
             throw new Exception("Local anatômico não pode ser vazio");
         }
+            Auditoria.registrar("Amostra", id, "localAnatomico", this.localAnatomico, localAnatomico);
             this.localAnatomico = localAnatomico;
+            versao++;
 
         } catch (Exception e) {
             JOptionPane.showMessageDialog(null, e.getMessage(), "Erro", JOptionPane.ERROR_MESSAGE);
@@ -146,7 +239,9 @@ public class Amostra {
     public void setComprimento(double comprimento) {
         try{
             if (comprimento >= 0) {
+                Auditoria.registrar("Amostra", id, "comprimento", this.comprimento, comprimento);
                 this.comprimento = comprimento;
+                versao++;
             } else {
                 throw new Exception("Comprimento deve ser maior ou igual a zero");
             }
@@ -168,7 +263,9 @@ public class Amostra {
     public void setAltura(double altura) {
         try {
             if (altura >= 0) {
+                Auditoria.registrar("Amostra", id, "altura", this.altura, altura);
                 this.altura = altura;
+                versao++;
             } else {
                 throw new Exception("Altura deve ser maior ou igual a zero");
             }
@@ -190,7 +287,9 @@ public class Amostra {
     public void setProfundidade(double profundidade) {
         try {
             if (profundidade >= 0) {
+                Auditoria.registrar("Amostra", id, "profundidade", this.profundidade, profundidade);
                 this.profundidade = profundidade;
+                versao++;
             } else {
                 throw new Exception("Profundidade deve ser maior ou igual a zero");
             }
@@ -199,4 +298,102 @@ public class Amostra {
         }
 
     }
+
+    public double getIncertezaComprimento() {
+        return incertezaComprimento;
+    }
+
+    /**
+     * Define a incerteza da medida de comprimento.
+     *
+     * @param incertezaComprimento desvio padrão, em mm, deve ser maior ou igual a zero.
+     */
+    public void setIncertezaComprimento(double incertezaComprimento) {
+        try {
+            if (incertezaComprimento >= 0) {
+                Auditoria.registrar("Amostra", id, "incertezaComprimento", this.incertezaComprimento, incertezaComprimento);
+                this.incertezaComprimento = incertezaComprimento;
+                versao++;
+            } else {
+                throw new Exception("Incerteza do comprimento deve ser maior ou igual a zero");
+            }
+        } catch (Exception e) {
+            JOptionPane.showMessageDialog(null, e.getMessage(), "Erro", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    public double getIncertezaAltura() {
+        return incertezaAltura;
+    }
+
+    /**
+     * Define a incerteza da medida de altura.
+     *
+     * @param incertezaAltura desvio padrão, em mm, deve ser maior ou igual a zero.
+     */
+    public void setIncertezaAltura(double incertezaAltura) {
+        try {
+            if (incertezaAltura >= 0) {
+                Auditoria.registrar("Amostra", id, "incertezaAltura", this.incertezaAltura, incertezaAltura);
+                this.incertezaAltura = incertezaAltura;
+                versao++;
+            } else {
+                throw new Exception("Incerteza da altura deve ser maior ou igual a zero");
+            }
+        } catch (Exception e) {
+            JOptionPane.showMessageDialog(null, e.getMessage(), "Erro", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    public double getIncertezaProfundidade() {
+        return incertezaProfundidade;
+    }
+
+    /**
+     * Define a incerteza da medida de profundidade.
+     *
+     * @param incertezaProfundidade desvio padrão, em mm, deve ser maior ou igual a zero.
+     */
+    public void setIncertezaProfundidade(double incertezaProfundidade) {
+        try {
+            if (incertezaProfundidade >= 0) {
+                Auditoria.registrar("Amostra", id, "incertezaProfundidade", this.incertezaProfundidade, incertezaProfundidade);
+                this.incertezaProfundidade = incertezaProfundidade;
+                versao++;
+            } else {
+                throw new Exception("Incerteza da profundidade deve ser maior ou igual a zero");
+            }
+        } catch (Exception e) {
+            JOptionPane.showMessageDialog(null, e.getMessage(), "Erro", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    /**
+     * Volume estimado, em mm³, aproximando a amostra por um elipsoide.
+     *
+     * @see Morfometria
+     */
+    public double getVolume() {
+        return Morfometria.volume(this);
+    }
+
+    /** Área superficial estimada, em mm². */
+    public double getAreaSuperficial() {
+        return Morfometria.areaSuperficial(this);
+    }
+
+    /** Maior dimensão sobre a menor; {@code NaN} enquanto alguma medida for zero. */
+    public double getRazaoDeAspecto() {
+        return Morfometria.razaoDeAspecto(this);
+    }
+
+    /** Esfericidade entre 0 e 1; {@code NaN} enquanto alguma medida for zero. */
+    public double getEsfericidade() {
+        return Morfometria.esfericidade(this);
+    }
+
+    /** Categoria de tamanho conforme os limites do local anatômico. */
+    public Morfometria.Categoria getCategoriaDeTamanho() {
+        return Morfometria.categoria(this);
+    }
 }
@@ -1,17 +1,34 @@
 package br.com.lumepath.bean;
 
+import br.com.lumepath.utils.Auditoria;
+import br.com.lumepath.utils.GeradorId;
+import br.com.lumepath.utils.LaudoCache;
+
 import javax.swing.*;
 import java.time.LocalDate;
 
 public class AnalisePatologica {
 
     private int id;
-    private final LocalDate dataAnalise = LocalDate.now();
+    private LocalDate dataAnalise = LocalDate.now();
     private String descricao;
     private String diagnosticoPreliminar;
     private Amostra amostra;
     private PatologistaResponsavel patologistaResponsavel;
 
+    /** Incrementado a cada alteração bem-sucedida, usado para invalidar o laudo em cache. */
+    private int versao;
+
+    /**
+     * Cria a análise com ID gerado pelo {@link GeradorId}.
+     *
+     * @param descricao descrição detalhada.
+     * @param diagnosticoPreliminar hipótese diagnóstica.
+     */
+    public AnalisePatologica(String descricao, String diagnosticoPreliminar) {
+        this(GeradorId.proximaAnalise(), descricao, diagnosticoPreliminar);
+    }
+
     /**
      * Construtor completo da análise patológica.
      *
@@ -25,6 +42,32 @@ public class AnalisePatologica {
         setDiagnosticoPreliminar(diagnosticoPreliminar);
     }
 
+    private AnalisePatologica() {
+    }
+
+    /**
+     * Recria uma análise já registrada, como foi gravada. Não valida os campos, não abre
+     * diálogos e não gera eventos de auditoria.
+     *
+     * @param dataAnalise data original da análise; {@code null} mantém a data atual.
+     * @param amostra amostra analisada, ou {@code null}.
+     * @param patologistaResponsavel patologista responsável, ou {@code null}.
+     */
+    public static AnalisePatologica restaurar(int id, LocalDate dataAnalise, String descricao,
+                                              String diagnosticoPreliminar, Amostra amostra,
+                                              PatologistaResponsavel patologistaResponsavel) {
+        AnalisePatologica analise = new AnalisePatologica();
+        analise.id = id;
+        if (dataAnalise != null) {
+            analise.dataAnalise = dataAnalise;
+        }
+        analise.descricao = descricao;
+        analise.diagnosticoPreliminar = diagnosticoPreliminar;
+        analise.amostra = amostra;
+        analise.patologistaResponsavel = patologistaResponsavel;
+        return analise;
+    }
+
     // Getters e Setters
 
     public int getId() {
@@ -36,7 +79,9 @@ public class AnalisePatologica {
             if (id <= 0) {
                 throw new Exception("ID deve ser maior que zero.");
             }
+            Auditoria.registrar("AnalisePatologica", id, "id", this.id, id);
             this.id = id;
+            versao++;
         } catch (Exception e) {
             JOptionPane.showMessageDialog(null, e.getMessage(), "Erro", JOptionPane.ERROR_MESSAGE);
             setId(Integer.parseInt(JOptionPane.showInputDialog("Digite o ID novamente:")));
@@ -44,6 +89,10 @@ public class AnalisePatologica {
 
     }
 
+    public int getVersao() {
+        return versao;
+    }
+
     public LocalDate getDataAnalise() {
         return dataAnalise;
     }
@@ -57,7 +106,9 @@ public class AnalisePatologica {
             if (descricao == null || descricao.trim().isEmpty()) {
                 throw new Exception("Descrição não pode ser vazia.");
             }
+            Auditoria.registrar("AnalisePatologica", id, "descricao", this.descricao, descricao);
             this.descricao = descricao;
+            versao++;
         } catch (Exception e) {
             JOptionPane.showMessageDialog(null, e.getMessage(), "Erro", JOptionPane.ERROR_MESSAGE);
             setDescricao(JOptionPane.showInputDialog("Digite a descrição novamente: "));
@@ -74,7 +125,9 @@ public class AnalisePatologica {
             if (diagnosticoPreliminar == null || diagnosticoPreliminar.trim().isEmpty()) {
                 throw new Exception("Diagnóstico preliminar não pode ser vazio.");
             }
+            Auditoria.registrar("AnalisePatologica", id, "diagnosticoPreliminar", this.diagnosticoPreliminar, diagnosticoPreliminar);
             this.diagnosticoPreliminar = diagnosticoPreliminar;
+            versao++;
         } catch (Exception e) {
             JOptionPane.showMessageDialog(null, e.getMessage(), "Erro", JOptionPane.ERROR_MESSAGE);
             setDiagnosticoPreliminar(JOptionPane.showInputDialog("Digite o diagnostico preliminar novamente: "));
@@ -91,7 +144,9 @@ public class AnalisePatologica {
             if (amostra == null) {
                 throw new IllegalArgumentException("Amostra não pode ser nula.");
             }
+            Auditoria.registrar("AnalisePatologica", id, "amostra", this.amostra == null ? null : (Object) this.amostra.getId(), (Object) amostra.getId());
             this.amostra = amostra;
+            versao++;
         } catch (Exception e) {
             JOptionPane.showMessageDialog(null, e.getMessage(), "Erro", JOptionPane.ERROR_MESSAGE);
         }
@@ -107,7 +162,9 @@ public class AnalisePatologica {
             if (patologistaResponsavel == null) {
                 throw new Exception("Patologista responsável não pode ser nulo.");
             }
+            Auditoria.registrar("AnalisePatologica", id, "patologista", this.patologistaResponsavel == null ? null : (Object) this.patologistaResponsavel.getId(), (Object) patologistaResponsavel.getId());
             this.patologistaResponsavel = patologistaResponsavel;
+            versao++;
         } catch (Exception e) {
             JOptionPane.showMessageDialog(null, e.getMessage(), "Erro", JOptionPane.ERROR_MESSAGE);
         }
@@ -117,9 +174,21 @@ public class AnalisePatologica {
     /**
      * Gera um laudo da análise patológica.
      *
+     * <p>O texto é obtido do {@link LaudoCache} padrão, que só renderiza novamente
+     * quando a análise, a amostra ou o patologista foram alterados.</p>
+     *
      * @return laudo formatado como String.
      */
     public String emitirLaudo() {
+        return LaudoCache.getPadrao().obter(this);
+    }
+
+    /**
+     * Renderiza o laudo sem consultar o cache.
+     *
+     * @return laudo formatado como String.
+     */
+    public String renderizarLaudo() {
         if (amostra == null || patologistaResponsavel == null) {
             return "Dados incompletos: Amostra ou Patologista não associados.";
         }
@@ -69,4 +69,25 @@ public interface ISensor {
      * @return a velocidade atual do slider, em metros por segundo (m/s).
      */
     double getVelocidadeAtualDoSlider();
+
+    /**
+     * Indica se o sensor serve para conferir as medidas de outro sensor, como a câmera em
+     * relação ao laser. Sensores de conferência preenchem as leituras de câmera do leitor
+     * (altura e comprimento) em vez das leituras principais.
+     *
+     * @return {@code true} para sensores de conferência; por padrão {@code false}.
+     */
+    default boolean isConferencia() {
+        return false;
+    }
+
+    /**
+     * Incerteza das medidas do sensor, usada para ponderar suas leituras na fusão das medidas
+     * da amostra.
+     *
+     * @return desvio padrão, em milímetros; por padrão 1 mm.
+     */
+    default double getIncerteza() {
+        return 1.0;
+    }
 }
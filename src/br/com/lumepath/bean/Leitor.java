@@ -1,5 +1,7 @@
 package br.com.lumepath.bean;
 
+import br.com.lumepath.utils.FusaoMedidas;
+
 import javax.swing.*;
 import java.time.LocalDateTime;
 
@@ -28,6 +30,12 @@ public class Leitor implements ILeitura {
     /** Marca a data e hora da última leitura realizada pelo sensor. */
     private LocalDateTime ultimaLeitura;
 
+    /**
+     * Medidas aceitas pelos setters de leitura, para saber se um sensor entregou algo ao leitor
+     * (um sensor pode retornar sem preencher nada, por exemplo quando o operador cancela).
+     */
+    private long medidasRecebidas;
+
     /** Indica se o sensor está atualmente em modo de detecção. */
     private boolean detectando = false;
 
@@ -45,6 +53,11 @@ public class Leitor implements ILeitura {
         this.amostra = amostra;
     }
 
+    /** Total de medidas aceitas pelos setters de leitura desde a criação do leitor. */
+    long getMedidasRecebidas() {
+        return medidasRecebidas;
+    }
+
     public LocalDateTime getUltimaLeitura() {
         return ultimaLeitura;
     }
@@ -53,6 +66,15 @@ public class Leitor implements ILeitura {
         this.ultimaLeitura = LocalDateTime.now();
     }
 
+    /**
+     * Restaura a data e hora de uma leitura gravada anteriormente.
+     *
+     * @param ultimaLeitura momento da leitura original.
+     */
+    public void setUltimaLeitura(LocalDateTime ultimaLeitura) {
+        this.ultimaLeitura = ultimaLeitura;
+    }
+
     public boolean isDetectando() {
         return detectando;
     }
@@ -61,6 +83,26 @@ public class Leitor implements ILeitura {
         this.detectando = !this.detectando;
     }
 
+    public ISensor getSensor() {
+        return sensor;
+    }
+
+    public Amostra getAmostra() {
+        return amostra;
+    }
+
+    public double getLeituraAltura() {
+        return leituraAltura;
+    }
+
+    public double getLeituraComprimento() {
+        return leituraComprimento;
+    }
+
+    public double getLeituraProfundidade() {
+        return leituraProfundidade;
+    }
+
     public double getLeituraCameraAltura() {
         return leituraCameraAltura;
     }
@@ -77,6 +119,7 @@ public class Leitor implements ILeitura {
                 throw new Exception("Leitura da altura da câmera excede o limite máximo permitido.");
             }
             this.leituraCameraAltura = leituraCameraAltura;
+            medidasRecebidas++;
         } catch (Exception e) {
             JOptionPane.showMessageDialog(null, e.getMessage(), "Erro", JOptionPane.ERROR_MESSAGE);
             setLeituraCameraAltura(Double.parseDouble(JOptionPane.showInputDialog("Digite novamente a altura detectada pela câmera:")));
@@ -92,6 +135,7 @@ public class Leitor implements ILeitura {
                 throw new Exception("Leitura do comprimento da câmera excede o limite máximo permitido.");
             }
             this.leituraCameraComprimento = leituraCameraComprimento;
+            medidasRecebidas++;
         } catch (Exception e) {
             JOptionPane.showMessageDialog(null, e.getMessage(), "Erro", JOptionPane.ERROR_MESSAGE);
 
@@ -109,6 +153,7 @@ public class Leitor implements ILeitura {
                 throw new Exception("Leitura de altura excede o limite máximo permitido.");
             }
             this.leituraAltura = leituraAltura;
+            medidasRecebidas++;
         } catch (Exception e) {
             JOptionPane.showMessageDialog(null, e.getMessage(), "Erro", JOptionPane.ERROR_MESSAGE);
             setLeituraAltura(Double.parseDouble(JOptionPane.showInputDialog("Digite novamente a altura:")));
@@ -124,6 +169,7 @@ public class Leitor implements ILeitura {
                 throw new Exception("Leitura de comprimento excede o limite máximo permitido.");
             }
             this.leituraComprimento = leituraComprimento;
+            medidasRecebidas++;
         } catch (Exception e) {
             JOptionPane.showMessageDialog(null, e.getMessage(), "Erro", JOptionPane.ERROR_MESSAGE);
             setLeituraComprimento(Double.parseDouble(JOptionPane.showInputDialog("Digite novamente o comprimento:")));
@@ -139,6 +185,7 @@ public class Leitor implements ILeitura {
                 throw new Exception("Leitura de profundidade excede o limite máximo permitido.");
             }
             this.leituraProfundidade = leituraProfundidade;
+            medidasRecebidas++;
         } catch (Exception e) {
             JOptionPane.showMessageDialog(null, e.getMessage(), "Erro", JOptionPane.ERROR_MESSAGE);
             setLeituraProfundidade(Double.parseDouble(JOptionPane.showInputDialog("Digite novamente a profundidade:")));
@@ -159,14 +206,28 @@ public class Leitor implements ILeitura {
         this.precisao = (erroAltura + erroComprimento) / 2;
     }
 
+    /**
+     * Calcula a precisão comparando as leituras deste leitor (laser) com as leituras de câmera
+     * de outro leitor da mesma amostra.
+     *
+     * @param camera leitor do sensor de conferência.
+     */
+    public void calcPrecisao(Leitor camera) {
+        double erroAltura = Math.abs(camera.getLeituraCameraAltura() - leituraAltura);
+        double erroComprimento = Math.abs(camera.getLeituraCameraComprimento() - leituraComprimento);
+        this.precisao = (erroAltura + erroComprimento) / 2;
+    }
+
     public double getPrecisao() {
         return precisao;
     }
 
     /**
-     * Realiza o cálculo e atribuição de uma medida específica da amostra.
+     * Incorpora uma medida específica à amostra, pela fusão com as leituras anteriores
+     * ponderada pela incerteza do sensor (ver {@link FusaoMedidas}).
      *
-     * @param tipoDeMedida tipo da medida a ser calculada: "altura", "comprimento" ou "profundidade".
+     * @param tipoDeMedida tipo da medida a ser calculada: "altura", "comprimento", "profundidade",
+     *                     ou "alturaCamera" e "comprimentoCamera" para as leituras de conferência.
      * @param amostra a {@link Amostra} onde o resultado será armazenado.
      */
     @Override
@@ -174,13 +235,19 @@ public class Leitor implements ILeitura {
         try {
             switch (tipoDeMedida) {
                 case "altura":
-                    amostra.setAltura(leituraAltura);
+                    FusaoMedidas.incorporar(amostra, FusaoMedidas.Medida.ALTURA, leituraAltura, sensor.getIncerteza());
                     break;
                 case "comprimento":
-                    amostra.setComprimento(leituraComprimento);
+                    FusaoMedidas.incorporar(amostra, FusaoMedidas.Medida.COMPRIMENTO, leituraComprimento, sensor.getIncerteza());
                     break;
                 case "profundidade":
-                    amostra.setProfundidade(leituraProfundidade);
+                    FusaoMedidas.incorporar(amostra, FusaoMedidas.Medida.PROFUNDIDADE, leituraProfundidade, sensor.getIncerteza());
+                    break;
+                case "alturaCamera":
+                    FusaoMedidas.incorporar(amostra, FusaoMedidas.Medida.ALTURA, leituraCameraAltura, sensor.getIncerteza());
+                    break;
+                case "comprimentoCamera":
+                    FusaoMedidas.incorporar(amostra, FusaoMedidas.Medida.COMPRIMENTO, leituraCameraComprimento, sensor.getIncerteza());
                     break;
                 default:
                     throw new Exception("Tipo inválido: " + tipoDeMedida);
@@ -211,15 +278,19 @@ public class Leitor implements ILeitura {
     /**
      * Envia os dados obtidos pelo leitor para a {@link Amostra}.
      *
-     * <p>Se for SensorOpenCV, não faz nada pois a coleta da câmera é apenas para deduzir margem de erro do laser</p>
+     * <p>Sensores de conferência (ex.: SensorOpenCV) enviam apenas altura e comprimento, que são
+     * fundidos com as medidas do laser conforme a incerteza de cada sensor.</p>
      *
      * @param amostra a amostra que receberá os dados calculados.
      */
     public void enviarDadosAmostra(Amostra amostra) {
-        if (!(sensor instanceof SensorOpenCV)) {
+        if (!sensor.isConferencia()) {
             calcular("altura", amostra);
             calcular("comprimento", amostra);
             calcular("profundidade", amostra);
+        } else {
+            calcular("alturaCamera", amostra);
+            calcular("comprimentoCamera", amostra);
         }
     }
 
@@ -1,16 +1,20 @@
 package br.com.lumepath.bean;
 
+import br.com.lumepath.utils.Auditoria;
+import br.com.lumepath.utils.GeradorId;
 import br.com.lumepath.utils.ValidaCpf;
 
 import javax.swing.*;
+import java.time.Instant;
 import java.time.LocalDate;
 import java.time.Period;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
-import java.util.UUID;
 
 /**
  * Classe que representa um Paciente, contendo informações pessoais como nome, CPF,
- * data de nascimento, sexo, código de prontuário e um identificador único (UUID).
+ * data de nascimento, sexo, código de prontuário e um identificador único, gerado pelo {@link GeradorId}
+ * quando não informado.
  *
  * <p>A classe também realiza validação de CPF e formatação de data de nascimento.
  * </p>
@@ -26,6 +30,23 @@ public class Paciente {
     private String sexo;
     private int codigoProntuario;
 
+    /** Resumo já formatado e o instante (em ms) até o qual ele continua válido. */
+    private String resumo;
+    private long resumoValidoAte;
+
+    /**
+     * Cria um paciente com ID gerado pelo {@link GeradorId}.
+     *
+     * @param nome Nome completo do paciente.
+     * @param cpf CPF do paciente. Deve ser válido.
+     * @param dataDeNascimento Data de nascimento no formato "dd-MM-yyyy".
+     * @param sexo Sexo do paciente.
+     * @param codigoProntuario Código de prontuário do paciente.
+     */
+    public Paciente(String nome, String cpf, String dataDeNascimento, String sexo, int codigoProntuario) {
+        this(GeradorId.proximoPaciente(), nome, cpf, dataDeNascimento, sexo, codigoProntuario);
+    }
+
     /**
      * Construtor da classe Paciente.
      *
@@ -44,10 +65,33 @@ public class Paciente {
         this.codigoProntuario = codigoProntuario;
     }
 
+    private Paciente() {
+    }
+
+    /**
+     * Recria um paciente já registrado, como foi gravado. Não valida os campos, não abre
+     * diálogos e não gera eventos de auditoria; serve aos codecs, que leem dados já validados
+     * quando foram gravados.
+     *
+     * @param dataDeNascimento data de nascimento, já convertida.
+     */
+    public static Paciente restaurar(int id, String nome, String cpf, LocalDate dataDeNascimento, String sexo,
+                                     int codigoProntuario) {
+        Paciente paciente = new Paciente();
+        paciente.id = id;
+        paciente.nome = nome;
+        paciente.cpf = cpf;
+        paciente.dataDeNascimento = dataDeNascimento;
+        paciente.sexo = sexo;
+        paciente.codigoProntuario = codigoProntuario;
+        return paciente;
+    }
+
 
     public void setId(int id) {
         try{
             if (id > 0){
+                Auditoria.registrar("Paciente", id, "id", this.id, id);
                 this.id = id;
             }else{
                 throw new Exception("ID Invalido, deve ser maior que 0");
@@ -68,7 +112,9 @@ public class Paciente {
     }
 
     public void setNome(String nome) {
+        Auditoria.registrar("Paciente", id, "nome", this.nome, nome);
         this.nome = nome;
+        resumo = null;
     }
 
     public String getCpf() {
@@ -80,17 +126,35 @@ public class Paciente {
     }
 
     public int getIdade() {
-        LocalDate hoje = LocalDate.now();
+        return getIdade(LocalDate.now());
+    }
+
+    private int getIdade(LocalDate hoje) {
         Period periodo = Period.between(getDataDeNascimento(), hoje);
         return periodo.getYears();
     }
 
+    /**
+     * Retorna o resumo do paciente para listagens e laudos.
+     *
+     * <p>O texto fica em cache até a virada do dia (quando a idade pode mudar) ou até
+     * a alteração de nome, sexo, data de nascimento ou código de prontuário.</p>
+     *
+     * @return resumo com nome, sexo, idade e código de prontuário.
+     */
     public String getResumo() {
-        return String.format("%s (%s) - %d anos - Código Prontuário: %d",
-                getNome(),
-                getSexo(),
-                getIdade(),
-                getCodigoProntuario());
+        String atual = resumo;
+        long agora = System.currentTimeMillis();
+        if (atual == null || agora >= resumoValidoAte) {
+            // Idade e validade vêm do mesmo instante, para não cruzar a meia-noite entre as duas
+            ZoneId zona = ZoneId.systemDefault();
+            LocalDate hoje = Instant.ofEpochMilli(agora).atZone(zona).toLocalDate();
+            atual = getNome() + " (" + getSexo() + ") - " + getIdade(hoje)
+                    + " anos - Código Prontuário: " + getCodigoProntuario();
+            resumoValidoAte = hoje.plusDays(1).atStartOfDay(zona).toInstant().toEpochMilli();
+            resumo = atual;
+        }
+        return atual;
     }
 
     /**
@@ -101,6 +165,7 @@ public class Paciente {
     public void setCpf(String cpf) {
         try {
             if (ValidaCpf.isCPF(cpf)){
+                Auditoria.registrar("Paciente", id, "cpf", this.cpf, cpf);
                 this.cpf = cpf;
             } else {
                 throw new Exception("CPF Inválido");
@@ -122,9 +187,11 @@ public class Paciente {
      */
     public void setDataDeNascimento(String dataDeNascimento) {
         try {
-            if (LocalDate.parse(dataDeNascimento, DateTimeFormatter.ofPattern("dd-MM-yyyy"))
-                    .isAfter(LocalDate.of(1900, 1, 1))) {
-                this.dataDeNascimento = LocalDate.parse(dataDeNascimento, DateTimeFormatter.ofPattern("dd-MM-yyyy"));
+            LocalDate data = LocalDate.parse(dataDeNascimento, DateTimeFormatter.ofPattern("dd-MM-yyyy"));
+            if (data.isAfter(LocalDate.of(1900, 1, 1))) {
+                Auditoria.registrar("Paciente", id, "dataDeNascimento", this.dataDeNascimento, data);
+                this.dataDeNascimento = data;
+                resumo = null;
             } else {
                 throw new Exception("Idade inválida");
             }
@@ -150,7 +217,9 @@ public class Paciente {
                 throw new Exception("Sexo inválido. Use 'M' para masculino ou 'F' para feminino.");
             }
 
+            Auditoria.registrar("Paciente", id, "sexo", this.sexo, sexo);
             this.sexo = sexo;
+            resumo = null;
 
         } catch (Exception e) {
             System.out.println("Erro ao definir sexo: " + e.getMessage());
@@ -163,7 +232,9 @@ public class Paciente {
     }
 
     public void setCodigoProntuario(int codigoProntuario) {
+        Auditoria.registrar("Paciente", id, "codigoProntuario", this.codigoProntuario, codigoProntuario);
         this.codigoProntuario = codigoProntuario;
+        resumo = null;
     }
 
 
@@ -1,5 +1,7 @@
 package br.com.lumepath.bean;
 
+import br.com.lumepath.utils.Auditoria;
+
 import javax.swing.*;
 
 public class PatologistaResponsavel {
@@ -9,6 +11,12 @@ public class PatologistaResponsavel {
     private String especialidade;
     private String email;
 
+    /** Incrementado a cada alteração bem-sucedida, usado para invalidar laudos em cache. */
+    private int versao;
+
+    /** Resumo já formatado, descartado quando nome, CRM ou especialidade mudam. */
+    private String resumo;
+
     /**
      * Construtor
      *
@@ -26,6 +34,24 @@ public class PatologistaResponsavel {
         setEmail(email);
     }
 
+    private PatologistaResponsavel() {
+    }
+
+    /**
+     * Recria um patologista já registrado, como foi gravado. Não valida os campos, não abre
+     * diálogos e não gera eventos de auditoria.
+     */
+    public static PatologistaResponsavel restaurar(int id, String nome, String crm, String especialidade,
+                                                   String email) {
+        PatologistaResponsavel patologista = new PatologistaResponsavel();
+        patologista.id = id;
+        patologista.nome = nome;
+        patologista.crm = crm;
+        patologista.especialidade = especialidade;
+        patologista.email = email;
+        return patologista;
+    }
+
     // Getters e Setters
 
     public int getId() {
@@ -36,7 +62,13 @@ public class PatologistaResponsavel {
         if (id <= 0) {
             throw new IllegalArgumentException("ID deve ser maior que zero.");
         }
+        Auditoria.registrar("PatologistaResponsavel", id, "id", this.id, id);
         this.id = id;
+        versao++;
+    }
+
+    public int getVersao() {
+        return versao;
     }
 
     public String getNome() {
@@ -48,7 +80,10 @@ public class PatologistaResponsavel {
             if (nome == null || nome.trim().isEmpty()) {
                 throw new Exception("Nome não pode ser vazio.");
             }
+            Auditoria.registrar("PatologistaResponsavel", id, "nome", this.nome, nome);
             this.nome = nome;
+            versao++;
+            resumo = null;
         } catch (Exception e) {
             JOptionPane.showMessageDialog(null, e, "Erro", JOptionPane.ERROR_MESSAGE);
             setNome(JOptionPane.showInputDialog("Digite o nome novamente: "));
@@ -68,7 +103,10 @@ public class PatologistaResponsavel {
             if (!validarCrm(crm)) {
                 throw new Exception("Formato de CRM inválido. Exemplo: SP-123456.");
             }
+            Auditoria.registrar("PatologistaResponsavel", id, "crm", this.crm, crm);
             this.crm = crm;
+            versao++;
+            resumo = null;
         } catch (Exception e) {
             JOptionPane.showMessageDialog(null, e, "Erro", JOptionPane.ERROR_MESSAGE);
             setCrm(JOptionPane.showInputDialog("Digite o CRM novamente: "));
@@ -82,10 +120,14 @@ public class PatologistaResponsavel {
 
     public void setEspecialidade(String especialidade) {
         if (especialidade == null || especialidade.trim().isEmpty()) {
+            Auditoria.registrar("PatologistaResponsavel", id, "especialidade", this.especialidade, "Patologia Geral");
             this.especialidade = "Patologia Geral";
         } else {
+            Auditoria.registrar("PatologistaResponsavel", id, "especialidade", this.especialidade, especialidade);
             this.especialidade = especialidade;
         }
+        versao++;
+        resumo = null;
     }
 
     public String getEmail() {
@@ -100,7 +142,9 @@ public class PatologistaResponsavel {
             if (!validarEmail(email)) {
                 throw new Exception("E-mail inválido.");
             }
+            Auditoria.registrar("PatologistaResponsavel", id, "email", this.email, email);
             this.email = email;
+            versao++;
         } catch (Exception e) {
             JOptionPane.showMessageDialog(null, e, "Erro", JOptionPane.ERROR_MESSAGE);
             setEmail(JOptionPane.showInputDialog("Digite o e-mail novamente: "));
@@ -111,10 +155,18 @@ public class PatologistaResponsavel {
     /**
      * Retorna um resumo textual do patologista.
      *
+     * <p>O texto é formatado apenas na primeira chamada após alguma alteração
+     * de nome, CRM ou especialidade.</p>
+     *
      * @return resumo com nome, CRM e especialidade.
      */
     public String getResumo() {
-        return String.format("Patologista: %s | CRM: %s | Especialidade: %s", nome, crm, especialidade);
+        String atual = resumo;
+        if (atual == null) {
+            atual = "Patologista: " + nome + " | CRM: " + crm + " | Especialidade: " + especialidade;
+            resumo = atual;
+        }
+        return atual;
     }
 
     /**
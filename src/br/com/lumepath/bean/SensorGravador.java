@@ -0,0 +1,137 @@
+package br.com.lumepath.bean;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Decorador de {@link ISensor} que grava cada leitura entregue ao {@link Leitor}.
+ *
+ * <p>Depois que o sensor original preenche o leitor, as medidas brutas, o ID da amostra e o
+ * instante da leitura são acrescentados ao arquivo da sessão, no formato lido pelo
+ * {@link SensorReplay}. Cada leitura é gravada por inteiro em uma única escrita, então uma
+ * queda perde no máximo a leitura em andamento. Se o sensor retornar sem entregar nenhuma
+ * medida (operador cancelou, entrada inválida), nada é gravado. O restante do comportamento é
+ * o do sensor original.</p>
+ *
+ * @author Ricardo
+ * @version 1.0
+ */
+public class SensorGravador implements ISensor, Closeable {
+
+    private final ISensor sensor;
+    private final FileChannel canal;
+    private final long inicio = System.nanoTime();
+    private final ByteBuffer registro = ByteBuffer.allocate(SensorReplay.TAMANHO_REGISTRO);
+    private long gravadas;
+
+    /**
+     * @param sensor sensor cujas leituras serão gravadas.
+     * @param arquivo arquivo da sessão; não pode existir, para que nenhuma gravação anterior seja
+     *                substituída.
+     * @throws java.nio.file.FileAlreadyExistsException se o arquivo já existir.
+     * @throws IOException se o arquivo não puder ser criado.
+     */
+    public SensorGravador(ISensor sensor, Path arquivo) throws IOException {
+        this.sensor = sensor;
+        this.canal = FileChannel.open(arquivo, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        ByteBuffer cabecalho = ByteBuffer.allocate(SensorReplay.TAMANHO_CABECALHO);
+        cabecalho.putInt(SensorReplay.MAGICO);
+        cabecalho.put(SensorReplay.VERSAO);
+        cabecalho.put((byte) (sensor.isConferencia() ? 1 : 0));
+        cabecalho.putDouble(sensor.getIncerteza());
+        cabecalho.putLong(System.currentTimeMillis());
+        cabecalho.flip();
+        escrever(cabecalho);
+    }
+
+    /**
+     * Executa a leitura no sensor original e grava o que ele entregou ao leitor, se entregou algo.
+     */
+    @Override
+    public synchronized void iniciar(Leitor leitor) {
+        long medidas = leitor.getMedidasRecebidas();
+        sensor.iniciar(leitor);
+        if (leitor.getMedidasRecebidas() == medidas) {
+            // As medidas no leitor são as de uma leitura anterior
+            return;
+        }
+        registro.clear();
+        registro.putLong(System.nanoTime() - inicio);
+        registro.putInt(leitor.getAmostra() == null ? 0 : leitor.getAmostra().getId());
+        registro.putDouble(leitor.getLeituraAltura());
+        registro.putDouble(leitor.getLeituraComprimento());
+        registro.putDouble(leitor.getLeituraProfundidade());
+        registro.putDouble(leitor.getLeituraCameraAltura());
+        registro.putDouble(leitor.getLeituraCameraComprimento());
+        registro.flip();
+        try {
+            escrever(registro);
+            gravadas++;
+        } catch (IOException e) {
+            throw new IllegalStateException("Não foi possível gravar a leitura: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public double lerDados(Leitor leitor) {
+        return sensor.lerDados(leitor);
+    }
+
+    @Override
+    public void reset() {
+        sensor.reset();
+    }
+
+    @Override
+    public void encerrar() {
+        sensor.encerrar();
+    }
+
+    @Override
+    public void calibrar() {
+        sensor.calibrar();
+    }
+
+    @Override
+    public void enviarDadosAoLeitor(Leitor leitor) {
+        sensor.enviarDadosAoLeitor(leitor);
+    }
+
+    @Override
+    public double getVelocidadeAtualDoSlider() {
+        return sensor.getVelocidadeAtualDoSlider();
+    }
+
+    @Override
+    public boolean isConferencia() {
+        return sensor.isConferencia();
+    }
+
+    @Override
+    public double getIncerteza() {
+        return sensor.getIncerteza();
+    }
+
+    public ISensor getSensor() {
+        return sensor;
+    }
+
+    public synchronized long getGravadas() {
+        return gravadas;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        canal.close();
+    }
+
+    private void escrever(ByteBuffer dados) throws IOException {
+        while (dados.hasRemaining()) {
+            canal.write(dados);
+        }
+    }
+}
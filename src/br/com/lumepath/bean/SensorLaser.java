@@ -22,6 +22,9 @@ public class SensorLaser implements ISensor {
     /** Velocidade atual do slider em metros por segundo (m/s). */
     private double velocidadeAtualDoSlider;
 
+    /** Incerteza nominal das medidas do laser, em milímetros. */
+    public static final double INCERTEZA = 0.1;
+
     /** Estado de calibração do sensor. */
     private boolean calibrado = false;
 
@@ -232,4 +235,9 @@ public class SensorLaser implements ISensor {
         }
         return velocidadeAtualDoSlider;
     }
+
+    @Override
+    public double getIncerteza() {
+        return INCERTEZA;
+    }
 }
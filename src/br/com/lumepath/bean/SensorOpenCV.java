@@ -18,6 +18,9 @@ public class SensorOpenCV implements ISensor {
     /** Porta serial utilizada para configuração e identificação do sensor. */
     private String portaSerial;
 
+    /** Incerteza nominal das medidas da câmera, em milímetros. */
+    public static final double INCERTEZA = 0.5;
+
     /** Estado de ativação do sensor. */
     private boolean ativo = false;
 
@@ -141,4 +144,17 @@ public class SensorOpenCV implements ISensor {
     public double getVelocidadeAtualDoSlider() {
         return 0;
     }
+
+    /**
+     * A câmera só confere as medidas do laser.
+     */
+    @Override
+    public boolean isConferencia() {
+        return true;
+    }
+
+    @Override
+    public double getIncerteza() {
+        return INCERTEZA;
+    }
 }
@@ -0,0 +1,228 @@
+package br.com.lumepath.bean;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Implementação da interface {@link ISensor} que reproduz uma sessão gravada pelo {@link SensorGravador}.
+ *
+ * <p>Cada chamada de {@link #iniciar(Leitor)} entrega ao leitor a próxima leitura gravada,
+ * exatamente como o sensor original entregou, o que permite repetir uma medição suspeita e
+ * testar a lógica de aquisição com dados reais. As leituras podem sair no ritmo original,
+ * acelerado por um fator, ou o mais rápido possível (fator zero), para medir a vazão do
+ * pipeline sem hardware.</p>
+ *
+ * <p>Formato do arquivo: cabeçalho com o identificador {@code LPSS}, versão, se o sensor é de
+ * conferência, sua incerteza e o início da gravação (epoch ms); depois um registro de tamanho
+ * fixo por leitura: instante relativo ao início (ns), ID da amostra, altura, comprimento,
+ * profundidade, altura da câmera e comprimento da câmera.</p>
+ *
+ * @author Ricardo
+ * @version 1.0
+ */
+public class SensorReplay implements ISensor {
+
+    static final int MAGICO = 0x4C505353;
+    static final byte VERSAO = 1;
+    static final int TAMANHO_CABECALHO = 4 + 1 + 1 + 8 + 8;
+    static final int TAMANHO_REGISTRO = 8 + 4 + 5 * 8;
+
+    private final double velocidade;
+    private final boolean repetir;
+    private final boolean conferencia;
+    private final double incerteza;
+    private final long inicioGravacao;
+
+    /** Leituras gravadas, uma posição por leitura. */
+    private final long[] tempos;
+    private final int[] amostras;
+    private final double[] alturas;
+    private final double[] comprimentos;
+    private final double[] profundidades;
+    private final double[] alturasCamera;
+    private final double[] comprimentosCamera;
+
+    private int proxima;
+    private long reproduzidas;
+    private long inicioReproducao;
+    private long deslocamento;
+    private boolean calibrado = false;
+    private boolean ativo = false;
+
+    /**
+     * @param arquivo sessão gravada.
+     * @param velocidade fator sobre o ritmo original (1 = tempo real, 10 = dez vezes mais
+     *                   rápido); zero reproduz sem esperar.
+     * @param repetir volta ao início ao esgotar as leituras, em vez de falhar.
+     * @throws IOException se o arquivo não puder ser lido ou não for uma gravação válida.
+     */
+    public SensorReplay(Path arquivo, double velocidade, boolean repetir) throws IOException {
+        if (velocidade < 0) {
+            throw new IllegalArgumentException("Velocidade não pode ser negativa.");
+        }
+        this.velocidade = velocidade;
+        this.repetir = repetir;
+
+        ByteBuffer dados = ByteBuffer.wrap(Files.readAllBytes(arquivo));
+        if (dados.remaining() < TAMANHO_CABECALHO || dados.getInt() != MAGICO) {
+            throw new IOException("Arquivo não é uma gravação de sensor: " + arquivo);
+        }
+        byte versao = dados.get();
+        if (versao != VERSAO) {
+            throw new IOException("Versão de gravação não suportada: " + versao);
+        }
+        this.conferencia = dados.get() != 0;
+        this.incerteza = dados.getDouble();
+        this.inicioGravacao = dados.getLong();
+
+        // Um registro incompleto no fim (gravação interrompida) é ignorado
+        int total = dados.remaining() / TAMANHO_REGISTRO;
+        tempos = new long[total];
+        amostras = new int[total];
+        alturas = new double[total];
+        comprimentos = new double[total];
+        profundidades = new double[total];
+        alturasCamera = new double[total];
+        comprimentosCamera = new double[total];
+        for (int i = 0; i < total; i++) {
+            tempos[i] = dados.getLong();
+            amostras[i] = dados.getInt();
+            alturas[i] = dados.getDouble();
+            comprimentos[i] = dados.getDouble();
+            profundidades[i] = dados.getDouble();
+            alturasCamera[i] = dados.getDouble();
+            comprimentosCamera[i] = dados.getDouble();
+        }
+        if (total == 0) {
+            throw new IOException("Gravação sem leituras: " + arquivo);
+        }
+    }
+
+    /**
+     * Entrega ao leitor a próxima leitura gravada, esperando o instante dela conforme a velocidade.
+     *
+     * @throws IllegalStateException se as leituras acabaram e a repetição está desligada.
+     */
+    @Override
+    public synchronized void iniciar(Leitor leitor) {
+        if (!calibrado) {
+            calibrar();
+        }
+        if (proxima == tempos.length) {
+            if (!repetir) {
+                throw new IllegalStateException("Gravação esgotada após " + reproduzidas + " leituras.");
+            }
+            deslocamento += tempos[tempos.length - 1];
+            proxima = 0;
+        }
+        ativo = true;
+        esperar(deslocamento + tempos[proxima]);
+        enviarDadosAoLeitor(leitor);
+        proxima++;
+        reproduzidas++;
+    }
+
+    /**
+     * @return {@code 1.0} enquanto o leitor estiver em modo de detecção; {@code 0.0} caso contrário.
+     */
+    @Override
+    public double lerDados(Leitor leitor) {
+        return leitor.isDetectando() ? 1 : 0;
+    }
+
+    /**
+     * Volta ao início da gravação.
+     */
+    @Override
+    public synchronized void reset() {
+        proxima = 0;
+        deslocamento = 0;
+        inicioReproducao = 0;
+        calibrado = false;
+    }
+
+    @Override
+    public void encerrar() {
+        ativo = false;
+    }
+
+    @Override
+    public void calibrar() {
+        calibrado = true;
+    }
+
+    @Override
+    public void enviarDadosAoLeitor(Leitor leitor) {
+        int i = proxima;
+        leitor.setDetectando();
+        if (conferencia) {
+            leitor.setLeituraCameraAltura(alturasCamera[i]);
+            leitor.setLeituraCameraComprimento(comprimentosCamera[i]);
+        } else {
+            leitor.setLeituraAltura(alturas[i]);
+            leitor.setLeituraComprimento(comprimentos[i]);
+            leitor.setLeituraProfundidade(profundidades[i]);
+        }
+        leitor.setDetectando();
+    }
+
+    @Override
+    public double getVelocidadeAtualDoSlider() {
+        return 0;
+    }
+
+    @Override
+    public boolean isConferencia() {
+        return conferencia;
+    }
+
+    @Override
+    public double getIncerteza() {
+        return incerteza;
+    }
+
+    public boolean isAtivo() {
+        return ativo;
+    }
+
+    /** Quantidade de leituras na gravação. */
+    public int getTotalDeLeituras() {
+        return tempos.length;
+    }
+
+    public synchronized long getReproduzidas() {
+        return reproduzidas;
+    }
+
+    public synchronized boolean temProxima() {
+        return repetir || proxima < tempos.length;
+    }
+
+    /** ID da amostra medida originalmente na próxima leitura. */
+    public synchronized int getAmostraDaProxima() {
+        return amostras[proxima == tempos.length ? 0 : proxima];
+    }
+
+    /** Início da gravação, em epoch ms. */
+    public long getInicioGravacao() {
+        return inicioGravacao;
+    }
+
+    private void esperar(long tempoGravado) {
+        if (velocidade == 0) {
+            return;
+        }
+        long agora = System.nanoTime();
+        if (inicioReproducao == 0) {
+            inicioReproducao = agora - (long) (tempoGravado / velocidade);
+        }
+        long alvo = inicioReproducao + (long) (tempoGravado / velocidade);
+        while (agora < alvo) {
+            LockSupport.parkNanos(alvo - agora);
+            agora = System.nanoTime();
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package br.com.lumepath.bean;
+
+import java.util.Random;
+
+/**
+ * Implementação da interface {@link ISensor} que simula as medições, sem hardware nem interface gráfica.
+ *
+ * <p>As dimensões "reais" de cada amostra são derivadas do seu ID, então um sensor laser e uma
+ * câmera simulados medem o mesmo objeto e diferem apenas pelo ruído configurado. Usado no modo
+ * {@code Daemon} e em ensaios de carga.</p>
+ *
+ * <p>O mesmo sensor é usado ao mesmo tempo pelas threads de aquisição e recalibrado pela
+ * etapa de precisão, então o estado de calibração e o erro acumulado só mudam com o lock do
+ * sensor, como no {@link SensorReplay}.</p>
+ *
+ * @author Ricardo
+ * @version 1.0
+ */
+public class SensorSimulado implements ISensor {
+
+    /** Maior dimensão simulada, em milímetros. */
+    private static final double DIMENSAO_MAXIMA = 50;
+
+    /** Indica se simula a câmera (conferência) em vez do laser. */
+    private final boolean camera;
+
+    /** Desvio padrão do ruído somado a cada medida, em milímetros. */
+    private final double ruido;
+
+    private final Random aleatorio;
+
+    /** Erro acrescentado a cada leitura, em mm, até a próxima calibração. */
+    private volatile double derivaPorLeitura;
+    private double desvioAcumulado;
+
+    private double velocidadeAtualDoSlider;
+    private boolean calibrado = false;
+    private boolean ativo = false;
+
+    /**
+     * @param camera {@code true} para simular a câmera, {@code false} para o laser.
+     * @param ruido desvio padrão do ruído das medidas, em milímetros.
+     * @param semente semente do gerador de ruído, para ensaios reprodutíveis.
+     */
+    public SensorSimulado(boolean camera, double ruido, long semente) {
+        if (ruido < 0) {
+            throw new IllegalArgumentException("Ruído não pode ser negativo.");
+        }
+        this.camera = camera;
+        this.ruido = ruido;
+        this.aleatorio = new Random(semente);
+    }
+
+    /**
+     * Faz o sensor derivar: cada leitura sai {@code derivaPorLeitura} mm maior que a anterior,
+     * até {@link #calibrar()} zerar o erro acumulado. Usado para ensaiar o {@code MonitorSensor}.
+     */
+    public void setDeriva(double derivaPorLeitura) {
+        this.derivaPorLeitura = derivaPorLeitura;
+    }
+
+    public synchronized boolean isAtivo() {
+        return ativo;
+    }
+
+    public synchronized boolean isCalibrado() {
+        return calibrado;
+    }
+
+    /**
+     * Mede a amostra do leitor e envia as medidas a ele.
+     */
+    @Override
+    public synchronized void iniciar(Leitor leitor) {
+        if (!calibrado) {
+            calibrar();
+        }
+        ativo = true;
+        enviarDadosAoLeitor(leitor);
+    }
+
+    /**
+     * @return {@code 1.0} enquanto o leitor estiver em modo de detecção; {@code 0.0} caso contrário.
+     */
+    @Override
+    public double lerDados(Leitor leitor) {
+        return leitor.isDetectando() ? 1 : 0;
+    }
+
+    @Override
+    public synchronized void reset() {
+        calibrado = false;
+    }
+
+    @Override
+    public synchronized void encerrar() {
+        ativo = false;
+    }
+
+    @Override
+    public synchronized void calibrar() {
+        velocidadeAtualDoSlider = camera ? 0 : 0.05;
+        desvioAcumulado = 0;
+        calibrado = true;
+    }
+
+    @Override
+    public synchronized void enviarDadosAoLeitor(Leitor leitor) {
+        Random dimensoes = new Random(leitor.getAmostra().getId());
+        desvioAcumulado += derivaPorLeitura;
+        double altura = medir(dimensoes);
+        double comprimento = medir(dimensoes);
+        double profundidade = medir(dimensoes);
+
+        leitor.setDetectando();
+        if (camera) {
+            leitor.setLeituraCameraAltura(altura);
+            leitor.setLeituraCameraComprimento(comprimento);
+        } else {
+            leitor.setLeituraAltura(altura);
+            leitor.setLeituraComprimento(comprimento);
+            leitor.setLeituraProfundidade(profundidade);
+        }
+        leitor.setDetectando();
+    }
+
+    @Override
+    public synchronized double getVelocidadeAtualDoSlider() {
+        return calibrado ? velocidadeAtualDoSlider : 0;
+    }
+
+    /**
+     * O ruído configurado, com mínimo de 0,01 mm.
+     */
+    @Override
+    public double getIncerteza() {
+        return Math.max(ruido, 0.01);
+    }
+
+    @Override
+    public boolean isConferencia() {
+        return camera;
+    }
+
+    private double medir(Random dimensoes) {
+        double real = 1 + dimensoes.nextDouble() * (DIMENSAO_MAXIMA - 1);
+        return Math.max(0, real + desvioAcumulado + aleatorio.nextGaussian() * ruido);
+    }
+}
@@ -0,0 +1,383 @@
+package br.com.lumepath.codec;
+
+import br.com.lumepath.bean.Amostra;
+import br.com.lumepath.bean.AnalisePatologica;
+import br.com.lumepath.bean.Leitor;
+import br.com.lumepath.bean.Paciente;
+import br.com.lumepath.bean.PatologistaResponsavel;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Codificação binária compacta dos beans, usada em persistência, cache e transferência
+ * entre estações.
+ *
+ * <p>Formato de cada registro: um byte com o tipo, um byte com a versão do esquema e os
+ * campos na ordem fixa do tipo. Inteiros usam varint (LEB128, com zigzag quando podem ser
+ * negativos), datas são gravadas como dia de época ({@link Long#MIN_VALUE} para data ausente,
+ * valor que nenhuma {@link LocalDate} alcança) e textos passam por um dicionário:
+ * a primeira ocorrência grava o texto e as seguintes gravam apenas o índice.</p>
+ *
+ * <p>O dicionário pertence à instância, então o mesmo codec deve ser usado para ler todos
+ * os registros que outro codec gravou, na mesma ordem. Instâncias não são thread-safe.</p>
+ *
+ * <p>Registros de versões anteriores continuam legíveis. A versão 2 acrescentou as
+ * incertezas das medidas da amostra.</p>
+ *
+ * <p>A leitura recria os beans pelos métodos {@code restaurar}, sem passar pelos setters: os
+ * dados foram validados quando gravados, e uma data de coleta lida depois da meia-noite, por
+ * exemplo, não pode abrir um diálogo nem falhar em uma estação sem tela.</p>
+ *
+ * @author Ricardo
+ * @version 1.0
+ */
+public class CodecBinario {
+
+    /** Versão atual do esquema gravada em cada registro. */
+    public static final int VERSAO = 2;
+
+    public static final byte TIPO_PACIENTE = 1;
+    public static final byte TIPO_AMOSTRA = 2;
+    public static final byte TIPO_PATOLOGISTA = 3;
+    public static final byte TIPO_ANALISE = 4;
+    public static final byte TIPO_LEITURA = 5;
+
+    /** Quantidade máxima de textos mantidos no dicionário. */
+    private static final int TAMANHO_MAXIMO_DICIONARIO = 4096;
+
+    /** Marcadores de texto; índices do dicionário começam em {@code TEXTO_DICIONARIO}. */
+    private static final int TEXTO_NULO = 0;
+    private static final int TEXTO_LITERAL = 1;
+    private static final int TEXTO_DICIONARIO = 2;
+
+    /** Dia de época gravado no lugar de uma data nula. */
+    private static final long DATA_NULA = Long.MIN_VALUE;
+
+    /** Maior registro de leituras: cabeçalho, cinco medidas, marcador e instante. */
+    public static final int TAMANHO_MAXIMO_LEITURAS = 2 + 5 * Double.BYTES + 1 + 10;
+
+    /** Maior varint de um {@code int} e de um {@code long}, em bytes. */
+    private static final int VARINT_INT = 5;
+    private static final int VARINT_LONG = 10;
+
+    private final Map<String, Integer> dicionarioEscrita = new HashMap<>();
+    private final List<String> dicionarioLeitura = new ArrayList<>();
+
+    /**
+     * Descarta o dicionário, para começar um novo fluxo independente.
+     */
+    public void reiniciar() {
+        dicionarioEscrita.clear();
+        dicionarioLeitura.clear();
+    }
+
+    // Tamanhos
+
+    /*
+     * Limites superiores do tamanho de cada registro, para dimensionar o buffer antes de
+     * escrever. Supõem todos os textos gravados por extenso (sem o dicionário).
+     */
+
+    public static long tamanhoMaximo(Paciente paciente) {
+        return 2 + VARINT_INT + tamanhoMaximo(paciente.getNome()) + tamanhoMaximo(paciente.getCpf()) + VARINT_LONG
+                + tamanhoMaximo(paciente.getSexo()) + VARINT_LONG;
+    }
+
+    public static long tamanhoMaximo(Amostra amostra) {
+        return 2 + VARINT_INT + VARINT_LONG + tamanhoMaximo(amostra.getLocalDaColeta())
+                + tamanhoMaximo(amostra.getTipoDeColeta()) + tamanhoMaximo(amostra.getLocalAnatomico())
+                + 6 * Double.BYTES;
+    }
+
+    public static long tamanhoMaximo(PatologistaResponsavel patologista) {
+        return 2 + VARINT_INT + tamanhoMaximo(patologista.getNome()) + tamanhoMaximo(patologista.getCrm())
+                + tamanhoMaximo(patologista.getEspecialidade()) + tamanhoMaximo(patologista.getEmail());
+    }
+
+    /**
+     * Inclui a amostra e o patologista associados, gravados junto com a análise.
+     */
+    public static long tamanhoMaximo(AnalisePatologica analise) {
+        return 2 + VARINT_INT + VARINT_LONG + tamanhoMaximo(analise.getDescricao())
+                + tamanhoMaximo(analise.getDiagnosticoPreliminar())
+                + 1 + (analise.getAmostra() == null ? 0 : tamanhoMaximo(analise.getAmostra()))
+                + 1 + (analise.getPatologistaResponsavel() == null ? 0 : tamanhoMaximo(analise.getPatologistaResponsavel()));
+    }
+
+    /**
+     * Marcador, tamanho e bytes UTF-8 do texto, contados sem codificá-lo.
+     */
+    private static long tamanhoMaximo(String texto) {
+        if (texto == null) {
+            return 1;
+        }
+        long bytes = 0;
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            // Cada metade de um par substituto conta 3, mais que os 4 bytes do par
+            bytes += c < 0x80 ? 1 : c < 0x800 ? 2 : 3;
+        }
+        return 1 + VARINT_INT + bytes;
+    }
+
+    // Paciente
+
+    public void escreverPaciente(ByteBuffer buffer, Paciente paciente) {
+        cabecalho(buffer, TIPO_PACIENTE);
+        escreverVarint(buffer, paciente.getId());
+        escreverTexto(buffer, paciente.getNome());
+        escreverTexto(buffer, paciente.getCpf());
+        escreverData(buffer, paciente.getDataDeNascimento());
+        escreverTexto(buffer, paciente.getSexo());
+        escreverVarintComSinal(buffer, paciente.getCodigoProntuario());
+    }
+
+    public Paciente lerPaciente(ByteBuffer buffer) {
+        conferirCabecalho(buffer, TIPO_PACIENTE);
+        int id = (int) lerVarint(buffer);
+        String nome = lerTexto(buffer);
+        String cpf = lerTexto(buffer);
+        LocalDate nascimento = lerData(buffer);
+        String sexo = lerTexto(buffer);
+        int prontuario = (int) lerVarintComSinal(buffer);
+        return Paciente.restaurar(id, nome, cpf, nascimento, sexo, prontuario);
+    }
+
+    // Amostra
+
+    public void escreverAmostra(ByteBuffer buffer, Amostra amostra) {
+        cabecalho(buffer, TIPO_AMOSTRA);
+        escreverVarint(buffer, amostra.getId());
+        escreverData(buffer, amostra.getDataDeColeta());
+        escreverTexto(buffer, amostra.getLocalDaColeta());
+        escreverTexto(buffer, amostra.getTipoDeColeta());
+        escreverTexto(buffer, amostra.getLocalAnatomico());
+        buffer.putDouble(amostra.getComprimento());
+        buffer.putDouble(amostra.getProfundidade());
+        buffer.putDouble(amostra.getAltura());
+        buffer.putDouble(amostra.getIncertezaComprimento());
+        buffer.putDouble(amostra.getIncertezaProfundidade());
+        buffer.putDouble(amostra.getIncertezaAltura());
+    }
+
+    public Amostra lerAmostra(ByteBuffer buffer) {
+        int versao = conferirCabecalho(buffer, TIPO_AMOSTRA);
+        int id = (int) lerVarint(buffer);
+        LocalDate dataDeColeta = lerData(buffer);
+        String localDaColeta = lerTexto(buffer);
+        String tipoDeColeta = lerTexto(buffer);
+        String localAnatomico = lerTexto(buffer);
+        double comprimento = buffer.getDouble();
+        double profundidade = buffer.getDouble();
+        double altura = buffer.getDouble();
+        // Incertezas a partir da versão 2
+        double incertezaComprimento = versao >= 2 ? buffer.getDouble() : 0;
+        double incertezaProfundidade = versao >= 2 ? buffer.getDouble() : 0;
+        double incertezaAltura = versao >= 2 ? buffer.getDouble() : 0;
+        return Amostra.restaurar(id, dataDeColeta, localDaColeta, tipoDeColeta, localAnatomico, comprimento,
+                profundidade, altura, incertezaComprimento, incertezaProfundidade, incertezaAltura);
+    }
+
+    // Patologista
+
+    public void escreverPatologista(ByteBuffer buffer, PatologistaResponsavel patologista) {
+        cabecalho(buffer, TIPO_PATOLOGISTA);
+        escreverVarint(buffer, patologista.getId());
+        escreverTexto(buffer, patologista.getNome());
+        escreverTexto(buffer, patologista.getCrm());
+        escreverTexto(buffer, patologista.getEspecialidade());
+        escreverTexto(buffer, patologista.getEmail());
+    }
+
+    public PatologistaResponsavel lerPatologista(ByteBuffer buffer) {
+        conferirCabecalho(buffer, TIPO_PATOLOGISTA);
+        int id = (int) lerVarint(buffer);
+        return PatologistaResponsavel.restaurar(id, lerTexto(buffer), lerTexto(buffer), lerTexto(buffer),
+                lerTexto(buffer));
+    }
+
+    // Análise
+
+    /**
+     * Grava a análise junto com a amostra e o patologista associados, quando houver.
+     */
+    public void escreverAnalise(ByteBuffer buffer, AnalisePatologica analise) {
+        cabecalho(buffer, TIPO_ANALISE);
+        escreverVarint(buffer, analise.getId());
+        escreverData(buffer, analise.getDataAnalise());
+        escreverTexto(buffer, analise.getDescricao());
+        escreverTexto(buffer, analise.getDiagnosticoPreliminar());
+
+        buffer.put((byte) (analise.getAmostra() == null ? 0 : 1));
+        if (analise.getAmostra() != null) {
+            escreverAmostra(buffer, analise.getAmostra());
+        }
+        buffer.put((byte) (analise.getPatologistaResponsavel() == null ? 0 : 1));
+        if (analise.getPatologistaResponsavel() != null) {
+            escreverPatologista(buffer, analise.getPatologistaResponsavel());
+        }
+    }
+
+    public AnalisePatologica lerAnalise(ByteBuffer buffer) {
+        conferirCabecalho(buffer, TIPO_ANALISE);
+        int id = (int) lerVarint(buffer);
+        LocalDate dataAnalise = lerData(buffer);
+        String descricao = lerTexto(buffer);
+        String diagnostico = lerTexto(buffer);
+        Amostra amostra = buffer.get() != 0 ? lerAmostra(buffer) : null;
+        PatologistaResponsavel patologista = buffer.get() != 0 ? lerPatologista(buffer) : null;
+        return AnalisePatologica.restaurar(id, dataAnalise, descricao, diagnostico, amostra, patologista);
+    }
+
+    // Leituras
+
+    /**
+     * Grava as medidas brutas do leitor. A precisão não é gravada, pois é derivada
+     * das próprias medidas por {@link Leitor#calcPrecisao()}.
+     */
+    public void escreverLeituras(ByteBuffer buffer, Leitor leitor) {
+        cabecalho(buffer, TIPO_LEITURA);
+        buffer.putDouble(leitor.getLeituraAltura());
+        buffer.putDouble(leitor.getLeituraComprimento());
+        buffer.putDouble(leitor.getLeituraProfundidade());
+        buffer.putDouble(leitor.getLeituraCameraAltura());
+        buffer.putDouble(leitor.getLeituraCameraComprimento());
+        LocalDateTime ultimaLeitura = leitor.getUltimaLeitura();
+        buffer.put((byte) (ultimaLeitura == null ? 0 : 1));
+        if (ultimaLeitura != null) {
+            escreverVarintComSinal(buffer, ultimaLeitura.toInstant(ZoneOffset.UTC).toEpochMilli());
+        }
+    }
+
+    /**
+     * Lê medidas gravadas por {@link #escreverLeituras} para dentro de um leitor existente.
+     *
+     * @param buffer origem dos dados.
+     * @param leitor leitor que receberá as medidas.
+     */
+    public void lerLeituras(ByteBuffer buffer, Leitor leitor) {
+        conferirCabecalho(buffer, TIPO_LEITURA);
+        leitor.setLeituraAltura(buffer.getDouble());
+        leitor.setLeituraComprimento(buffer.getDouble());
+        leitor.setLeituraProfundidade(buffer.getDouble());
+        leitor.setLeituraCameraAltura(buffer.getDouble());
+        leitor.setLeituraCameraComprimento(buffer.getDouble());
+        if (buffer.get() != 0) {
+            long millis = lerVarintComSinal(buffer);
+            leitor.setUltimaLeitura(LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneOffset.UTC));
+        }
+    }
+
+    /**
+     * Retorna o tipo do próximo registro sem consumir bytes do buffer.
+     */
+    public static byte espiarTipo(ByteBuffer buffer) {
+        return buffer.get(buffer.position());
+    }
+
+    // Primitivos
+
+    private static void cabecalho(ByteBuffer buffer, byte tipo) {
+        buffer.put(tipo);
+        buffer.put((byte) VERSAO);
+    }
+
+    /**
+     * @return versão do esquema do registro; versões anteriores à atual continuam legíveis.
+     */
+    private static int conferirCabecalho(ByteBuffer buffer, byte tipoEsperado) {
+        byte tipo = buffer.get();
+        int versao = buffer.get();
+        if (tipo != tipoEsperado) {
+            throw new IllegalArgumentException("Registro do tipo " + tipo + ", esperado " + tipoEsperado + ".");
+        }
+        if (versao < 1 || versao > VERSAO) {
+            throw new IllegalArgumentException("Versão de esquema não suportada: " + versao);
+        }
+        return versao;
+    }
+
+    static void escreverVarint(ByteBuffer buffer, long valor) {
+        while ((valor & ~0x7FL) != 0) {
+            buffer.put((byte) ((valor & 0x7F) | 0x80));
+            valor >>>= 7;
+        }
+        buffer.put((byte) valor);
+    }
+
+    static long lerVarint(ByteBuffer buffer) {
+        long valor = 0;
+        for (int deslocamento = 0; deslocamento < 64; deslocamento += 7) {
+            byte b = buffer.get();
+            valor |= (long) (b & 0x7F) << deslocamento;
+            if ((b & 0x80) == 0) {
+                return valor;
+            }
+        }
+        throw new IllegalArgumentException("Varint malformado.");
+    }
+
+    static void escreverVarintComSinal(ByteBuffer buffer, long valor) {
+        escreverVarint(buffer, (valor << 1) ^ (valor >> 63));
+    }
+
+    static long lerVarintComSinal(ByteBuffer buffer) {
+        long valor = lerVarint(buffer);
+        return (valor >>> 1) ^ -(valor & 1);
+    }
+
+    private static void escreverData(ByteBuffer buffer, LocalDate data) {
+        escreverVarintComSinal(buffer, data == null ? DATA_NULA : data.toEpochDay());
+    }
+
+    private static LocalDate lerData(ByteBuffer buffer) {
+        long dia = lerVarintComSinal(buffer);
+        return dia == DATA_NULA ? null : LocalDate.ofEpochDay(dia);
+    }
+
+    private void escreverTexto(ByteBuffer buffer, String texto) {
+        if (texto == null) {
+            escreverVarint(buffer, TEXTO_NULO);
+            return;
+        }
+        Integer indice = dicionarioEscrita.get(texto);
+        if (indice != null) {
+            escreverVarint(buffer, TEXTO_DICIONARIO + indice);
+            return;
+        }
+        // Leitor e escritor registram o texto sob a mesma condição, mantendo os índices iguais
+        if (dicionarioEscrita.size() < TAMANHO_MAXIMO_DICIONARIO) {
+            dicionarioEscrita.put(texto, dicionarioEscrita.size());
+        }
+        byte[] bytes = texto.getBytes(StandardCharsets.UTF_8);
+        escreverVarint(buffer, TEXTO_LITERAL);
+        escreverVarint(buffer, bytes.length);
+        buffer.put(bytes);
+    }
+
+    private String lerTexto(ByteBuffer buffer) {
+        int marcador = (int) lerVarint(buffer);
+        if (marcador == TEXTO_NULO) {
+            return null;
+        }
+        if (marcador >= TEXTO_DICIONARIO) {
+            return dicionarioLeitura.get(marcador - TEXTO_DICIONARIO);
+        }
+        byte[] bytes = new byte[(int) lerVarint(buffer)];
+        buffer.get(bytes);
+        String texto = new String(bytes, StandardCharsets.UTF_8);
+        if (dicionarioLeitura.size() < TAMANHO_MAXIMO_DICIONARIO) {
+            dicionarioLeitura.add(texto);
+        }
+        return texto;
+    }
+}
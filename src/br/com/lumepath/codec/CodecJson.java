@@ -0,0 +1,211 @@
+package br.com.lumepath.codec;
+
+import br.com.lumepath.bean.Amostra;
+import br.com.lumepath.bean.AnalisePatologica;
+import br.com.lumepath.bean.Paciente;
+import br.com.lumepath.bean.PatologistaResponsavel;
+
+import java.time.LocalDate;
+
+/**
+ * Conversão JSON dos beans expostos pela API, escrita campo a campo sem reflexão.
+ *
+ * <p>Os nomes dos campos seguem os atributos dos beans e as datas usam o formato ISO.
+ * Na leitura, campos desconhecidos são ignorados e os ausentes ficam com o valor padrão
+ * do bean. Os beans são recriados pelos métodos {@code restaurar}, sem validação nem diálogos.</p>
+ *
+ * @author Ricardo
+ * @version 1.0
+ */
+public final class CodecJson {
+
+    private CodecJson() {
+    }
+
+    /**
+     * Gera o JSON do paciente usando o buffer da thread atual.
+     */
+    public static byte[] paraJson(Paciente paciente) {
+        return escrever(EscritorJson.local(), paciente).toByteArray();
+    }
+
+    public static byte[] paraJson(Amostra amostra) {
+        return escrever(EscritorJson.local(), amostra).toByteArray();
+    }
+
+    public static byte[] paraJson(PatologistaResponsavel patologista) {
+        return escrever(EscritorJson.local(), patologista).toByteArray();
+    }
+
+    public static byte[] paraJson(AnalisePatologica analise) {
+        return escrever(EscritorJson.local(), analise).toByteArray();
+    }
+
+    // Paciente
+
+    public static EscritorJson escrever(EscritorJson json, Paciente paciente) {
+        return json.inicioObjeto()
+                .campo("id").valor(paciente.getId())
+                .campo("nome").valor(paciente.getNome())
+                .campo("cpf").valor(paciente.getCpf())
+                .campo("dataDeNascimento").valor(paciente.getDataDeNascimento())
+                .campo("sexo").valor(paciente.getSexo())
+                .campo("codigoProntuario").valor(paciente.getCodigoProntuario())
+                .fimObjeto();
+    }
+
+    public static Paciente lerPaciente(LeitorJson json) {
+        int id = 0;
+        int prontuario = 0;
+        String nome = null;
+        String cpf = null;
+        String sexo = null;
+        LocalDate nascimento = null;
+
+        json.inicioObjeto();
+        for (String campo = json.proximoCampo(); campo != null; campo = json.proximoCampo()) {
+            switch (campo) {
+                case "id": id = json.lerInt(); break;
+                case "nome": nome = json.lerTexto(); break;
+                case "cpf": cpf = json.lerTexto(); break;
+                case "dataDeNascimento": nascimento = json.lerData(); break;
+                case "sexo": sexo = json.lerTexto(); break;
+                case "codigoProntuario": prontuario = json.lerInt(); break;
+                default: json.pular();
+            }
+        }
+        return Paciente.restaurar(id, nome, cpf, nascimento, sexo, prontuario);
+    }
+
+    // Amostra
+
+    public static EscritorJson escrever(EscritorJson json, Amostra amostra) {
+        return json.inicioObjeto()
+                .campo("id").valor(amostra.getId())
+                .campo("dataDeColeta").valor(amostra.getDataDeColeta())
+                .campo("localDaColeta").valor(amostra.getLocalDaColeta())
+                .campo("tipoDeColeta").valor(amostra.getTipoDeColeta())
+                .campo("localAnatomico").valor(amostra.getLocalAnatomico())
+                .campo("comprimento").valor(amostra.getComprimento())
+                .campo("profundidade").valor(amostra.getProfundidade())
+                .campo("altura").valor(amostra.getAltura())
+                .campo("incertezaComprimento").valor(amostra.getIncertezaComprimento())
+                .campo("incertezaProfundidade").valor(amostra.getIncertezaProfundidade())
+                .campo("incertezaAltura").valor(amostra.getIncertezaAltura())
+                .fimObjeto();
+    }
+
+    public static Amostra lerAmostra(LeitorJson json) {
+        int id = 0;
+        LocalDate dataDeColeta = null;
+        String localDaColeta = null;
+        String tipoDeColeta = null;
+        String localAnatomico = null;
+        double comprimento = 0;
+        double profundidade = 0;
+        double altura = 0;
+        double incertezaComprimento = 0;
+        double incertezaProfundidade = 0;
+        double incertezaAltura = 0;
+
+        json.inicioObjeto();
+        for (String campo = json.proximoCampo(); campo != null; campo = json.proximoCampo()) {
+            switch (campo) {
+                case "id": id = json.lerInt(); break;
+                case "dataDeColeta": dataDeColeta = json.lerData(); break;
+                case "localDaColeta": localDaColeta = json.lerTexto(); break;
+                case "tipoDeColeta": tipoDeColeta = json.lerTexto(); break;
+                case "localAnatomico": localAnatomico = json.lerTexto(); break;
+                case "comprimento": comprimento = json.lerDouble(); break;
+                case "profundidade": profundidade = json.lerDouble(); break;
+                case "altura": altura = json.lerDouble(); break;
+                case "incertezaComprimento": incertezaComprimento = json.lerDouble(); break;
+                case "incertezaProfundidade": incertezaProfundidade = json.lerDouble(); break;
+                case "incertezaAltura": incertezaAltura = json.lerDouble(); break;
+                default: json.pular();
+            }
+        }
+        return Amostra.restaurar(id, dataDeColeta, localDaColeta, tipoDeColeta, localAnatomico, comprimento,
+                profundidade, altura, incertezaComprimento, incertezaProfundidade, incertezaAltura);
+    }
+
+    // Patologista
+
+    public static EscritorJson escrever(EscritorJson json, PatologistaResponsavel patologista) {
+        return json.inicioObjeto()
+                .campo("id").valor(patologista.getId())
+                .campo("nome").valor(patologista.getNome())
+                .campo("crm").valor(patologista.getCrm())
+                .campo("especialidade").valor(patologista.getEspecialidade())
+                .campo("email").valor(patologista.getEmail())
+                .fimObjeto();
+    }
+
+    public static PatologistaResponsavel lerPatologista(LeitorJson json) {
+        int id = 0;
+        String nome = null;
+        String crm = null;
+        String especialidade = null;
+        String email = null;
+
+        json.inicioObjeto();
+        for (String campo = json.proximoCampo(); campo != null; campo = json.proximoCampo()) {
+            switch (campo) {
+                case "id": id = json.lerInt(); break;
+                case "nome": nome = json.lerTexto(); break;
+                case "crm": crm = json.lerTexto(); break;
+                case "especialidade": especialidade = json.lerTexto(); break;
+                case "email": email = json.lerTexto(); break;
+                default: json.pular();
+            }
+        }
+        return PatologistaResponsavel.restaurar(id, nome, crm, especialidade, email);
+    }
+
+    // Análise
+
+    public static EscritorJson escrever(EscritorJson json, AnalisePatologica analise) {
+        json.inicioObjeto()
+                .campo("id").valor(analise.getId())
+                .campo("dataAnalise").valor(analise.getDataAnalise())
+                .campo("descricao").valor(analise.getDescricao())
+                .campo("diagnosticoPreliminar").valor(analise.getDiagnosticoPreliminar());
+
+        json.campo("amostra");
+        if (analise.getAmostra() == null) {
+            json.nulo();
+        } else {
+            escrever(json, analise.getAmostra());
+        }
+        json.campo("patologista");
+        if (analise.getPatologistaResponsavel() == null) {
+            json.nulo();
+        } else {
+            escrever(json, analise.getPatologistaResponsavel());
+        }
+        return json.fimObjeto();
+    }
+
+    public static AnalisePatologica lerAnalise(LeitorJson json) {
+        int id = 0;
+        LocalDate dataAnalise = null;
+        String descricao = null;
+        String diagnostico = null;
+        Amostra amostra = null;
+        PatologistaResponsavel patologista = null;
+
+        json.inicioObjeto();
+        for (String campo = json.proximoCampo(); campo != null; campo = json.proximoCampo()) {
+            switch (campo) {
+                case "id": id = json.lerInt(); break;
+                case "dataAnalise": dataAnalise = json.lerData(); break;
+                case "descricao": descricao = json.lerTexto(); break;
+                case "diagnosticoPreliminar": diagnostico = json.lerTexto(); break;
+                case "amostra": amostra = json.lerNulo() ? null : lerAmostra(json); break;
+                case "patologista": patologista = json.lerNulo() ? null : lerPatologista(json); break;
+                default: json.pular();
+            }
+        }
+        return AnalisePatologica.restaurar(id, dataAnalise, descricao, diagnostico, amostra, patologista);
+    }
+}
@@ -0,0 +1,258 @@
+package br.com.lumepath.codec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * Escritor de JSON que gera UTF-8 diretamente em um buffer de bytes reaproveitável.
+ *
+ * <p>Não monta árvores nem mapas intermediários: cada chamada acrescenta o trecho
+ * correspondente ao buffer. A vírgula entre campos é controlada por uma pilha de bits,
+ * com até 64 níveis de aninhamento.</p>
+ *
+ * <p>Use {@link #local()} para obter a instância da thread atual, já vazia, evitando
+ * alocar um buffer novo por requisição.</p>
+ *
+ * @author Ricardo
+ * @version 1.0
+ */
+public class EscritorJson {
+
+    private static final ThreadLocal<EscritorJson> LOCAL = ThreadLocal.withInitial(EscritorJson::new);
+
+    /** Buffers que crescerem além disso são descartados ao reiniciar, para não reter memória. */
+    private static final int TAMANHO_MAXIMO_RETIDO = 64 * 1024;
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+    private static final byte[] NULO = "null".getBytes();
+
+    private byte[] bytes = new byte[1024];
+    private int tamanho;
+
+    /** Bit {@code n} ligado indica que o nível {@code n} já tem ao menos um elemento. */
+    private long temElemento;
+    private int nivel;
+
+    /**
+     * Retorna o escritor da thread atual, vazio e pronto para uso.
+     */
+    public static EscritorJson local() {
+        EscritorJson escritor = LOCAL.get();
+        escritor.reiniciar();
+        return escritor;
+    }
+
+    public EscritorJson reiniciar() {
+        if (bytes.length > TAMANHO_MAXIMO_RETIDO) {
+            bytes = new byte[1024];
+        }
+        tamanho = 0;
+        temElemento = 0;
+        nivel = 0;
+        return this;
+    }
+
+    public EscritorJson inicioObjeto() {
+        separador();
+        acrescentar('{');
+        entrarNivel();
+        return this;
+    }
+
+    public EscritorJson fimObjeto() {
+        nivel--;
+        acrescentar('}');
+        return this;
+    }
+
+    public EscritorJson inicioLista() {
+        separador();
+        acrescentar('[');
+        entrarNivel();
+        return this;
+    }
+
+    public EscritorJson fimLista() {
+        nivel--;
+        acrescentar(']');
+        return this;
+    }
+
+    /**
+     * Escreve o nome de um campo; o próximo valor escrito pertence a ele.
+     */
+    public EscritorJson campo(String nome) {
+        separador();
+        texto(nome);
+        acrescentar(':');
+        // O valor seguinte não deve receber vírgula
+        temElemento &= ~(1L << nivel);
+        return this;
+    }
+
+    public EscritorJson valor(String valor) {
+        separador();
+        if (valor == null) {
+            acrescentar(NULO);
+        } else {
+            texto(valor);
+        }
+        return this;
+    }
+
+    public EscritorJson valor(long valor) {
+        separador();
+        if (valor == Long.MIN_VALUE) {
+            acrescentar(Long.toString(valor));
+            return this;
+        }
+        if (valor < 0) {
+            acrescentar('-');
+            valor = -valor;
+        }
+        garantir(20);
+        int inicio = tamanho;
+        do {
+            bytes[tamanho++] = (byte) ('0' + valor % 10);
+            valor /= 10;
+        } while (valor != 0);
+        // Os dígitos foram gerados do menos para o mais significativo
+        for (int i = inicio, j = tamanho - 1; i < j; i++, j--) {
+            byte b = bytes[i];
+            bytes[i] = bytes[j];
+            bytes[j] = b;
+        }
+        return this;
+    }
+
+    public EscritorJson valor(double valor) {
+        separador();
+        if (Double.isNaN(valor) || Double.isInfinite(valor)) {
+            acrescentar(NULO);
+        } else {
+            acrescentar(Double.toString(valor));
+        }
+        return this;
+    }
+
+    /**
+     * Escreve a data no formato ISO ({@code yyyy-MM-dd}).
+     */
+    public EscritorJson valor(LocalDate data) {
+        return valor(data == null ? null : data.toString());
+    }
+
+    public EscritorJson nulo() {
+        separador();
+        acrescentar(NULO);
+        return this;
+    }
+
+    public int getTamanho() {
+        return tamanho;
+    }
+
+    /**
+     * Copia o JSON gerado para um novo array.
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(bytes, tamanho);
+    }
+
+    /**
+     * Copia o JSON gerado para o buffer informado.
+     */
+    public void escreverEm(ByteBuffer destino) {
+        destino.put(bytes, 0, tamanho);
+    }
+
+    /**
+     * Envia o JSON gerado para o fluxo informado, sem cópia intermediária.
+     */
+    public void escreverEm(OutputStream destino) throws IOException {
+        destino.write(bytes, 0, tamanho);
+    }
+
+    private void entrarNivel() {
+        nivel++;
+        if (nivel >= 64) {
+            throw new IllegalStateException("Aninhamento de JSON muito profundo.");
+        }
+        temElemento &= ~(1L << nivel);
+    }
+
+    private void separador() {
+        long bit = 1L << nivel;
+        if ((temElemento & bit) != 0) {
+            acrescentar(',');
+        }
+        temElemento |= bit;
+    }
+
+    private void texto(String texto) {
+        garantir(texto.length() * 3 + 2);
+        bytes[tamanho++] = '"';
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            if (c == '"' || c == '\\') {
+                garantir(2);
+                bytes[tamanho++] = '\\';
+                bytes[tamanho++] = (byte) c;
+            } else if (c < 0x20) {
+                garantir(6);
+                bytes[tamanho++] = '\\';
+                bytes[tamanho++] = 'u';
+                bytes[tamanho++] = '0';
+                bytes[tamanho++] = '0';
+                bytes[tamanho++] = HEX[c >> 4];
+                bytes[tamanho++] = HEX[c & 0xF];
+            } else if (c < 0x80) {
+                bytes[tamanho++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[tamanho++] = (byte) (0xC0 | (c >> 6));
+                bytes[tamanho++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < texto.length()
+                    && Character.isLowSurrogate(texto.charAt(i + 1))) {
+                int codigo = Character.toCodePoint(c, texto.charAt(++i));
+                garantir(4);
+                bytes[tamanho++] = (byte) (0xF0 | (codigo >> 18));
+                bytes[tamanho++] = (byte) (0x80 | ((codigo >> 12) & 0x3F));
+                bytes[tamanho++] = (byte) (0x80 | ((codigo >> 6) & 0x3F));
+                bytes[tamanho++] = (byte) (0x80 | (codigo & 0x3F));
+            } else {
+                bytes[tamanho++] = (byte) (0xE0 | (c >> 12));
+                bytes[tamanho++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                bytes[tamanho++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        garantir(1);
+        bytes[tamanho++] = '"';
+    }
+
+    private void acrescentar(char c) {
+        garantir(1);
+        bytes[tamanho++] = (byte) c;
+    }
+
+    private void acrescentar(byte[] trecho) {
+        garantir(trecho.length);
+        System.arraycopy(trecho, 0, bytes, tamanho, trecho.length);
+        tamanho += trecho.length;
+    }
+
+    /** Usado apenas para trechos ASCII, como números. */
+    private void acrescentar(String ascii) {
+        garantir(ascii.length());
+        for (int i = 0; i < ascii.length(); i++) {
+            bytes[tamanho++] = (byte) ascii.charAt(i);
+        }
+    }
+
+    private void garantir(int adicional) {
+        if (tamanho + adicional > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, tamanho + adicional));
+        }
+    }
+}
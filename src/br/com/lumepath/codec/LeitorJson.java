@@ -0,0 +1,281 @@
+package br.com.lumepath.codec;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
+/**
+ * Leitor de JSON em modo "pull" que percorre os bytes UTF-8 diretamente.
+ *
+ * <p>Quem chama conduz a leitura: abre o objeto, pede o próximo campo e lê o valor com o
+ * tipo esperado. Campos desconhecidos podem ser ignorados com {@link #pular()}. Não há
+ * construção de mapas ou árvores intermediárias.</p>
+ *
+ * @author Ricardo
+ * @version 1.0
+ */
+public class LeitorJson {
+
+    private final byte[] bytes;
+    private final int fim;
+    private int posicao;
+
+    /** Buffer de caracteres reaproveitado na leitura de textos. */
+    private char[] caracteres = new char[64];
+
+    public LeitorJson(byte[] bytes) {
+        this(bytes, 0, bytes.length);
+    }
+
+    public LeitorJson(byte[] bytes, int inicio, int tamanho) {
+        this.bytes = bytes;
+        this.posicao = inicio;
+        this.fim = inicio + tamanho;
+    }
+
+    /**
+     * Lê o conteúdo restante de um {@link ByteBuffer}, sem copiar quando ele tem array.
+     */
+    public static LeitorJson de(ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            LeitorJson leitor = new LeitorJson(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            buffer.position(buffer.limit());
+            return leitor;
+        }
+        byte[] copia = new byte[buffer.remaining()];
+        buffer.get(copia);
+        return new LeitorJson(copia);
+    }
+
+    public void inicioObjeto() {
+        esperar('{');
+    }
+
+    /**
+     * Avança para o próximo campo do objeto atual.
+     *
+     * @return nome do campo, ou {@code null} quando o objeto terminou (o '}' é consumido).
+     */
+    public String proximoCampo() {
+        byte c = proximoSignificativo();
+        if (c == ',') {
+            posicao++;
+            c = proximoSignificativo();
+        }
+        if (c == '}') {
+            posicao++;
+            return null;
+        }
+        String nome = lerTexto();
+        esperar(':');
+        return nome;
+    }
+
+    public void inicioLista() {
+        esperar('[');
+    }
+
+    /**
+     * Indica se a lista atual tem mais elementos; consome o ']' quando terminou.
+     */
+    public boolean temProximoElemento() {
+        byte c = proximoSignificativo();
+        if (c == ',') {
+            posicao++;
+            c = proximoSignificativo();
+        }
+        if (c == ']') {
+            posicao++;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Indica se o próximo valor é {@code null}, consumindo-o nesse caso.
+     */
+    public boolean lerNulo() {
+        if (proximoSignificativo() == 'n') {
+            esperarLiteral("null");
+            return true;
+        }
+        return false;
+    }
+
+    public String lerTexto() {
+        if (lerNulo()) {
+            return null;
+        }
+        esperar('"');
+        int quantidade = 0;
+        while (true) {
+            if (posicao >= fim) {
+                throw erro("texto não terminado");
+            }
+            int b = bytes[posicao++] & 0xFF;
+            if (b == '"') {
+                return new String(caracteres, 0, quantidade);
+            }
+            if (quantidade + 2 > caracteres.length) {
+                char[] maior = new char[caracteres.length * 2];
+                System.arraycopy(caracteres, 0, maior, 0, quantidade);
+                caracteres = maior;
+            }
+            if (b == '\\') {
+                caracteres[quantidade++] = lerEscape();
+            } else if (b < 0x80) {
+                caracteres[quantidade++] = (char) b;
+            } else {
+                // Trechos multibyte são raros nos campos dos beans, então delega a decodificação
+                int inicio = posicao - 1;
+                int tamanho = b >= 0xF0 ? 4 : b >= 0xE0 ? 3 : 2;
+                String trecho = new String(bytes, inicio, tamanho, StandardCharsets.UTF_8);
+                posicao = inicio + tamanho;
+                for (int i = 0; i < trecho.length(); i++) {
+                    caracteres[quantidade++] = trecho.charAt(i);
+                }
+            }
+        }
+    }
+
+    public long lerLong() {
+        proximoSignificativo();
+        boolean negativo = bytes[posicao] == '-';
+        if (negativo) {
+            posicao++;
+        }
+        // Acumula em negativo para aceitar Long.MIN_VALUE, que não tem positivo correspondente
+        long valor = 0;
+        int inicio = posicao;
+        try {
+            while (posicao < fim && bytes[posicao] >= '0' && bytes[posicao] <= '9') {
+                valor = Math.subtractExact(Math.multiplyExact(valor, 10), bytes[posicao++] - '0');
+            }
+            if (posicao == inicio) {
+                throw erro("número esperado");
+            }
+            return negativo ? valor : Math.negateExact(valor);
+        } catch (ArithmeticException e) {
+            throw erro("número fora do intervalo de long");
+        }
+    }
+
+    public int lerInt() {
+        long valor = lerLong();
+        if (valor < Integer.MIN_VALUE || valor > Integer.MAX_VALUE) {
+            throw erro("número fora do intervalo de int");
+        }
+        return (int) valor;
+    }
+
+    public double lerDouble() {
+        if (lerNulo()) {
+            return Double.NaN;
+        }
+        int inicio = posicao;
+        while (posicao < fim && "+-.eE0123456789".indexOf(bytes[posicao]) >= 0) {
+            posicao++;
+        }
+        if (posicao == inicio) {
+            throw erro("número esperado");
+        }
+        return Double.parseDouble(new String(bytes, inicio, posicao - inicio, StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Lê uma data no formato ISO ({@code yyyy-MM-dd}).
+     */
+    public LocalDate lerData() {
+        String texto = lerTexto();
+        return texto == null ? null : LocalDate.parse(texto);
+    }
+
+    /**
+     * Ignora o próximo valor, qualquer que seja o tipo.
+     */
+    public void pular() {
+        byte c = proximoSignificativo();
+        if (c == '"') {
+            lerTexto();
+        } else if (c == '{') {
+            inicioObjeto();
+            while (proximoCampo() != null) {
+                pular();
+            }
+        } else if (c == '[') {
+            inicioLista();
+            while (temProximoElemento()) {
+                pular();
+            }
+        } else if (c == 't') {
+            esperarLiteral("true");
+        } else if (c == 'f') {
+            esperarLiteral("false");
+        } else if (!lerNulo()) {
+            lerDouble();
+        }
+    }
+
+    private char lerEscape() {
+        if (posicao >= fim) {
+            throw erro("escape não terminado");
+        }
+        byte b = bytes[posicao++];
+        switch (b) {
+            case '"': return '"';
+            case '\\': return '\\';
+            case '/': return '/';
+            case 'b': return '\b';
+            case 'f': return '\f';
+            case 'n': return '\n';
+            case 'r': return '\r';
+            case 't': return '\t';
+            case 'u':
+                if (fim - posicao < 4) {
+                    throw erro("escape \\u incompleto");
+                }
+                int codigo = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digito = Character.digit(bytes[posicao + i], 16);
+                    if (digito < 0) {
+                        throw erro("escape \\u com dígito hexadecimal inválido");
+                    }
+                    codigo = codigo * 16 + digito;
+                }
+                posicao += 4;
+                return (char) codigo;
+            default:
+                throw erro("escape inválido");
+        }
+    }
+
+    private byte proximoSignificativo() {
+        while (posicao < fim) {
+            byte b = bytes[posicao];
+            if (b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+                return b;
+            }
+            posicao++;
+        }
+        throw erro("fim inesperado");
+    }
+
+    private void esperar(char esperado) {
+        if (proximoSignificativo() != esperado) {
+            throw erro("'" + esperado + "' esperado");
+        }
+        posicao++;
+    }
+
+    private void esperarLiteral(String literal) {
+        for (int i = 0; i < literal.length(); i++) {
+            if (posicao >= fim || bytes[posicao++] != literal.charAt(i)) {
+                throw erro(literal + " esperado");
+            }
+        }
+    }
+
+    private IllegalArgumentException erro(String mensagem) {
+        return new IllegalArgumentException("JSON inválido na posição " + posicao + ": " + mensagem);
+    }
+}
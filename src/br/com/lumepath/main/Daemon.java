@@ -0,0 +1,403 @@
+package br.com.lumepath.main;
+
+import br.com.lumepath.bean.Amostra;
+import br.com.lumepath.bean.ISensor;
+import br.com.lumepath.bean.Paciente;
+import br.com.lumepath.bean.PatologistaResponsavel;
+import br.com.lumepath.bean.SensorGravador;
+import br.com.lumepath.bean.SensorReplay;
+import br.com.lumepath.bean.SensorSimulado;
+import br.com.lumepath.repository.IndicePacientes;
+import br.com.lumepath.service.Laboratorios;
+import br.com.lumepath.service.MonitorSensor;
+import br.com.lumepath.service.PipelineAnalises;
+import br.com.lumepath.service.ServidorFeed;
+import br.com.lumepath.service.TrilhaAuditoria;
+import br.com.lumepath.utils.Auditoria;
+import br.com.lumepath.utils.FeedAlteracoes;
+import br.com.lumepath.utils.GeradorId;
+import br.com.lumepath.utils.LaudoCache;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ponto de entrada sem interface gráfica, para servidores e contêineres.
+ *
+ * <p>Lê solicitações de análise de um arquivo (ou da entrada padrão) e as processa no
+ * {@link PipelineAnalises}, com sensores {@link SensorSimulado} ou sessões gravadas. Nenhuma classe Swing é
+ * carregada e {@code java.awt.headless} é ligado antes de qualquer outra coisa; o
+ * armazenamento só é aberto se configurado.</p>
+ *
+ * <p>Configuração em arquivo {@code .properties} ({@code --config=arquivo}) e/ou argumentos
+ * {@code --chave=valor}, que têm precedência:</p>
+ * <ul>
+ *     <li>{@code patologista.id}, {@code patologista.nome}, {@code patologista.crm},
+ *     {@code patologista.especialidade}, {@code patologista.email} (obrigatórios);</li>
+ *     <li>{@code entrada}: arquivo de solicitações, ou {@code -} para a entrada padrão (padrão);</li>
+ *     <li>{@code estacao}: número desta estação para o {@link GeradorId}, de 0 a 15
+ *     (obrigatório se a entrada tiver IDs vazios);</li>
+ *     <li>{@code armazenamento}: diretório onde cada laboratório grava leituras e análises em
+ *     {@code <codigo>.dat} (opcional);</li>
+ *     <li>{@code auditoria}: arquivo da trilha de auditoria das alterações nos cadastros (opcional);</li>
+ *     <li>{@code feed.porta}: porta HTTP do feed de análises, laudos e leituras
+ *     ({@link ServidorFeed}; padrão desligado); {@code feed.capacidade}: alterações retidas
+ *     para assinantes atrasados (padrão 65536); {@code feed.endereco}: endereço em que o feed
+ *     escuta (padrão {@value ServidorFeed#ENDERECO_PADRAO}, só conexões locais; o feed não tem
+ *     autenticação);</li>
+ *     <li>{@code laboratorio.padrao}: laboratório das linhas que não informam um (padrão {@code padrao});</li>
+ *     <li>{@code cache.laudos.peso}: peso máximo do cache de laudos de cada laboratório, em
+ *     caracteres; {@code cache.laudos.peso.<codigo>} define o de um laboratório específico;</li>
+ *     <li>{@code fila.capacidade}: capacidade das filas entre as etapas (padrão 256);</li>
+ *     <li>{@code threads.<etapa>}: threads da etapa, ex.: {@code threads.renderizacao=2};</li>
+ *     <li>{@code precisao.limite}: maior diferença aceita entre laser e câmera (padrão sem limite);</li>
+ *     <li>{@code sensor.ruido} e {@code sensor.semente}: ruído dos sensores simulados;</li>
+ *     <li>{@code sensor.deriva}: deriva simulada do laser por leitura, em mm (padrão 0);</li>
+ *     <li>{@code sensor.replay.laser} e {@code sensor.replay.camera}: sessões gravadas que
+ *     substituem o sensor simulado correspondente ({@link SensorReplay});</li>
+ *     <li>{@code sensor.replay.velocidade}: fator sobre o ritmo gravado, 0 para o mais rápido
+ *     possível (padrão 0); {@code sensor.replay.repetir}: recomeça a gravação ao fim (padrão false);</li>
+ *     <li>{@code sensor.gravar}: diretório onde as leituras dos sensores são gravadas para
+ *     reprodução posterior ({@link SensorGravador});</li>
+ *     <li>{@code monitor.ativo}: acompanha a saúde do laser com o {@link MonitorSensor} (padrão true);</li>
+ *     <li>{@code encerramento.prazo}: tempo máximo, em ms, para esvaziar o pipeline (padrão 30000);</li>
+ *     <li>{@code manter.ativo}: continua rodando após o fim da entrada, até receber sinal de término.</li>
+ * </ul>
+ *
+ * <p>Cada linha da entrada tem os campos separados por {@code ;}: ID do paciente, nome, CPF,
+ * data de nascimento (dd-MM-yyyy), sexo, prontuário, ID da amostra, local da coleta, tipo da
+ * coleta, local anatômico, ID da análise, descrição, diagnóstico e, opcionalmente, o código do
+ * laboratório. Os IDs só precisam ser únicos dentro de cada laboratório. Há dois modos, que não
+ * se misturam, porque um ID informado pode coincidir com um que o {@link GeradorId} ainda vai
+ * gerar:</p>
+ * <ul>
+ *     <li>sem estação configurada, os IDs vêm da entrada, e linhas com IDs vazios são recusadas;</li>
+ *     <li>com a estação da chave {@code estacao} ou de {@code -Dlumepath.estacao}, todos os IDs
+ *     são gerados, linhas com IDs preenchidos são recusadas e o paciente é reconhecido pelo CPF.</li>
+ * </ul>
+ * <p>Linhas vazias ou iniciadas por {@code #} são ignoradas.</p>
+ *
+ * <p>Ao receber sinal de término (ou no fim da entrada), para de aceitar solicitações e
+ * espera as leituras em andamento serem gravadas.</p>
+ *
+ * @author Ricardo
+ * @version 1.0
+ */
+public class Daemon {
+
+    private static final int CAMPOS_POR_LINHA = 13;
+    private static final String PREFIXO_PESO_LAUDOS = "cache.laudos.peso.";
+
+    private final Properties configuracao;
+    private final PipelineAnalises pipeline;
+    private final Laboratorios laboratorios;
+    private final TrilhaAuditoria auditoria;
+    private final ServidorFeed servidorFeed;
+    private final PatologistaResponsavel patologista;
+    private final AtomicBoolean encerrado = new AtomicBoolean();
+    private final AtomicLong concluidas = new AtomicLong();
+    private final AtomicLong falhas = new AtomicLong();
+    private final ISensor sensorLaser;
+    private final ISensor sensorCamera;
+    private final List<SensorGravador> gravadores = new ArrayList<>();
+    private final MonitorSensor monitor;
+    /** Indica se os IDs são gerados por esta estação em vez de lidos da entrada. */
+    private final boolean gerandoIds;
+
+    private Daemon(Properties configuracao) throws IOException {
+        this.configuracao = configuracao;
+        String estacao = configuracao.getProperty("estacao", "").trim();
+        if (!estacao.isEmpty()) {
+            System.setProperty(GeradorId.PROPRIEDADE_ESTACAO, estacao);
+        }
+        this.gerandoIds = GeradorId.isEstacaoDefinida();
+        if (gerandoIds) {
+            // Estação fora do intervalo é erro de configuração, não de cada linha
+            GeradorId.getEstacaoConfigurada();
+        }
+        String trilha = configuracao.getProperty("auditoria", "").trim();
+        this.auditoria = trilha.isEmpty() ? null : new TrilhaAuditoria(Path.of(trilha), e -> informar(e.getMessage()));
+        Auditoria.definirAtor("daemon CRM " + obrigatorio("patologista.crm"));
+        this.patologista = new PatologistaResponsavel(
+                Integer.parseInt(obrigatorio("patologista.id")), obrigatorio("patologista.nome"),
+                obrigatorio("patologista.crm"), configuracao.getProperty("patologista.especialidade", ""),
+                obrigatorio("patologista.email"));
+
+        String diretorio = configuracao.getProperty("armazenamento", "").trim();
+        this.laboratorios = new Laboratorios(diretorio.isEmpty() ? null : Path.of(diretorio),
+                Long.parseLong(configuracao.getProperty("cache.laudos.peso", String.valueOf(LaudoCache.PESO_MAXIMO_PADRAO))),
+                configuracao.getProperty("laboratorio.padrao", "padrao").trim());
+        for (String chave : configuracao.stringPropertyNames()) {
+            if (chave.startsWith(PREFIXO_PESO_LAUDOS)) {
+                laboratorios.definirPesoLaudos(chave.substring(PREFIXO_PESO_LAUDOS.length()),
+                        Long.parseLong(configuracao.getProperty(chave).trim()));
+            }
+        }
+        String porta = configuracao.getProperty("feed.porta", "").trim();
+        if (porta.isEmpty()) {
+            this.servidorFeed = null;
+        } else {
+            FeedAlteracoes feed = new FeedAlteracoes(Integer.parseInt(
+                    configuracao.getProperty("feed.capacidade", String.valueOf(FeedAlteracoes.CAPACIDADE_PADRAO)).trim()));
+            laboratorios.publicarEm(feed);
+            this.servidorFeed = new ServidorFeed(feed,
+                    configuracao.getProperty("feed.endereco", ServidorFeed.ENDERECO_PADRAO).trim(), Integer.parseInt(porta));
+        }
+        this.pipeline = new PipelineAnalises(laboratorios,
+                Integer.parseInt(configuracao.getProperty("fila.capacidade", "256")),
+                Double.parseDouble(configuracao.getProperty("precisao.limite", String.valueOf(Double.MAX_VALUE))));
+        for (PipelineAnalises.Etapa etapa : PipelineAnalises.Etapa.values()) {
+            String threads = configuracao.getProperty("threads." + etapa.name().toLowerCase());
+            if (threads != null) {
+                pipeline.definirThreads(etapa, Integer.parseInt(threads.trim()));
+            }
+        }
+        long semente = Long.parseLong(configuracao.getProperty("sensor.semente", "1"));
+        this.sensorLaser = criarSensor(false, semente);
+        this.sensorCamera = criarSensor(true, semente + 1);
+        if (Boolean.parseBoolean(configuracao.getProperty("monitor.ativo", "true"))) {
+            this.monitor = new MonitorSensor(sensorLaser);
+            pipeline.monitorar(monitor);
+        } else {
+            this.monitor = null;
+        }
+    }
+
+    /**
+     * Cria o sensor simulado, ou o de reprodução se houver gravação configurada, envolvido pelo
+     * gravador quando {@code sensor.gravar} estiver definido.
+     */
+    private ISensor criarSensor(boolean camera, long semente) throws IOException {
+        String nome = camera ? "camera" : "laser";
+        String gravacao = configuracao.getProperty("sensor.replay." + nome, "").trim();
+        ISensor sensor;
+        if (gravacao.isEmpty()) {
+            SensorSimulado simulado = new SensorSimulado(camera,
+                    Double.parseDouble(configuracao.getProperty("sensor.ruido", "0.2")), semente);
+            if (!camera) {
+                simulado.setDeriva(Double.parseDouble(configuracao.getProperty("sensor.deriva", "0")));
+            }
+            sensor = simulado;
+        } else {
+            SensorReplay replay = new SensorReplay(Path.of(gravacao),
+                    Double.parseDouble(configuracao.getProperty("sensor.replay.velocidade", "0")),
+                    Boolean.parseBoolean(configuracao.getProperty("sensor.replay.repetir", "false")));
+            if (replay.isConferencia() != camera) {
+                throw new IllegalArgumentException("Gravação " + gravacao + " não é de " + nome);
+            }
+            informar("Reproduzindo " + replay.getTotalDeLeituras() + " leituras de " + nome + " de " + gravacao);
+            sensor = replay;
+        }
+
+        String diretorio = configuracao.getProperty("sensor.gravar", "").trim();
+        if (diretorio.isEmpty()) {
+            return sensor;
+        }
+        Path pasta = Files.createDirectories(Path.of(diretorio));
+        SensorGravador gravador = new SensorGravador(sensor,
+                pasta.resolve(nome + "-" + System.currentTimeMillis() + ".lps"));
+        gravadores.add(gravador);
+        return gravador;
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+
+        Daemon daemon;
+        try {
+            daemon = new Daemon(lerConfiguracao(args));
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Configuração inválida: " + e.getMessage());
+            System.exit(2);
+            return;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(daemon::encerrar, "daemon-encerramento"));
+        daemon.executar();
+    }
+
+    /**
+     * Combina o arquivo de {@code --config} com os demais argumentos {@code --chave=valor}.
+     */
+    static Properties lerConfiguracao(String[] args) throws IOException {
+        Properties argumentos = new Properties();
+        for (String arg : args) {
+            int igual = arg.indexOf('=');
+            if (!arg.startsWith("--") || igual < 0) {
+                throw new IllegalArgumentException("Argumento fora do formato --chave=valor: " + arg);
+            }
+            argumentos.setProperty(arg.substring(2, igual), arg.substring(igual + 1));
+        }
+
+        Properties configuracao = new Properties();
+        String arquivo = argumentos.getProperty("config");
+        if (arquivo != null) {
+            try (Reader leitor = Files.newBufferedReader(Path.of(arquivo), StandardCharsets.UTF_8)) {
+                configuracao.load(leitor);
+            }
+        }
+        configuracao.putAll(argumentos);
+        return configuracao;
+    }
+
+    private void executar() throws IOException, InterruptedException {
+        pipeline.iniciar();
+        informar("Iniciado. Patologista: " + patologista.getNome());
+        if (servidorFeed != null) {
+            informar("Feed de alterações em " + servidorFeed.getEndereco().getHostString() + ":" + servidorFeed.getPorta());
+        }
+
+        String entrada = configuracao.getProperty("entrada", "-");
+        try (BufferedReader leitor = entrada.equals("-")
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                : Files.newBufferedReader(Path.of(entrada), StandardCharsets.UTF_8)) {
+            String linha;
+            int numero = 0;
+            while ((linha = leitor.readLine()) != null && !encerrado.get()) {
+                numero++;
+                linha = linha.trim();
+                if (linha.isEmpty() || linha.startsWith("#")) {
+                    continue;
+                }
+                try {
+                    enviar(linha);
+                } catch (RuntimeException e) {
+                    falhas.incrementAndGet();
+                    informar("Linha " + numero + " ignorada: " + e.getMessage());
+                }
+            }
+        }
+        informar("Fim da entrada.");
+
+        if (Boolean.parseBoolean(configuracao.getProperty("manter.ativo", "false"))) {
+            new CountDownLatch(1).await();
+        }
+        encerrar();
+    }
+
+    private void enviar(String linha) throws InterruptedException {
+        String[] campos = linha.split(";", -1);
+        if (campos.length != CAMPOS_POR_LINHA && campos.length != CAMPOS_POR_LINHA + 1) {
+            throw new IllegalArgumentException("esperados " + CAMPOS_POR_LINHA + " ou " + (CAMPOS_POR_LINHA + 1)
+                    + " campos, encontrados " + campos.length);
+        }
+        // O código informado é normalizado pela partição, então LAB1 e lab1 são o mesmo laboratório
+        Laboratorios.Particao particao = laboratorios.obter(campos.length > CAMPOS_POR_LINHA
+                && !campos[CAMPOS_POR_LINHA].trim().isEmpty() ? campos[CAMPOS_POR_LINHA].trim() : null);
+        String laboratorio = particao.getCodigo();
+        // O paciente e a amostra da linha são cadastrados neste laboratório
+        Auditoria.definirLaboratorio(laboratorio);
+        if (gerandoIds && !(campos[0].trim().isEmpty() && campos[6].trim().isEmpty() && campos[10].trim().isEmpty())) {
+            throw new IllegalArgumentException("IDs preenchidos não são aceitos com a estação "
+                    + GeradorId.getEstacaoConfigurada() + " gerando os IDs.");
+        }
+        // O paciente já cadastrado é buscado no índice do laboratório: pelo ID ou, sem ID, pelo CPF
+        IndicePacientes indice = particao.getLaboratorio().getIndicePacientes();
+        String idPaciente = campos[0].trim();
+        Paciente paciente = idPaciente.isEmpty()
+                ? indice.buscarPorCpf(campos[2].trim())
+                : indice.buscarPorId(Integer.parseInt(idPaciente));
+        if (paciente == null) {
+            paciente = idPaciente.isEmpty()
+                    ? new Paciente(campos[1].trim(), campos[2].trim(), campos[3].trim(), campos[4].trim(),
+                            Integer.parseInt(campos[5].trim()))
+                    : new Paciente(Integer.parseInt(idPaciente), campos[1].trim(), campos[2].trim(), campos[3].trim(),
+                            campos[4].trim(), Integer.parseInt(campos[5].trim()));
+            // Registrado aqui, e não só na aquisição, para que a próxima linha do mesmo paciente o encontre
+            particao.getLaboratorio().registrarPaciente(paciente);
+        }
+        String idAmostra = campos[6].trim();
+        Amostra amostra = idAmostra.isEmpty()
+                ? new Amostra(campos[7].trim(), campos[8].trim(), campos[9].trim())
+                : new Amostra(Integer.parseInt(idAmostra), campos[7].trim(), campos[8].trim(), campos[9].trim());
+        String idAnalise = campos[10].trim();
+
+        PipelineAnalises.Solicitacao solicitacao = new PipelineAnalises.Solicitacao(laboratorio, paciente, amostra,
+                sensorLaser, sensorCamera,
+                patologista, idAnalise.isEmpty() ? 0 : Integer.parseInt(idAnalise), campos[11].trim(), campos[12].trim());
+        pipeline.enviar(solicitacao).whenComplete((analise, erro) -> {
+            if (erro == null) {
+                concluidas.incrementAndGet();
+            } else {
+                falhas.incrementAndGet();
+                informar("Análise " + (idAnalise.isEmpty() ? "da linha" : idAnalise) + " falhou: " + erro.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Esvazia o pipeline e fecha o armazenamento; chamado uma única vez, pelo fim da entrada
+     * ou pelo sinal de término.
+     */
+    private void encerrar() {
+        if (!encerrado.compareAndSet(false, true)) {
+            return;
+        }
+        long prazo = Long.parseLong(configuracao.getProperty("encerramento.prazo", "30000"));
+        try {
+            if (!pipeline.encerrar(prazo)) {
+                informar(pipeline.getEmAndamento() + " análises não terminaram dentro do prazo.");
+            }
+            laboratorios.close();
+            for (Laboratorios.Particao particao : laboratorios.getParticoes()) {
+                informar(particao.toString());
+                if (particao.getArmazenamento() != null) {
+                    informar("Armazenamento de " + particao.getCodigo() + ": " + particao.getArmazenamento().getMetricas());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            informar("Erro ao fechar o armazenamento: " + e.getMessage());
+        }
+        for (PipelineAnalises.Estagio estagio : pipeline.getEstagios()) {
+            informar(estagio.toString());
+        }
+        if (monitor != null) {
+            informar("Laser: " + monitor);
+        }
+        if (auditoria != null) {
+            try {
+                auditoria.close();
+                informar("Auditoria: " + auditoria.getGravados() + " alterações gravadas em " + auditoria.getLotes() + " lotes.");
+            } catch (IOException e) {
+                informar("Erro ao fechar a auditoria: " + e.getMessage());
+            }
+        }
+        if (servidorFeed != null) {
+            servidorFeed.close();
+        }
+        for (SensorGravador gravador : gravadores) {
+            try {
+                gravador.close();
+                informar(gravador.getGravadas() + " leituras gravadas.");
+            } catch (IOException e) {
+                informar("Erro ao fechar a gravação: " + e.getMessage());
+            }
+        }
+        informar("Encerrado. " + concluidas.get() + " análises concluídas, " + falhas.get() + " falhas.");
+    }
+
+    private String obrigatorio(String chave) {
+        String valor = configuracao.getProperty(chave);
+        if (valor == null || valor.trim().isEmpty()) {
+            throw new IllegalArgumentException("Configuração obrigatória ausente: " + chave);
+        }
+        return valor.trim();
+    }
+
+    private static void informar(String mensagem) {
+        System.out.println("[" + LocalTime.now().withNano(0) + "] " + mensagem);
+    }
+}
@@ -1,13 +1,47 @@
 package br.com.lumepath.main;
 
 import br.com.lumepath.bean.*;
+import br.com.lumepath.repository.Laboratorio;
+import br.com.lumepath.service.Journal;
+import br.com.lumepath.service.LoteLaudos;
+import br.com.lumepath.service.MonitorSensor;
+import br.com.lumepath.service.TrilhaAuditoria;
+import br.com.lumepath.utils.Auditoria;
+import br.com.lumepath.utils.GeradorId;
 
 import javax.swing.*;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 
 public class Main {
+
+    /** Journal das sessões de análise, usado para retomar sessões após uma queda. */
+    private static final String ARQUIVO_JOURNAL = "lumepath.journal";
+
+    /** Trilha de auditoria das alterações nos cadastros. */
+    private static final String ARQUIVO_AUDITORIA = "lumepath.auditoria";
+
+    /** Propriedade com o diretório onde as leituras de cada sessão são gravadas para reprodução. */
+    private static final String PROPRIEDADE_GRAVACOES = "lumepath.gravacoes";
+
     public static void main(String[] args) {
 
+        verificarEstacao();
+
         PatologistaResponsavel patologista = null;
+        Laboratorio laboratorio = new Laboratorio();
+        List<AnalisePatologica> analisesDaSessao = new ArrayList<>();
+        Journal journal = abrirJournal(Path.of(ARQUIVO_JOURNAL));
+        TrilhaAuditoria auditoria = abrirAuditoria(Path.of(ARQUIVO_AUDITORIA));
+        Auditoria.definirLaboratorio(laboratorio.getCodigo());
+
+        // Os sensores e seus monitores duram a execução inteira: o aquecimento do monitor leva
+        // várias leituras, e a deriva só aparece comparando sessões
+        MonitorSensor monitorLaser = new MonitorSensor(new SensorLaser("COM5"));
+        MonitorSensor monitorCamera = new MonitorSensor(new SensorOpenCV("COM5"));
 
         int respPatologista = JOptionPane.showConfirmDialog(null, "Você é um patologista?", "Identificação", JOptionPane.YES_NO_OPTION);
 
@@ -20,6 +54,10 @@ public class Main {
             String email = JOptionPane.showInputDialog("Email:");
 
             patologista = new PatologistaResponsavel(id, nome, crm, especialidade, email);
+            // Alterações desta estação são atribuídas ao patologista, pelo CRM que o bean aceitou
+            Auditoria.definirAtor("CRM " + patologista.getCrm());
+            laboratorio.registrarPatologista(patologista);
+            analisesDaSessao.addAll(retomarSessoes(laboratorio, patologista, journal, monitorLaser, monitorCamera));
         } else {
             JOptionPane.showMessageDialog(null, "Encerrando o sistema.");
             System.exit(0);
@@ -29,31 +67,63 @@ public class Main {
             int opcao = JOptionPane.showConfirmDialog(null, "Deseja iniciar uma nova análise?", "Menu", JOptionPane.YES_NO_OPTION);
 
             if (opcao != JOptionPane.YES_OPTION) {
+                exportarLaudos(analisesDaSessao);
+                fecharJournal(journal);
+                fecharAuditoria(auditoria);
                 JOptionPane.showMessageDialog(null, "Programa encerrado.");
                 break;
             }
 
-            // Cadastro de paciente
-            int idPaciente = Integer.parseInt(JOptionPane.showInputDialog("ID do Paciente:"));
+            analisesDaSessao.add(executarSessao(laboratorio, patologista, journal, journal.novaSessao(), null,
+                    monitorLaser, monitorCamera));
+        }
+    }
+
+    /**
+     * Conduz uma sessão de análise, gravando cada etapa no journal antes de seguir para a próxima.
+     *
+     * <p>Ao retomar uma sessão interrompida, as etapas já gravadas são reaproveitadas e a
+     * análise passa para o patologista atual.</p>
+     *
+     * @param retomada sessão recuperada do journal, ou {@code null} para uma sessão nova.
+     * @param monitorLaser monitor do laser, com a câmera como referência.
+     * @param monitorCamera monitor da câmera.
+     * @return análise registrada na sessão.
+     */
+    private static AnalisePatologica executarSessao(Laboratorio laboratorio, PatologistaResponsavel patologista,
+                                                    Journal journal, long sessao, Journal.SessaoRecuperada retomada,
+                                                    MonitorSensor monitorLaser, MonitorSensor monitorCamera) {
+        Journal.Etapa concluida = retomada == null ? null : retomada.getUltimaEtapa();
+
+        // Cadastro de paciente
+        Paciente paciente = retomada == null ? null : retomada.getPaciente();
+        if (paciente == null) {
             String nomePaciente = JOptionPane.showInputDialog("Nome do Paciente:");
             String cpf = JOptionPane.showInputDialog("CPF:");
             String dataNascimento = JOptionPane.showInputDialog("Data de Nascimento (dd-MM-yyyy):");
             String sexo = JOptionPane.showInputDialog("Sexo (M/F):");
             int codProntuario = Integer.parseInt(JOptionPane.showInputDialog("Código do Prontuário:"));
 
-            Paciente paciente = new Paciente(idPaciente, nomePaciente, cpf, dataNascimento, sexo, codProntuario);
+            paciente = new Paciente(nomePaciente, cpf, dataNascimento, sexo, codProntuario);
+            journal.pacienteRegistrado(sessao, paciente).join();
+        }
 
-            // Cadastro de amostra
-            int idAmostra = Integer.parseInt(JOptionPane.showInputDialog("ID da Amostra:"));
+        // Cadastro de amostra
+        Amostra amostra = retomada == null ? null : retomada.getAmostra();
+        if (amostra == null) {
             String localColeta = JOptionPane.showInputDialog("Local da Coleta:");
             String tipoColeta = JOptionPane.showInputDialog("Tipo da Coleta:");
             String localAnatomico = JOptionPane.showInputDialog("Local Anatômico:");
 
-            Amostra amostra = new Amostra(idAmostra, localColeta, tipoColeta, localAnatomico);
+            amostra = new Amostra(localColeta, tipoColeta, localAnatomico);
+            journal.amostraRegistrada(sessao, amostra).join();
+        }
+        laboratorio.registrarAmostra(paciente, amostra);
 
+        if (concluida == null || concluida.compareTo(Journal.Etapa.LEITURAS_CONFIRMADAS) < 0) {
             // Sensores e Leitores
-            ISensor sensorLaser = new SensorLaser("COM5");
-            ISensor sensorCamera = new SensorOpenCV("COM5");
+            ISensor sensorLaser = gravar(monitorLaser.getSensor(), sessao, "laser");
+            ISensor sensorCamera = gravar(monitorCamera.getSensor(), sessao, "camera");
 
             Leitor leitorLaser = new Leitor(sensorLaser, amostra);
             Leitor leitorCamera = new Leitor(sensorCamera, amostra);
@@ -61,23 +131,215 @@ public class Main {
             // Leitura
             leitorLaser.lerSensor();
             leitorCamera.lerSensor();
+            verificarSensores(monitorLaser, monitorCamera, leitorLaser, leitorCamera);
+            laboratorio.registrarLeitura(leitorLaser);
+            laboratorio.registrarLeitura(leitorCamera);
+            journal.leiturasConfirmadas(sessao, amostra).join();
+            fecharGravacao(sensorLaser);
+            fecharGravacao(sensorCamera);
 
-            leitorLaser.calcPrecisao();
+            leitorLaser.calcPrecisao(leitorCamera);
 
             JOptionPane.showMessageDialog(null, "Precisão do laser: " + leitorLaser.getPrecisao());
+        }
 
-            // Cadastro da análise patológica
-            int idAnalise = Integer.parseInt(JOptionPane.showInputDialog("ID da Análise:"));
-            String descricao = JOptionPane.showInputDialog("Descrição da Análise:");
-            String diagnostico = JOptionPane.showInputDialog("Diagnóstico Preliminar:");
+        // Cadastro da análise patológica
+        AnalisePatologica analise = retomada == null ? null : retomada.getAnalise();
+        if (analise == null) {
+            while (analise == null) {
+                String descricao = JOptionPane.showInputDialog("Descrição da Análise:");
+                String diagnostico = JOptionPane.showInputDialog("Diagnóstico Preliminar:");
 
-            AnalisePatologica analise = new AnalisePatologica(idAnalise, descricao, diagnostico);
+                analise = new AnalisePatologica(descricao, diagnostico);
+                analise.setAmostra(amostra);
+                analise.setPatologista(patologista);
+                try {
+                    journal.analiseCriada(sessao, analise).join();
+                } catch (IllegalArgumentException e) {
+                    // Textos grandes demais para o journal: pede a análise novamente
+                    JOptionPane.showMessageDialog(null, e.getMessage(), "Erro", JOptionPane.ERROR_MESSAGE);
+                    analise = null;
+                }
+            }
+        } else {
             analise.setAmostra(amostra);
             analise.setPatologista(patologista);
+        }
+        laboratorio.registrarAnalise(analise);
+
+        // Emissão do laudo
+        String laudo = analise.emitirLaudo();
+        journal.laudoEmitido(sessao).join();
+        JOptionPane.showMessageDialog(null, laudo);
+        return analise;
+    }
+
+    /**
+     * Passa a leitura pelos monitores dos sensores e avisa o operador se algum estiver com
+     * problema. O laser é comparado com a câmera; a câmera, sem outra referência na estação, é
+     * comparada com ela mesma, o que detecta travamento e falha de leitura, mas não deriva. Em
+     * deriva ou travamento o monitor já recalibrou o sensor para as próximas leituras.
+     */
+    private static void verificarSensores(MonitorSensor monitorLaser, MonitorSensor monitorCamera,
+                                          Leitor leitorLaser, Leitor leitorCamera) {
+        double camera = (leitorCamera.getLeituraCameraAltura() + leitorCamera.getLeituraCameraComprimento()) / 2;
+        MonitorSensor.Estado laser = monitorLaser.observar(
+                (leitorLaser.getLeituraAltura() + leitorLaser.getLeituraComprimento()) / 2, camera);
+        MonitorSensor.Estado conferencia = monitorCamera.observar(camera, camera);
+
+        if (comProblema(laser)) {
+            JOptionPane.showMessageDialog(null, "Laser: " + monitorLaser, "Sensor", JOptionPane.WARNING_MESSAGE);
+        }
+        if (comProblema(conferencia)) {
+            JOptionPane.showMessageDialog(null, "Câmera: " + monitorCamera, "Sensor", JOptionPane.WARNING_MESSAGE);
+        }
+    }
+
+    private static boolean comProblema(MonitorSensor.Estado estado) {
+        return estado == MonitorSensor.Estado.DERIVA || estado == MonitorSensor.Estado.TRAVADO
+                || estado == MonitorSensor.Estado.FALHA_LEITURA;
+    }
+
+    /**
+     * Envolve o sensor em um {@link SensorGravador} quando {@value #PROPRIEDADE_GRAVACOES} estiver
+     * definida, gravando as leituras da sessão em {@code sessao-<n>-<nome>-<instante>.lps}. O número
+     * da sessão recomeça quando o journal é esvaziado, então o instante em milissegundos evita
+     * substituir a gravação de uma execução anterior.
+     */
+    private static ISensor gravar(ISensor sensor, long sessao, String nome) {
+        String diretorio = System.getProperty(PROPRIEDADE_GRAVACOES);
+        if (diretorio == null || diretorio.trim().isEmpty()) {
+            return sensor;
+        }
+        try {
+            Path pasta = Files.createDirectories(Path.of(diretorio.trim()));
+            return new SensorGravador(sensor, pasta.resolve("sessao-" + sessao + "-" + nome + "-"
+                    + System.currentTimeMillis() + ".lps"));
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(null, "Leituras não serão gravadas: " + e.getMessage(), "Aviso", JOptionPane.WARNING_MESSAGE);
+            return sensor;
+        }
+    }
+
+    private static void fecharGravacao(ISensor sensor) {
+        if (sensor instanceof SensorGravador) {
+            try {
+                ((SensorGravador) sensor).close();
+            } catch (IOException e) {
+                JOptionPane.showMessageDialog(null, e.getMessage(), "Erro", JOptionPane.ERROR_MESSAGE);
+            }
+        }
+    }
+
+    /**
+     * Pergunta, para cada sessão interrompida encontrada no journal, se ela deve ser retomada.
+     *
+     * @return análises das sessões retomadas.
+     */
+    private static List<AnalisePatologica> retomarSessoes(Laboratorio laboratorio, PatologistaResponsavel patologista,
+                                                          Journal journal, MonitorSensor monitorLaser,
+                                                          MonitorSensor monitorCamera) {
+        List<AnalisePatologica> retomadas = new ArrayList<>();
+        for (Journal.SessaoRecuperada sessao : journal.getSessoesPendentes()) {
+            String paciente = sessao.getPaciente() == null ? "não informado" : sessao.getPaciente().getNome();
+            int opcao = JOptionPane.showConfirmDialog(null,
+                    "Há uma análise interrompida (paciente: " + paciente + ", última etapa: "
+                            + sessao.getUltimaEtapa() + ").\nDeseja retomá-la?",
+                    "Recuperação", JOptionPane.YES_NO_OPTION);
+            if (opcao == JOptionPane.YES_OPTION) {
+                retomadas.add(executarSessao(laboratorio, patologista, journal, sessao.getSessao(), sessao,
+                        monitorLaser, monitorCamera));
+            } else {
+                journal.descartar(sessao.getSessao()).join();
+            }
+        }
+        return retomadas;
+    }
+
+    /**
+     * Os IDs gerados nesta estação dependem do número dela; sem ele, não há como evitar colisões.
+     * Encerra o programa se a estação não estiver configurada.
+     *
+     * <p>Esta verificação e a abertura do journal e da auditoria são a partida da estação até
+     * o primeiro diálogo; a {@link MedicaoPartida} as chama para medir e treinar a mesma partida.</p>
+     */
+    static void verificarEstacao() {
+        try {
+            GeradorId.getEstacaoConfigurada();
+        } catch (IllegalStateException e) {
+            JOptionPane.showMessageDialog(null, e.getMessage(), "Erro", JOptionPane.ERROR_MESSAGE);
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Abre o journal de sessões ou encerra o programa se ele não puder ser usado.
+     */
+    static Journal abrirJournal(Path arquivo) {
+        try {
+            return Journal.abrir(arquivo);
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(null, "Não foi possível abrir o journal: " + e.getMessage(), "Erro", JOptionPane.ERROR_MESSAGE);
+            System.exit(1);
+            return null;
+        }
+    }
+
+    /**
+     * Oferece a exportação, em um único arquivo zip ou PDF, dos laudos emitidos na sessão.
+     *
+     * @param analises análises registradas durante a sessão.
+     */
+    private static void exportarLaudos(List<AnalisePatologica> analises) {
+        if (analises.isEmpty()) {
+            return;
+        }
+        int opcao = JOptionPane.showConfirmDialog(null, "Deseja exportar os laudos da sessão?", "Exportação", JOptionPane.YES_NO_OPTION);
+        if (opcao != JOptionPane.YES_OPTION) {
+            return;
+        }
+        String arquivo = JOptionPane.showInputDialog("Arquivo de destino (.zip ou .pdf):", "laudos.zip");
+        if (arquivo == null || arquivo.trim().isEmpty()) {
+            return;
+        }
+        try {
+            LoteLaudos lote = new LoteLaudos();
+            LoteLaudos.Resultado resultado = arquivo.toLowerCase().endsWith(".pdf")
+                    ? lote.exportarPdf(analises, Path.of(arquivo))
+                    : lote.exportarZip(analises, Path.of(arquivo));
+            JOptionPane.showMessageDialog(null, resultado.toString());
+        } catch (Exception e) {
+            JOptionPane.showMessageDialog(null, e.getMessage(), "Erro", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    /**
+     * Abre a trilha de auditoria ou encerra o programa se ela não puder ser usada.
+     */
+    static TrilhaAuditoria abrirAuditoria(Path arquivo) {
+        try {
+            return new TrilhaAuditoria(arquivo,
+                    e -> JOptionPane.showMessageDialog(null, e.getMessage(), "Erro", JOptionPane.ERROR_MESSAGE));
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(null, "Não foi possível abrir a auditoria: " + e.getMessage(), "Erro", JOptionPane.ERROR_MESSAGE);
+            System.exit(1);
+            return null;
+        }
+    }
+
+    static void fecharAuditoria(TrilhaAuditoria auditoria) {
+        try {
+            auditoria.close();
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(null, e.getMessage(), "Erro", JOptionPane.ERROR_MESSAGE);
+        }
+    }
 
-            // Emissão do laudo
-            String laudo = analise.emitirLaudo();
-            JOptionPane.showMessageDialog(null, laudo);
+    static void fecharJournal(Journal journal) {
+        try {
+            journal.close();
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(null, e.getMessage(), "Erro", JOptionPane.ERROR_MESSAGE);
         }
     }
 }
@@ -0,0 +1,136 @@
+package br.com.lumepath.main;
+
+import br.com.lumepath.bean.Amostra;
+import br.com.lumepath.bean.AnalisePatologica;
+import br.com.lumepath.bean.Leitor;
+import br.com.lumepath.bean.Paciente;
+import br.com.lumepath.bean.PatologistaResponsavel;
+import br.com.lumepath.bean.SensorSimulado;
+import br.com.lumepath.codec.CodecBinario;
+import br.com.lumepath.codec.CodecJson;
+import br.com.lumepath.service.Journal;
+import br.com.lumepath.service.TrilhaAuditoria;
+import br.com.lumepath.utils.GeradorId;
+
+import java.awt.GraphicsEnvironment;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+/**
+ * Mede o tempo de partida da estação, a partir do início da JVM ou do instante (em ms) informado
+ * em {@code -Dlumepath.inicio}, que inclui a criação do processo.
+ *
+ * <ul>
+ *     <li>partida: as mesmas etapas do {@link Main} antes do primeiro diálogo (verificação da
+ *     estação, abertura do journal e da trilha de auditoria), com arquivos em um diretório
+ *     temporário;</li>
+ *     <li>primeiro diálogo: criação do mesmo {@code JOptionPane} que o {@link Main} mostra
+ *     primeiro (não medido em ambiente sem tela);</li>
+ *     <li>primeira leitura: leitura completa de uma amostra com {@link SensorSimulado}.</li>
+ * </ul>
+ *
+ * <p>Sem {@code -Dlumepath.estacao}, usa a estação 0; nenhum ID é gerado. Com {@code --treino},
+ * também percorre os caminhos de cadastro, journal, auditoria, laudo e codecs para que as
+ * classes deles entrem no arquivo de CDS gerado por {@code cds/gerar-cds.sh}.</p>
+ *
+ * @author Ricardo
+ * @version 1.0
+ */
+public class MedicaoPartida {
+
+    public static void main(String[] args) throws Exception {
+        String inicioInformado = System.getProperty("lumepath.inicio");
+        long inicioJvm = inicioInformado != null
+                ? Long.parseLong(inicioInformado)
+                : ManagementFactory.getRuntimeMXBean().getStartTime();
+        boolean treino = args.length > 0 && args[0].equals("--treino");
+
+        if (!GeradorId.isEstacaoDefinida()) {
+            System.setProperty(GeradorId.PROPRIEDADE_ESTACAO, "0");
+        }
+        Path diretorio = Files.createTempDirectory("lumepath-partida");
+        Main.verificarEstacao();
+        Journal journal = Main.abrirJournal(diretorio.resolve("lumepath.journal"));
+        TrilhaAuditoria auditoria = Main.abrirAuditoria(diretorio.resolve("lumepath.auditoria"));
+        long partida = System.currentTimeMillis() - inicioJvm;
+
+        String primeiroDialogo = "sem tela";
+        if (!GraphicsEnvironment.isHeadless()) {
+            primeiroDialogo = (criarPrimeiroDialogo() - inicioJvm) + " ms";
+        }
+
+        Amostra amostra = new Amostra(1, "Hospital", "Biópsia", "Pele");
+        Leitor leitor = new Leitor(new SensorSimulado(false, 0.2, 1), amostra);
+        leitor.lerSensor();
+        long primeiraLeitura = System.currentTimeMillis() - inicioJvm;
+
+        if (treino) {
+            treinar(amostra, journal);
+        }
+        Main.fecharJournal(journal);
+        Main.fecharAuditoria(auditoria);
+        try (Stream<Path> arquivos = Files.list(diretorio)) {
+            for (Path arquivo : (Iterable<Path>) arquivos::iterator) {
+                Files.delete(arquivo);
+            }
+        }
+        Files.delete(diretorio);
+
+        System.out.println("Partida: " + partida + " ms");
+        System.out.println("Primeiro diálogo: " + primeiroDialogo);
+        System.out.println("Primeira leitura: " + primeiraLeitura + " ms");
+    }
+
+    /**
+     * Cria e descarta o primeiro diálogo do {@link Main}, sem esperar resposta.
+     *
+     * @return instante (em ms) em que o diálogo ficou pronto para exibição.
+     */
+    private static long criarPrimeiroDialogo() throws Exception {
+        long[] pronto = new long[1];
+        javax.swing.SwingUtilities.invokeAndWait(() -> {
+            javax.swing.JOptionPane painel = new javax.swing.JOptionPane("Você é um patologista?",
+                    javax.swing.JOptionPane.QUESTION_MESSAGE, javax.swing.JOptionPane.YES_NO_OPTION);
+            javax.swing.JDialog dialogo = painel.createDialog("Identificação");
+            dialogo.pack();
+            pronto[0] = System.currentTimeMillis();
+            dialogo.dispose();
+        });
+        return pronto[0];
+    }
+
+    /**
+     * Percorre uma sessão completa, gravando cada etapa no journal como o {@link Main}; as
+     * alterações nos cadastros vão para a trilha de auditoria aberta na partida.
+     */
+    private static void treinar(Amostra amostra, Journal journal) {
+        Leitor camera = new Leitor(new SensorSimulado(true, 0.2, 2), amostra);
+        camera.lerSensor();
+
+        long sessao = journal.novaSessao();
+        Paciente paciente = new Paciente(1, "Paciente Treino", "52998224725", "01-01-1990", "F", 1);
+        journal.pacienteRegistrado(sessao, paciente).join();
+        journal.amostraRegistrada(sessao, amostra).join();
+        amostra.setPaciente(paciente);
+        journal.leiturasConfirmadas(sessao, amostra).join();
+        PatologistaResponsavel patologista = new PatologistaResponsavel(1, "Patologista Treino", "SP-123456",
+                "Patologia Geral", "treino@lumepath.com.br");
+        AnalisePatologica analise = new AnalisePatologica(1, "Treino", "Sem alterações");
+        analise.setAmostra(amostra);
+        analise.setPatologista(patologista);
+        journal.analiseCriada(sessao, analise).join();
+        analise.emitirLaudo();
+        journal.laudoEmitido(sessao).join();
+
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        CodecBinario codec = new CodecBinario();
+        codec.escreverAnalise(buffer, analise);
+        buffer.flip();
+        codec.reiniciar();
+        codec.lerAnalise(buffer);
+        CodecJson.paraJson(analise);
+    }
+}
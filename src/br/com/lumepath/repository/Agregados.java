@@ -0,0 +1,211 @@
+package br.com.lumepath.repository;
+
+import br.com.lumepath.bean.Amostra;
+import br.com.lumepath.bean.AnalisePatologica;
+import br.com.lumepath.utils.IntObjetoMap;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Contadores dos painéis, atualizados a cada registro em vez de recalculados.
+ *
+ * <ul>
+ *     <li>análises por patologista por dia;</li>
+ *     <li>amostras por local anatômico por mês;</li>
+ *     <li>tempo de liberação (da coleta da amostra até a análise), geral e por patologista.</li>
+ * </ul>
+ *
+ * <p>Cada registro custa algumas consultas a mapas; as consultas também. Quem registra é
+ * responsável por não registrar a mesma amostra duas vezes (ver {@link Laboratorio}). Uma
+ * análise, ao contrário, pode ser registrada de novo sempre que mudar: o que ela contou da
+ * última vez (patologista, dia e tempo de liberação) é guardado pelo ID e retirado antes de
+ * contar os valores atuais, então uma análise sem patologista passa a contar quando ganha um, e
+ * uma troca de patologista move a contagem. Não é thread-safe.</p>
+ *
+ * @author Ricardo
+ * @version 1.0
+ */
+public class Agregados {
+
+    /** Patologista → dia (epoch day) → quantidade de análises. */
+    private final IntObjetoMap<IntObjetoMap<int[]>> analisesPorPatologistaPorDia = new IntObjetoMap<>();
+
+    /** Local anatômico → mês (ano * 12 + mês - 1) → quantidade de amostras. */
+    private final Map<String, IntObjetoMap<int[]>> amostrasPorLocalPorMes = new HashMap<>();
+
+    /** Patologista → {soma dos dias de liberação, quantidade}. */
+    private final IntObjetoMap<long[]> liberacaoPorPatologista = new IntObjetoMap<>();
+    private long somaDiasLiberacao;
+    private long analisesComLiberacao;
+
+    /** ID da análise → o que ela contou no último registro; só análises com patologista. */
+    private final IntObjetoMap<Contribuicao> contribuicoes = new IntObjetoMap<>();
+
+    /**
+     * Conta a amostra no mês da coleta e no local anatômico.
+     */
+    public void registrarAmostra(Amostra amostra) {
+        IntObjetoMap<int[]> porMes = amostrasPorLocalPorMes.computeIfAbsent(
+                chaveLocal(amostra.getLocalAnatomico()), local -> new IntObjetoMap<>());
+        incrementar(porMes, chaveMes(YearMonth.from(amostra.getDataDeColeta())));
+    }
+
+    /**
+     * Conta a análise no dia e patologista, e o tempo de liberação se houver amostra. Se a
+     * análise já tinha sido contada, a contagem anterior é retirada antes.
+     */
+    public void registrarAnalise(AnalisePatologica analise) {
+        Contribuicao anterior = contribuicoes.remove(analise.getId());
+        if (anterior != null) {
+            retirar(anterior);
+        }
+        if (analise.getPatologistaResponsavel() == null) {
+            return;
+        }
+        int idPatologista = analise.getPatologistaResponsavel().getId();
+        int dia = (int) analise.getDataAnalise().toEpochDay();
+        IntObjetoMap<int[]> porDia = analisesPorPatologistaPorDia.get(idPatologista);
+        if (porDia == null) {
+            porDia = new IntObjetoMap<>();
+            analisesPorPatologistaPorDia.put(idPatologista, porDia);
+        }
+        incrementar(porDia, dia);
+
+        Contribuicao contribuicao = new Contribuicao(idPatologista, dia);
+        if (analise.getAmostra() != null) {
+            long dias = tempoDeLiberacao(analise);
+            somaDiasLiberacao += dias;
+            analisesComLiberacao++;
+            long[] acumulado = liberacaoPorPatologista.get(idPatologista);
+            if (acumulado == null) {
+                acumulado = new long[2];
+                liberacaoPorPatologista.put(idPatologista, acumulado);
+            }
+            acumulado[0] += dias;
+            acumulado[1]++;
+            contribuicao.comLiberacao = true;
+            contribuicao.diasLiberacao = dias;
+        }
+        contribuicoes.put(analise.getId(), contribuicao);
+    }
+
+    private void retirar(Contribuicao contribuicao) {
+        IntObjetoMap<int[]> porDia = analisesPorPatologistaPorDia.get(contribuicao.idPatologista);
+        int[] contador = porDia.get(contribuicao.dia);
+        if (--contador[0] == 0) {
+            porDia.remove(contribuicao.dia);
+        }
+        if (contribuicao.comLiberacao) {
+            somaDiasLiberacao -= contribuicao.diasLiberacao;
+            analisesComLiberacao--;
+            long[] acumulado = liberacaoPorPatologista.get(contribuicao.idPatologista);
+            acumulado[0] -= contribuicao.diasLiberacao;
+            if (--acumulado[1] == 0) {
+                liberacaoPorPatologista.remove(contribuicao.idPatologista);
+            }
+        }
+    }
+
+    /**
+     * Dias entre a coleta da amostra e a análise.
+     */
+    public static long tempoDeLiberacao(AnalisePatologica analise) {
+        return ChronoUnit.DAYS.between(analise.getAmostra().getDataDeColeta(), analise.getDataAnalise());
+    }
+
+    public int getAnalisesDoPatologistaNoDia(int idPatologista, LocalDate dia) {
+        IntObjetoMap<int[]> porDia = analisesPorPatologistaPorDia.get(idPatologista);
+        return porDia == null ? 0 : valor(porDia, (int) dia.toEpochDay());
+    }
+
+    /**
+     * Quantidade de análises de cada patologista no dia.
+     *
+     * @return mapa de ID do patologista para quantidade, sem os patologistas sem análises.
+     */
+    public Map<Integer, Integer> getAnalisesPorPatologistaNoDia(LocalDate dia) {
+        Map<Integer, Integer> resultado = new TreeMap<>();
+        int chave = (int) dia.toEpochDay();
+        analisesPorPatologistaPorDia.forEach((idPatologista, porDia) -> {
+            int quantidade = valor(porDia, chave);
+            if (quantidade > 0) {
+                resultado.put(idPatologista, quantidade);
+            }
+        });
+        return resultado;
+    }
+
+    public int getAmostrasDoLocalNoMes(String localAnatomico, YearMonth mes) {
+        IntObjetoMap<int[]> porMes = amostrasPorLocalPorMes.get(chaveLocal(localAnatomico));
+        return porMes == null ? 0 : valor(porMes, chaveMes(mes));
+    }
+
+    /**
+     * Quantidade de amostras de cada local anatômico no mês.
+     */
+    public Map<String, Integer> getAmostrasPorLocalNoMes(YearMonth mes) {
+        Map<String, Integer> resultado = new TreeMap<>();
+        int chave = chaveMes(mes);
+        for (Map.Entry<String, IntObjetoMap<int[]>> local : amostrasPorLocalPorMes.entrySet()) {
+            int quantidade = valor(local.getValue(), chave);
+            if (quantidade > 0) {
+                resultado.put(local.getKey(), quantidade);
+            }
+        }
+        return resultado;
+    }
+
+    /**
+     * Tempo médio, em dias, entre a coleta e a análise.
+     */
+    public double getTempoMedioDeLiberacao() {
+        return analisesComLiberacao == 0 ? 0 : (double) somaDiasLiberacao / analisesComLiberacao;
+    }
+
+    public double getTempoMedioDeLiberacao(int idPatologista) {
+        long[] acumulado = liberacaoPorPatologista.get(idPatologista);
+        return acumulado == null ? 0 : (double) acumulado[0] / acumulado[1];
+    }
+
+    private static String chaveLocal(String localAnatomico) {
+        return IndicePacientes.normalizar(localAnatomico);
+    }
+
+    private static int chaveMes(YearMonth mes) {
+        return mes.getYear() * 12 + mes.getMonthValue() - 1;
+    }
+
+    private static void incrementar(IntObjetoMap<int[]> contadores, int chave) {
+        int[] contador = contadores.get(chave);
+        if (contador == null) {
+            contadores.put(chave, new int[]{1});
+        } else {
+            contador[0]++;
+        }
+    }
+
+    private static int valor(IntObjetoMap<int[]> contadores, int chave) {
+        int[] contador = contadores.get(chave);
+        return contador == null ? 0 : contador[0];
+    }
+
+    /**
+     * O que uma análise contou no seu último registro.
+     */
+    private static final class Contribuicao {
+        private final int idPatologista;
+        private final int dia;
+        private boolean comLiberacao;
+        private long diasLiberacao;
+
+        private Contribuicao(int idPatologista, int dia) {
+            this.idPatologista = idPatologista;
+            this.dia = dia;
+        }
+    }
+}
@@ -0,0 +1,385 @@
+package br.com.lumepath.repository;
+
+import br.com.lumepath.bean.Paciente;
+import br.com.lumepath.utils.IntObjetoMap;
+import br.com.lumepath.utils.ValidaCpf;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Índice em memória para busca de {@link Paciente} por prefixo do nome, CPF e código
+ * de prontuário.
+ *
+ * <ul>
+ *     <li><b>Nome:</b> arrays ordenados de nomes normalizados (sem acentos, minúsculos) e
+ *     IDs. Inserções vão para um bloco pendente ordenado ({@link TreeSet}), intercalado
+ *     com os arrays principais quando passa de 1/8 do tamanho deles. A busca percorre os
+ *     dois blocos em paralelo a partir da pesquisa binária.</li>
+ *     <li><b>CPF:</b> mapa primitivo indexado pelos 9 primeiros dígitos, já que os dois
+ *     últimos são dígitos verificadores. Aceita CPF com ou sem formatação.</li>
+ *     <li><b>Prontuário:</b> mapa primitivo pelo código do prontuário.</li>
+ * </ul>
+ *
+ * <p>Quando nome, CPF ou prontuário de um paciente mudarem, chame {@link #atualizar(Paciente)}.
+ * Leituras concorrentes são permitidas; escritas são exclusivas.</p>
+ *
+ * @author Ricardo
+ * @version 1.0
+ */
+public class IndicePacientes {
+
+    /** Tamanho mínimo do bloco pendente antes da intercalação com o bloco principal. */
+    private static final int TAMANHO_PENDENTE_MINIMO = 4096;
+
+    private final ReentrantReadWriteLock trava = new ReentrantReadWriteLock();
+
+    private final IntObjetoMap<Paciente> porId = new IntObjetoMap<>();
+    private final IntObjetoMap<Paciente> porCpf = new IntObjetoMap<>();
+    private final IntObjetoMap<Paciente> porProntuario = new IntObjetoMap<>();
+
+    /** Chaves usadas na indexação de cada paciente, para removê-las na atualização. */
+    private final IntObjetoMap<Chaves> indexados = new IntObjetoMap<>();
+
+    /** Bloco principal, ordenado por (nome, id). IDs removidos ficam negativos até a intercalação. */
+    private String[] nomes = new String[0];
+    private int[] ids = new int[0];
+    private int tamanhoPrincipal;
+    private int removidosPrincipal;
+
+    /** Bloco pendente, ordenado por (nome, id). */
+    private final TreeSet<Chaves> pendentes = new TreeSet<>();
+
+    /**
+     * Normaliza um nome para comparação: remove acentos, converte para minúsculas e
+     * reduz espaços consecutivos a um só.
+     */
+    public static String normalizar(String nome) {
+        if (nome == null) {
+            return "";
+        }
+        String base = nome;
+        for (int i = 0; i < nome.length(); i++) {
+            // A decomposição só é necessária quando há caracteres fora do ASCII
+            if (nome.charAt(i) >= 0x80) {
+                base = Normalizer.normalize(nome, Normalizer.Form.NFD);
+                break;
+            }
+        }
+        StringBuilder normalizado = new StringBuilder(base.length());
+        boolean espacoPendente = false;
+        for (int i = 0; i < base.length(); i++) {
+            char c = base.charAt(i);
+            int tipo = Character.getType(c);
+            if (tipo == Character.NON_SPACING_MARK || tipo == Character.COMBINING_SPACING_MARK
+                    || tipo == Character.ENCLOSING_MARK) {
+                continue;
+            }
+            if (Character.isWhitespace(c)) {
+                espacoPendente = normalizado.length() > 0;
+                continue;
+            }
+            if (espacoPendente) {
+                normalizado.append(' ');
+                espacoPendente = false;
+            }
+            normalizado.append(Character.toLowerCase(c));
+        }
+        return normalizado.toString();
+    }
+
+    /**
+     * Adiciona o paciente ao índice, ou atualiza suas chaves se já estiver indexado.
+     */
+    public void adicionar(Paciente paciente) {
+        trava.writeLock().lock();
+        try {
+            removerChaves(paciente.getId());
+            Chaves chaves = new Chaves(paciente.getId(), normalizar(paciente.getNome()),
+                    chaveCpf(paciente.getCpf()), paciente.getCodigoProntuario());
+            porId.put(paciente.getId(), paciente);
+            indexados.put(paciente.getId(), chaves);
+            if (chaves.cpf >= 0) {
+                porCpf.put(chaves.cpf, paciente);
+            }
+            porProntuario.put(chaves.prontuario, paciente);
+            inserirNome(chaves);
+        } finally {
+            trava.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Reindexa o paciente após alteração de nome, CPF ou prontuário.
+     */
+    public void atualizar(Paciente paciente) {
+        adicionar(paciente);
+    }
+
+    /**
+     * Remove o paciente do índice.
+     *
+     * @return {@code true} se o paciente estava indexado.
+     */
+    public boolean remover(int idPaciente) {
+        trava.writeLock().lock();
+        try {
+            boolean existia = removerChaves(idPaciente);
+            porId.remove(idPaciente);
+            return existia;
+        } finally {
+            trava.writeLock().unlock();
+        }
+    }
+
+    public int getTamanho() {
+        trava.readLock().lock();
+        try {
+            return porId.size();
+        } finally {
+            trava.readLock().unlock();
+        }
+    }
+
+    public Paciente buscarPorId(int id) {
+        trava.readLock().lock();
+        try {
+            return porId.get(id);
+        } finally {
+            trava.readLock().unlock();
+        }
+    }
+
+    /**
+     * Busca pelo CPF, com ou sem pontuação (ex.: "52998224725" ou "529.982.247-25").
+     *
+     * @return paciente encontrado, ou {@code null}.
+     */
+    public Paciente buscarPorCpf(String cpf) {
+        int chave = chaveCpf(cpf);
+        if (chave < 0) {
+            return null;
+        }
+        trava.readLock().lock();
+        try {
+            return porCpf.get(chave);
+        } finally {
+            trava.readLock().unlock();
+        }
+    }
+
+    public Paciente buscarPorProntuario(int codigoProntuario) {
+        trava.readLock().lock();
+        try {
+            return porProntuario.get(codigoProntuario);
+        } finally {
+            trava.readLock().unlock();
+        }
+    }
+
+    /**
+     * Busca pacientes cujo nome começa com o prefixo, ignorando acentos e maiúsculas.
+     *
+     * @param prefixo início do nome.
+     * @param limite quantidade máxima de resultados; zero devolve a lista vazia.
+     * @return pacientes encontrados, em ordem alfabética do nome normalizado.
+     * @throws IllegalArgumentException se o limite for negativo.
+     */
+    public List<Paciente> buscarPorNome(String prefixo, int limite) {
+        if (limite < 0) {
+            throw new IllegalArgumentException("Limite da busca não pode ser negativo: " + limite);
+        }
+        String chave = normalizar(prefixo);
+        trava.readLock().lock();
+        try {
+            List<Paciente> encontrados = new ArrayList<>(Math.min(limite, 64));
+            Iterator<Chaves> pendente = pendentes.tailSet(new Chaves(0, chave, 0, 0), true).iterator();
+            Chaves proximoPendente = proximoComPrefixo(pendente, chave);
+            int i = primeiroMaiorOuIgual(chave);
+
+            while (encontrados.size() < limite) {
+                while (i < tamanhoPrincipal && ids[i] < 0) {
+                    i++;
+                }
+                boolean principalValido = i < tamanhoPrincipal && nomes[i].startsWith(chave);
+                if (!principalValido && proximoPendente == null) {
+                    break;
+                }
+                if (principalValido && (proximoPendente == null
+                        || comparar(nomes[i], ids[i], proximoPendente.nome, proximoPendente.id) < 0)) {
+                    encontrados.add(porId.get(ids[i++]));
+                } else {
+                    encontrados.add(porId.get(proximoPendente.id));
+                    proximoPendente = proximoComPrefixo(pendente, chave);
+                }
+            }
+            return encontrados;
+        } finally {
+            trava.readLock().unlock();
+        }
+    }
+
+    /**
+     * Converte o CPF nos 9 dígitos base, ou -1 se não for um CPF válido.
+     */
+    private static int chaveCpf(String cpf) {
+        if (cpf == null) {
+            return -1;
+        }
+        StringBuilder digitos = new StringBuilder(11);
+        for (int i = 0; i < cpf.length(); i++) {
+            char c = cpf.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digitos.append(c);
+            } else if (c != '.' && c != '-' && c != ' ') {
+                return -1;
+            }
+        }
+        if (digitos.length() != 11 || !ValidaCpf.isCPF(digitos.toString())) {
+            return -1;
+        }
+        return Integer.parseInt(digitos.substring(0, 9));
+    }
+
+    private boolean removerChaves(int id) {
+        Chaves antigas = indexados.remove(id);
+        if (antigas == null) {
+            return false;
+        }
+        if (antigas.cpf >= 0 && porCpf.get(antigas.cpf) == porId.get(id)) {
+            porCpf.remove(antigas.cpf);
+        }
+        if (porProntuario.get(antigas.prontuario) == porId.get(id)) {
+            porProntuario.remove(antigas.prontuario);
+        }
+
+        if (!pendentes.remove(antigas)) {
+            int i = localizarNoPrincipal(antigas.nome, id);
+            if (i >= 0) {
+                ids[i] = -id;
+                removidosPrincipal++;
+            }
+        }
+        return true;
+    }
+
+    private void inserirNome(Chaves chaves) {
+        pendentes.add(chaves);
+        if (pendentes.size() >= Math.max(TAMANHO_PENDENTE_MINIMO, tamanhoPrincipal / 8)) {
+            intercalar();
+        }
+    }
+
+    /**
+     * Intercala o bloco pendente com o principal, descartando os removidos.
+     */
+    private void intercalar() {
+        int capacidade = tamanhoPrincipal - removidosPrincipal + pendentes.size();
+        String[] novosNomes = new String[capacidade];
+        int[] novosIds = new int[capacidade];
+        int n = 0;
+        int i = 0;
+        Iterator<Chaves> pendente = pendentes.iterator();
+        Chaves atual = pendente.hasNext() ? pendente.next() : null;
+
+        while (i < tamanhoPrincipal || atual != null) {
+            if (i < tamanhoPrincipal && ids[i] < 0) {
+                i++;
+            } else if (atual == null || (i < tamanhoPrincipal
+                    && comparar(nomes[i], ids[i], atual.nome, atual.id) < 0)) {
+                novosNomes[n] = nomes[i];
+                novosIds[n++] = ids[i++];
+            } else {
+                novosNomes[n] = atual.nome;
+                novosIds[n++] = atual.id;
+                atual = pendente.hasNext() ? pendente.next() : null;
+            }
+        }
+
+        nomes = novosNomes;
+        ids = novosIds;
+        tamanhoPrincipal = n;
+        removidosPrincipal = 0;
+        pendentes.clear();
+    }
+
+    /**
+     * Pesquisa binária por (nome, id). Entradas removidas continuam ordenadas pelo valor
+     * absoluto do ID, mas não são retornadas.
+     */
+    private int localizarNoPrincipal(String nome, int id) {
+        int baixo = 0;
+        int alto = tamanhoPrincipal - 1;
+        while (baixo <= alto) {
+            int meio = (baixo + alto) >>> 1;
+            int c = comparar(nomes[meio], Math.abs(ids[meio]), nome, id);
+            if (c < 0) {
+                baixo = meio + 1;
+            } else if (c > 0) {
+                alto = meio - 1;
+            } else {
+                return ids[meio] > 0 ? meio : -1;
+            }
+        }
+        return -1;
+    }
+
+    private int primeiroMaiorOuIgual(String chave) {
+        int baixo = 0;
+        int alto = tamanhoPrincipal;
+        while (baixo < alto) {
+            int meio = (baixo + alto) >>> 1;
+            if (nomes[meio].compareTo(chave) < 0) {
+                baixo = meio + 1;
+            } else {
+                alto = meio;
+            }
+        }
+        return baixo;
+    }
+
+    private static Chaves proximoComPrefixo(Iterator<Chaves> pendente, String prefixo) {
+        if (pendente.hasNext()) {
+            Chaves proximo = pendente.next();
+            if (proximo.nome.startsWith(prefixo)) {
+                return proximo;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Compara por nome e, em empate, pelo ID.
+     */
+    private static int comparar(String nomeA, int idA, String nomeB, int idB) {
+        int c = nomeA.compareTo(nomeB);
+        return c != 0 ? c : Integer.compare(idA, idB);
+    }
+
+    /**
+     * Chaves com que um paciente foi indexado. Também é o elemento do bloco pendente,
+     * ordenado por (nome, id).
+     */
+    private static final class Chaves implements Comparable<Chaves> {
+        private final int id;
+        private final String nome;
+        private final int cpf;
+        private final int prontuario;
+
+        private Chaves(int id, String nome, int cpf, int prontuario) {
+            this.id = id;
+            this.nome = nome;
+            this.cpf = cpf;
+            this.prontuario = prontuario;
+        }
+
+        @Override
+        public int compareTo(Chaves outra) {
+            return comparar(nome, id, outra.nome, outra.id);
+        }
+    }
+}
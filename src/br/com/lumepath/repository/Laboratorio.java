@@ -0,0 +1,204 @@
+package br.com.lumepath.repository;
+
+import br.com.lumepath.bean.Amostra;
+import br.com.lumepath.bean.AnalisePatologica;
+import br.com.lumepath.bean.Leitor;
+import br.com.lumepath.bean.Paciente;
+import br.com.lumepath.bean.PatologistaResponsavel;
+import br.com.lumepath.utils.FeedAlteracoes;
+import br.com.lumepath.utils.LaudoCache;
+
+import java.util.function.Function;
+
+/**
+ * Ponto único de registro dos dados de um laboratório.
+ *
+ * <p>Mantém juntos o {@link Relacionamentos} (paciente → amostras → análises), o
+ * {@link IndicePacientes}, os {@link Agregados} e o {@link RollupLiberacao}, garantindo
+ * que cada entidade seja contada uma única vez nos agregados. Amostras e tempos de liberação
+ * são contados no primeiro registro; análises são recontadas a cada registro, para que os
+ * painéis acompanhem a troca de patologista.</p>
+ *
+ * <p>Os métodos são sincronizados. Consultas aos relacionamentos, agregados e tempos de
+ * liberação devem passar por {@link #consultar(Function)}, {@link #consultarAgregados(Function)}
+ * e {@link #consultarLiberacao(Function)}.</p>
+ *
+ * <p>Cada laboratório de uma instalação compartilhada tem seu próprio objeto: os IDs de
+ * pacientes, amostras e análises só precisam ser únicos dentro dele, e cada um tem seus
+ * índices, seu lock e seu {@link LaudoCache}, de modo que a carga de um laboratório não
+ * disputa o lock nem descarta os laudos em cache de outro.</p>
+ *
+ * <p>Com um {@link FeedAlteracoes} definido, as análises novas, os laudos emitidos e as
+ * leituras registradas podem ser publicados nele. O registro não publica nada: só quem grava os
+ * dados sabe quando estão confirmados, e é ele quem chama {@link #publicarLeitura(Leitor, int)},
+ * {@link #publicarAnalise(AnalisePatologica)} e {@link #publicarLaudo(AnalisePatologica)} depois
+ * da gravação, para que o LIS nunca receba uma leitura recusada ou uma análise que não chegou ao
+ * disco.</p>
+ *
+ * @author Ricardo
+ * @version 1.0
+ */
+public class Laboratorio {
+
+    /** Código do laboratório criado sem código, em instalações com um só laboratório. */
+    public static final String CODIGO_PADRAO = "padrao";
+
+    private final String codigo;
+    private final LaudoCache laudos;
+    private final Relacionamentos relacionamentos = new Relacionamentos();
+    private final IndicePacientes indicePacientes = new IndicePacientes();
+    private final Agregados agregados = new Agregados();
+    private final RollupLiberacao rollupLiberacao = new RollupLiberacao();
+    private volatile FeedAlteracoes feed;
+
+    /**
+     * Cria o laboratório único da instalação, usando o cache de laudos padrão.
+     */
+    public Laboratorio() {
+        this(CODIGO_PADRAO, LaudoCache.getPadrao());
+    }
+
+    /**
+     * @param codigo código do laboratório na instalação.
+     * @param laudos cache dos laudos emitidos por este laboratório.
+     */
+    public Laboratorio(String codigo, LaudoCache laudos) {
+        if (codigo == null || codigo.trim().isEmpty()) {
+            throw new IllegalArgumentException("Código do laboratório não pode ser vazio.");
+        }
+        this.codigo = codigo;
+        this.laudos = laudos;
+    }
+
+    public String getCodigo() {
+        return codigo;
+    }
+
+    public LaudoCache getLaudos() {
+        return laudos;
+    }
+
+    /**
+     * Passa a publicar as alterações no feed; {@code null} para parar.
+     */
+    public void publicarEm(FeedAlteracoes feed) {
+        this.feed = feed;
+    }
+
+    public FeedAlteracoes getFeed() {
+        return feed;
+    }
+
+    /**
+     * Emite o laudo da análise pelo cache deste laboratório. Não usa o lock do laboratório.
+     */
+    public String emitirLaudo(AnalisePatologica analise) {
+        return laudos.obter(analise);
+    }
+
+    /**
+     * Publica no feed a leitura já gravada; sem feed, não faz nada.
+     *
+     * @param numero número devolvido por {@link #registrarLeitura(Leitor)}.
+     */
+    public void publicarLeitura(Leitor leitor, int numero) {
+        FeedAlteracoes destino = feed;
+        if (destino != null) {
+            destino.publicarLeitura(codigo, leitor, numero);
+        }
+    }
+
+    /**
+     * Publica no feed a análise nova já gravada; sem feed, não faz nada.
+     */
+    public void publicarAnalise(AnalisePatologica analise) {
+        FeedAlteracoes destino = feed;
+        if (destino != null) {
+            destino.publicarAnalise(codigo, analise);
+        }
+    }
+
+    /**
+     * Publica no feed o laudo da análise já gravada; sem feed, não faz nada.
+     */
+    public void publicarLaudo(AnalisePatologica analise) {
+        FeedAlteracoes destino = feed;
+        if (destino != null) {
+            destino.publicarLaudo(codigo, analise);
+        }
+    }
+
+    public synchronized void registrarPatologista(PatologistaResponsavel patologista) {
+        relacionamentos.registrarPatologista(patologista);
+    }
+
+    public synchronized void registrarPaciente(Paciente paciente) {
+        relacionamentos.registrarPaciente(paciente);
+        indicePacientes.adicionar(paciente);
+    }
+
+    /**
+     * Registra a amostra como coletada do paciente.
+     *
+     * @param paciente paciente dono da amostra; é registrado se ainda não estiver.
+     * @param amostra amostra coletada.
+     */
+    public synchronized void registrarAmostra(Paciente paciente, Amostra amostra) {
+        boolean nova = relacionamentos.getAmostra(amostra.getId()) == null;
+        if (relacionamentos.getPaciente(paciente.getId()) == null) {
+            registrarPaciente(paciente);
+        }
+        amostra.setPaciente(paciente);
+        relacionamentos.vincularAmostra(paciente, amostra);
+        if (nova) {
+            agregados.registrarAmostra(amostra);
+        }
+    }
+
+    /**
+     * Registra a leitura na amostra do leitor.
+     *
+     * @return número sequencial da leitura.
+     */
+    public synchronized int registrarLeitura(Leitor leitor) {
+        return relacionamentos.registrarLeitura(leitor);
+    }
+
+    /**
+     * Registra a análise, ligando-a à amostra e ao patologista já associados nela.
+     *
+     * @return {@code true} se a análise ainda não estava registrada.
+     */
+    public synchronized boolean registrarAnalise(AnalisePatologica analise) {
+        boolean nova = relacionamentos.getAnalise(analise.getId()) == null;
+        if (analise.getAmostra() != null && relacionamentos.getAmostra(analise.getAmostra().getId()) == null
+                && analise.getAmostra().getPaciente() != null) {
+            registrarAmostra(analise.getAmostra().getPaciente(), analise.getAmostra());
+        }
+        relacionamentos.registrarAnalise(analise);
+        agregados.registrarAnalise(analise);
+        if (nova) {
+            rollupLiberacao.registrar(analise);
+        }
+        return nova;
+    }
+
+    /**
+     * Índice de busca de pacientes; tem controle de concorrência próprio.
+     */
+    public IndicePacientes getIndicePacientes() {
+        return indicePacientes;
+    }
+
+    public synchronized <T> T consultar(Function<Relacionamentos, T> consulta) {
+        return consulta.apply(relacionamentos);
+    }
+
+    public synchronized <T> T consultarAgregados(Function<Agregados, T> consulta) {
+        return consulta.apply(agregados);
+    }
+
+    public synchronized <T> T consultarLiberacao(Function<RollupLiberacao, T> consulta) {
+        return consulta.apply(rollupLiberacao);
+    }
+}
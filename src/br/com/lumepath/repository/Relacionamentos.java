@@ -0,0 +1,217 @@
+package br.com.lumepath.repository;
+
+import br.com.lumepath.bean.Amostra;
+import br.com.lumepath.bean.AnalisePatologica;
+import br.com.lumepath.bean.Leitor;
+import br.com.lumepath.bean.Paciente;
+import br.com.lumepath.bean.PatologistaResponsavel;
+import br.com.lumepath.utils.IntLista;
+import br.com.lumepath.utils.IntObjetoMap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Registro em memória das entidades e das ligações entre elas, todas indexadas por ID.
+ *
+ * <p>Cada entidade fica em um {@link IntObjetoMap} e cada relacionamento é uma lista de
+ * adjacência ({@link IntLista}) indexada pelo ID de origem:</p>
+ * <ul>
+ *     <li>patologista → análises</li>
+ *     <li>paciente → amostras</li>
+ *     <li>amostra → análises</li>
+ *     <li>amostra → leituras</li>
+ * </ul>
+ *
+ * <p>Resolver um ID ou a lista de ligações de uma entidade custa uma consulta ao mapa,
+ * sem boxing. Leituras não têm ID próprio, então recebem um número sequencial no registro.
+ * Não é thread-safe.</p>
+ *
+ * @author Ricardo
+ * @version 1.0
+ */
+public class Relacionamentos {
+
+    private static final IntLista VAZIA = new IntLista(1).somenteLeitura();
+
+    private final IntObjetoMap<Paciente> pacientes = new IntObjetoMap<>();
+    private final IntObjetoMap<Amostra> amostras = new IntObjetoMap<>();
+    private final IntObjetoMap<PatologistaResponsavel> patologistas = new IntObjetoMap<>();
+    private final IntObjetoMap<AnalisePatologica> analises = new IntObjetoMap<>();
+    private final IntObjetoMap<Leitor> leituras = new IntObjetoMap<>();
+
+    private final IntObjetoMap<IntLista> analisesPorPatologista = new IntObjetoMap<>();
+    private final IntObjetoMap<IntLista> amostrasPorPaciente = new IntObjetoMap<>();
+    private final IntObjetoMap<IntLista> analisesPorAmostra = new IntObjetoMap<>();
+    private final IntObjetoMap<IntLista> leiturasPorAmostra = new IntObjetoMap<>();
+
+    /** Ligações inversas, usadas para desfazer um vínculo quando ele muda. */
+    private final IntObjetoMap<int[]> vinculosDaAnalise = new IntObjetoMap<>();
+    private final IntObjetoMap<Paciente> pacienteDaAmostra = new IntObjetoMap<>();
+
+    private int proximaLeitura = 1;
+
+    // Registro
+
+    public void registrarPaciente(Paciente paciente) {
+        pacientes.put(paciente.getId(), paciente);
+    }
+
+    public void registrarPatologista(PatologistaResponsavel patologista) {
+        patologistas.put(patologista.getId(), patologista);
+    }
+
+    public void registrarAmostra(Amostra amostra) {
+        amostras.put(amostra.getId(), amostra);
+    }
+
+    /**
+     * Registra a análise e liga-a à amostra e ao patologista associados nela.
+     *
+     * <p>Se a análise já estava registrada com outra amostra ou patologista, os vínculos
+     * antigos são desfeitos. A amostra e o patologista também são registrados.</p>
+     */
+    public void registrarAnalise(AnalisePatologica analise) {
+        int id = analise.getId();
+        int[] antigos = vinculosDaAnalise.get(id);
+        if (antigos != null) {
+            remover(analisesPorAmostra, antigos[0], id);
+            remover(analisesPorPatologista, antigos[1], id);
+        }
+
+        analises.put(id, analise);
+        int idAmostra = 0;
+        int idPatologista = 0;
+        if (analise.getAmostra() != null) {
+            idAmostra = analise.getAmostra().getId();
+            registrarAmostra(analise.getAmostra());
+            adicionar(analisesPorAmostra, idAmostra, id);
+        }
+        if (analise.getPatologistaResponsavel() != null) {
+            idPatologista = analise.getPatologistaResponsavel().getId();
+            registrarPatologista(analise.getPatologistaResponsavel());
+            adicionar(analisesPorPatologista, idPatologista, id);
+        }
+        vinculosDaAnalise.put(id, new int[]{idAmostra, idPatologista});
+    }
+
+    /**
+     * Liga a amostra ao paciente de quem foi coletada, registrando os dois.
+     */
+    public void vincularAmostra(Paciente paciente, Amostra amostra) {
+        registrarPaciente(paciente);
+        registrarAmostra(amostra);
+        Paciente anterior = pacienteDaAmostra.put(amostra.getId(), paciente);
+        if (anterior != null) {
+            remover(amostrasPorPaciente, anterior.getId(), amostra.getId());
+        }
+        adicionar(amostrasPorPaciente, paciente.getId(), amostra.getId());
+    }
+
+    /**
+     * Registra a leitura como pertencente à amostra do leitor.
+     *
+     * @return número sequencial atribuído à leitura.
+     */
+    public int registrarLeitura(Leitor leitor) {
+        int id = proximaLeitura++;
+        leituras.put(id, leitor);
+        adicionar(leiturasPorAmostra, leitor.getAmostra().getId(), id);
+        return id;
+    }
+
+    // Resolução por ID
+
+    public Paciente getPaciente(int id) {
+        return pacientes.get(id);
+    }
+
+    public Amostra getAmostra(int id) {
+        return amostras.get(id);
+    }
+
+    public PatologistaResponsavel getPatologista(int id) {
+        return patologistas.get(id);
+    }
+
+    public AnalisePatologica getAnalise(int id) {
+        return analises.get(id);
+    }
+
+    public Leitor getLeitura(int id) {
+        return leituras.get(id);
+    }
+
+    /**
+     * Paciente de quem a amostra foi coletada, ou {@code null} se não houver vínculo.
+     */
+    public Paciente getPacienteDaAmostra(int idAmostra) {
+        return pacienteDaAmostra.get(idAmostra);
+    }
+
+    // Listas de adjacência (somente leitura: alterações lançam UnsupportedOperationException)
+
+    public IntLista getIdsAnalisesDoPatologista(int idPatologista) {
+        return ids(analisesPorPatologista, idPatologista);
+    }
+
+    public IntLista getIdsAmostrasDoPaciente(int idPaciente) {
+        return ids(amostrasPorPaciente, idPaciente);
+    }
+
+    public IntLista getIdsAnalisesDaAmostra(int idAmostra) {
+        return ids(analisesPorAmostra, idAmostra);
+    }
+
+    public IntLista getIdsLeiturasDaAmostra(int idAmostra) {
+        return ids(leiturasPorAmostra, idAmostra);
+    }
+
+    public List<AnalisePatologica> getAnalisesDoPatologista(int idPatologista) {
+        return resolver(getIdsAnalisesDoPatologista(idPatologista), analises);
+    }
+
+    public List<Amostra> getAmostrasDoPaciente(int idPaciente) {
+        return resolver(getIdsAmostrasDoPaciente(idPaciente), amostras);
+    }
+
+    public List<AnalisePatologica> getAnalisesDaAmostra(int idAmostra) {
+        return resolver(getIdsAnalisesDaAmostra(idAmostra), analises);
+    }
+
+    public List<Leitor> getLeiturasDaAmostra(int idAmostra) {
+        return resolver(getIdsLeiturasDaAmostra(idAmostra), leituras);
+    }
+
+    private static IntLista ids(IntObjetoMap<IntLista> adjacencia, int origem) {
+        IntLista lista = adjacencia.get(origem);
+        return lista == null ? VAZIA : lista.somenteLeitura();
+    }
+
+    private static <T> List<T> resolver(IntLista ids, IntObjetoMap<T> entidades) {
+        List<T> resultado = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            T entidade = entidades.get(ids.get(i));
+            if (entidade != null) {
+                resultado.add(entidade);
+            }
+        }
+        return resultado;
+    }
+
+    private static void adicionar(IntObjetoMap<IntLista> adjacencia, int origem, int destino) {
+        IntLista lista = adjacencia.get(origem);
+        if (lista == null) {
+            lista = new IntLista();
+            adjacencia.put(origem, lista);
+        }
+        lista.add(destino);
+    }
+
+    private static void remover(IntObjetoMap<IntLista> adjacencia, int origem, int destino) {
+        IntLista lista = adjacencia.get(origem);
+        if (lista != null) {
+            lista.removeValor(destino);
+        }
+    }
+}
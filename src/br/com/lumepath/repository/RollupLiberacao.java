@@ -0,0 +1,264 @@
+package br.com.lumepath.repository;
+
+import br.com.lumepath.bean.AnalisePatologica;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Histogramas do tempo de liberação (coleta até análise) agrupados por dia e por semana.
+ *
+ * <p>Cada série (geral, por patologista e por tipo de coleta) guarda um anel de
+ * histogramas diários e outro de semanais. Registrar uma análise incrementa um contador
+ * em cada anel, em tempo constante. Quando o dia ou a semana de uma posição do anel fica
+ * mais antigo que a janela, ela é zerada e reaproveitada, então a memória por série é fixa.</p>
+ *
+ * <p>O tipo de coleta é texto livre, então o número de séries por tipo é limitado a
+ * {@value #MAXIMO_TIPOS_DE_COLETA}; os tipos que aparecem depois disso são somados na série
+ * {@value #TIPO_OUTROS}. Tempos negativos (análise datada antes da coleta) contam como zero,
+ * na faixa e na média.</p>
+ *
+ * <p>Percentis são calculados somando os histogramas do intervalo pedido, sem acessar os
+ * registros originais. Não é thread-safe.</p>
+ *
+ * @author Ricardo
+ * @version 1.0
+ */
+public class RollupLiberacao {
+
+    /** Série com todas as análises. */
+    public static final String GERAL = "geral";
+
+    /** Tempos de 0 a {@code MAXIMO_DIAS - 1} dias têm faixa própria; acima disso vão para a última. */
+    public static final int MAXIMO_DIAS = 64;
+
+    /** Janela mantida em memória. */
+    public static final int DIAS_RETIDOS = 120;
+    public static final int SEMANAS_RETIDAS = 104;
+
+    /** Séries por tipo de coleta mantidas; os tipos seguintes vão para {@link #TIPO_OUTROS}. */
+    public static final int MAXIMO_TIPOS_DE_COLETA = 64;
+
+    /** Série dos tipos de coleta que excederam {@link #MAXIMO_TIPOS_DE_COLETA}. */
+    public static final String TIPO_OUTROS = "tipo:*outros";
+
+    /** Agrupamento dos histogramas. */
+    public enum Periodo {
+        DIA, SEMANA
+    }
+
+    private final Map<String, Serie> series = new HashMap<>();
+    private long descartados;
+    private int tiposDeColeta;
+
+    public static String chavePatologista(int idPatologista) {
+        return "patologista:" + idPatologista;
+    }
+
+    public static String chaveTipoDeColeta(String tipoDeColeta) {
+        return "tipo:" + IndicePacientes.normalizar(tipoDeColeta);
+    }
+
+    /**
+     * Registra o tempo de liberação da análise nas séries geral, do patologista e do
+     * tipo de coleta. Análises sem amostra são ignoradas.
+     */
+    public void registrar(AnalisePatologica analise) {
+        if (analise.getAmostra() == null) {
+            return;
+        }
+        int dias = (int) Math.max(0, Math.min(Agregados.tempoDeLiberacao(analise), Integer.MAX_VALUE));
+        long dia = analise.getDataAnalise().toEpochDay();
+
+        registrar(GERAL, dia, dias);
+        registrar(serieTipoDeColeta(analise.getAmostra().getTipoDeColeta()), dia, dias);
+        if (analise.getPatologistaResponsavel() != null) {
+            registrar(chavePatologista(analise.getPatologistaResponsavel().getId()), dia, dias);
+        }
+    }
+
+    /**
+     * Soma os histogramas da série no intervalo, inclusive nas duas pontas.
+     *
+     * <p>Partes do intervalo fora da janela retida não contribuem.</p>
+     */
+    public Histograma getHistograma(String serie, Periodo periodo, LocalDate de, LocalDate ate) {
+        Histograma soma = new Histograma();
+        Serie encontrada = series.get(serie);
+        if (encontrada == null) {
+            return soma;
+        }
+        long inicio = de.toEpochDay();
+        long fim = ate.toEpochDay();
+        if (periodo == Periodo.SEMANA) {
+            inicio = semana(inicio);
+            fim = semana(fim);
+        }
+        Anel anel = periodo == Periodo.DIA ? encontrada.dias : encontrada.semanas;
+        for (long chave = Math.max(inicio, fim - anel.rotulos.length + 1); chave <= fim; chave++) {
+            anel.somarEm(chave, soma);
+        }
+        return soma;
+    }
+
+    /**
+     * Atalho para o percentil do tempo de liberação no intervalo.
+     *
+     * @param percentil valor entre 0 e 100.
+     * @return tempo em dias, ou -1 se não houver análises no intervalo.
+     */
+    public int getPercentil(String serie, Periodo periodo, LocalDate de, LocalDate ate, double percentil) {
+        return getHistograma(serie, periodo, de, ate).percentil(percentil);
+    }
+
+    /**
+     * Registros ignorados por serem mais antigos que a janela retida.
+     */
+    public long getDescartados() {
+        return descartados;
+    }
+
+    /**
+     * Série do tipo de coleta, ou {@link #TIPO_OUTROS} se o limite de tipos já foi atingido.
+     */
+    private String serieTipoDeColeta(String tipoDeColeta) {
+        String chave = chaveTipoDeColeta(tipoDeColeta);
+        if (series.containsKey(chave)) {
+            return chave;
+        }
+        if (tiposDeColeta >= MAXIMO_TIPOS_DE_COLETA) {
+            return TIPO_OUTROS;
+        }
+        tiposDeColeta++;
+        return chave;
+    }
+
+    private void registrar(String chave, long dia, int dias) {
+        Serie serie = series.computeIfAbsent(chave, c -> new Serie());
+        if (!serie.dias.incrementar(dia, dias)) {
+            descartados++;
+        }
+        serie.semanas.incrementar(semana(dia), dias);
+    }
+
+    /** Semanas começam na segunda-feira; 1970-01-01 foi uma quinta. */
+    private static long semana(long epochDay) {
+        return Math.floorDiv(epochDay + 3, 7);
+    }
+
+    /**
+     * Histograma de tempos de liberação em dias.
+     */
+    public static final class Histograma {
+        private final long[] contagens = new long[MAXIMO_DIAS];
+        private long total;
+        private long soma;
+
+        void adicionar(int dias) {
+            int valor = Math.max(0, dias);
+            contagens[Math.min(valor, MAXIMO_DIAS - 1)]++;
+            total++;
+            soma += valor;
+        }
+
+        void somar(Histograma outro) {
+            for (int i = 0; i < MAXIMO_DIAS; i++) {
+                contagens[i] += outro.contagens[i];
+            }
+            total += outro.total;
+            soma += outro.soma;
+        }
+
+        void zerar() {
+            Arrays.fill(contagens, 0);
+            total = 0;
+            soma = 0;
+        }
+
+        public long getTotal() {
+            return total;
+        }
+
+        public double getMedia() {
+            return total == 0 ? 0 : (double) soma / total;
+        }
+
+        /**
+         * @param percentil valor entre 0 e 100.
+         * @return menor tempo, em dias, que cobre o percentil; -1 se vazio. O valor
+         * {@code MAXIMO_DIAS - 1} significa "esse valor ou mais".
+         */
+        public int percentil(double percentil) {
+            if (total == 0) {
+                return -1;
+            }
+            long alvo = Math.max(1, (long) Math.ceil(total * percentil / 100.0));
+            long acumulado = 0;
+            for (int i = 0; i < MAXIMO_DIAS; i++) {
+                acumulado += contagens[i];
+                if (acumulado >= alvo) {
+                    return i;
+                }
+            }
+            return MAXIMO_DIAS - 1;
+        }
+
+        public long getContagem(int dias) {
+            return contagens[dias];
+        }
+    }
+
+    private static final class Serie {
+        private final Anel dias = new Anel(DIAS_RETIDOS);
+        private final Anel semanas = new Anel(SEMANAS_RETIDAS);
+    }
+
+    /**
+     * Anel de histogramas indexado por dia ou semana. Cada posição guarda o rótulo do
+     * período a que pertence, para detectar quando foi ultrapassada.
+     */
+    private static final class Anel {
+        private final Histograma[] histogramas;
+        private final long[] rotulos;
+        private long maisRecente = Long.MIN_VALUE;
+
+        private Anel(int tamanho) {
+            histogramas = new Histograma[tamanho];
+            rotulos = new long[tamanho];
+            Arrays.fill(rotulos, Long.MIN_VALUE);
+        }
+
+        /**
+         * @return {@code false} se o período é mais antigo que a janela e foi ignorado.
+         */
+        private boolean incrementar(long rotulo, int dias) {
+            if (maisRecente != Long.MIN_VALUE && rotulo <= maisRecente - rotulos.length) {
+                return false;
+            }
+            maisRecente = Math.max(maisRecente, rotulo);
+            int i = posicao(rotulo);
+            if (histogramas[i] == null) {
+                histogramas[i] = new Histograma();
+            }
+            if (rotulos[i] != rotulo) {
+                histogramas[i].zerar();
+                rotulos[i] = rotulo;
+            }
+            histogramas[i].adicionar(dias);
+            return true;
+        }
+
+        private void somarEm(long rotulo, Histograma destino) {
+            int i = posicao(rotulo);
+            if (rotulos[i] == rotulo && histogramas[i] != null) {
+                destino.somar(histogramas[i]);
+            }
+        }
+
+        private int posicao(long rotulo) {
+            return (int) Math.floorMod(rotulo, (long) rotulos.length);
+        }
+    }
+}
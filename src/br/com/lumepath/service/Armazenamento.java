@@ -0,0 +1,243 @@
+package br.com.lumepath.service;
+
+import br.com.lumepath.bean.AnalisePatologica;
+import br.com.lumepath.bean.Leitor;
+import br.com.lumepath.codec.CodecBinario;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Arquivo de leituras e análises gravado em lotes.
+ *
+ * <p>Cada registro é o tamanho (int), o CRC32 dos dados (int) e o registro do
+ * {@link CodecBinario}. Os dados são codificados na thread de quem chama, em um buffer do
+ * tamanho máximo que o registro pode ocupar, então alterações posteriores no bean não afetam o
+ * que foi enviado. A gravação e o {@code fsync} ficam a cargo de um {@link GravadorEmLote}, que
+ * junta os registros de todas as estações.</p>
+ *
+ * <p>Ao abrir, o arquivo é conferido até o primeiro registro incompleto ou corrompido (queda
+ * durante uma gravação), e o restante é descartado antes de acrescentar registros novos.</p>
+ *
+ * <p>Se a gravação de um lote falhar, o arquivo volta ao tamanho de antes do lote, para que os
+ * lotes seguintes não fiquem atrás de um registro pela metade. Se nem isso for possível, o
+ * armazenamento passa a recusar qualquer gravação.</p>
+ *
+ * @author Ricardo
+ * @version 1.0
+ */
+public class Armazenamento implements Closeable {
+
+    /** Espera padrão do primeiro registro de um lote por outros registros. */
+    public static final long PRAZO_PADRAO_MICROS = 2_000;
+    public static final int TAMANHO_LOTE_PADRAO = 256;
+    /** Maior registro aceito na gravação e na leitura, em bytes. */
+    public static final int TAMANHO_MAXIMO_REGISTRO = 16 << 20;
+    private static final int CAPACIDADE_FILA = 8192;
+    /** Tamanho e CRC. */
+    private static final int CABECALHO = 4 + 4;
+
+    private final FileChannel canal;
+    private final GravadorEmLote<ByteBuffer> gravador;
+    /** Falha que impediu desfazer um lote; a partir dela nenhuma gravação é aceita. */
+    private volatile IOException falha;
+
+    public Armazenamento(Path arquivo) throws IOException {
+        this(arquivo, TAMANHO_LOTE_PADRAO, PRAZO_PADRAO_MICROS);
+    }
+
+    /**
+     * @param arquivo arquivo de destino; registros novos são acrescentados ao final.
+     * @param tamanhoLote máximo de registros por {@code fsync}.
+     * @param prazoMicros espera máxima por registros para completar um lote.
+     */
+    public Armazenamento(Path arquivo, int tamanhoLote, long prazoMicros) throws IOException {
+        this(FileChannel.open(arquivo, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE),
+                tamanhoLote, prazoMicros);
+    }
+
+    /**
+     * @param canal canal aberto para leitura e escrita; passa a pertencer ao armazenamento.
+     */
+    Armazenamento(FileChannel canal, int tamanhoLote, long prazoMicros) throws IOException {
+        this.canal = canal;
+        long fim = percorrer(canal, null);
+        if (fim < canal.size()) {
+            canal.truncate(fim);
+            canal.force(true);
+        }
+        canal.position(fim);
+        this.gravador = new GravadorEmLote<>("armazenamento-gravador", this::gravarLote, tamanhoLote,
+                prazoMicros, CAPACIDADE_FILA);
+    }
+
+    /**
+     * Envia as leituras do leitor para gravação.
+     *
+     * @return futuro concluído quando a leitura estiver em disco.
+     */
+    public CompletableFuture<Void> gravarLeitura(Leitor leitor) {
+        ByteBuffer dados = ByteBuffer.allocate(CodecBinario.TAMANHO_MAXIMO_LEITURAS);
+        new CodecBinario().escreverLeituras(dados, leitor);
+        return enviar(dados);
+    }
+
+    /**
+     * Envia a análise, com amostra e patologista, para gravação.
+     *
+     * @return futuro concluído quando a análise estiver em disco.
+     * @throws IllegalArgumentException se a análise ocupar mais que {@value #TAMANHO_MAXIMO_REGISTRO} bytes.
+     */
+    public CompletableFuture<Void> gravarAnalise(AnalisePatologica analise) {
+        long tamanho = CodecBinario.tamanhoMaximo(analise);
+        if (tamanho > TAMANHO_MAXIMO_REGISTRO) {
+            throw new IllegalArgumentException(String.format("Análise %d ocuparia até %d bytes, acima do máximo de %d "
+                    + "bytes por registro.", analise.getId(), tamanho, TAMANHO_MAXIMO_REGISTRO));
+        }
+        ByteBuffer dados = ByteBuffer.allocate((int) tamanho);
+        new CodecBinario().escreverAnalise(dados, analise);
+        return enviar(dados);
+    }
+
+    public GravadorEmLote.Metricas getMetricas() {
+        return gravador.getMetricas();
+    }
+
+    /**
+     * Percorre os registros gravados, parando no primeiro registro incompleto ou corrompido.
+     *
+     * @param visitante recebe cada registro; use {@link CodecBinario#espiarTipo(ByteBuffer)}
+     *                  para saber como decodificá-lo.
+     * @return quantidade de registros percorridos.
+     */
+    public static int percorrer(Path arquivo, Consumer<ByteBuffer> visitante) throws IOException {
+        int[] registros = new int[1];
+        try (FileChannel leitura = FileChannel.open(arquivo, StandardOpenOption.READ)) {
+            percorrer(leitura, registro -> {
+                registros[0]++;
+                visitante.accept(registro);
+            });
+        }
+        return registros[0];
+    }
+
+    /**
+     * Grava os registros pendentes e fecha o arquivo.
+     */
+    @Override
+    public void close() throws IOException {
+        gravador.close();
+        canal.close();
+    }
+
+    /**
+     * @param visitante recebe cada registro válido; {@code null} para apenas conferir.
+     * @return posição logo após o último registro válido.
+     */
+    private static long percorrer(FileChannel leitura, Consumer<ByteBuffer> visitante) throws IOException {
+        ByteBuffer cabecalho = ByteBuffer.allocate(CABECALHO);
+        long tamanhoArquivo = leitura.size();
+        long posicao = 0;
+        while (true) {
+            cabecalho.clear();
+            if (lerTudo(leitura, cabecalho, posicao) < CABECALHO) {
+                return posicao;
+            }
+            cabecalho.flip();
+            int tamanho = cabecalho.getInt();
+            int crc = cabecalho.getInt();
+            // O tamanho vem do arquivo: confere antes de alocar
+            if (tamanho <= 0 || tamanho > TAMANHO_MAXIMO_REGISTRO || tamanho > tamanhoArquivo - posicao - CABECALHO) {
+                return posicao;
+            }
+            ByteBuffer registro = ByteBuffer.allocate(tamanho);
+            if (lerTudo(leitura, registro, posicao + CABECALHO) < tamanho) {
+                return posicao;
+            }
+            registro.flip();
+            if (crc(registro) != crc) {
+                return posicao;
+            }
+            if (visitante != null) {
+                visitante.accept(registro);
+            }
+            posicao += CABECALHO + tamanho;
+        }
+    }
+
+    private static int lerTudo(FileChannel leitura, ByteBuffer destino, long posicao) throws IOException {
+        int total = 0;
+        while (destino.hasRemaining()) {
+            int lidos = leitura.read(destino, posicao + total);
+            if (lidos < 0) {
+                break;
+            }
+            total += lidos;
+        }
+        return total;
+    }
+
+    private static int crc(ByteBuffer dados) {
+        CRC32 crc = new CRC32();
+        crc.update(dados.duplicate());
+        return (int) crc.getValue();
+    }
+
+    private CompletableFuture<Void> enviar(ByteBuffer dados) {
+        if (falha != null) {
+            return CompletableFuture.failedFuture(new IOException("Armazenamento desativado após falha de gravação.",
+                    falha));
+        }
+        dados.flip();
+        ByteBuffer registro = ByteBuffer.allocate(CABECALHO + dados.remaining());
+        registro.putInt(dados.remaining());
+        registro.putInt(crc(dados));
+        registro.put(dados);
+        registro.flip();
+        return gravador.enviar(registro);
+    }
+
+    private void gravarLote(List<ByteBuffer> registros) throws IOException {
+        if (falha != null) {
+            throw new IOException("Armazenamento desativado após falha de gravação.", falha);
+        }
+        ByteBuffer[] buffers = registros.toArray(new ByteBuffer[0]);
+        long restante = 0;
+        for (ByteBuffer buffer : buffers) {
+            restante += buffer.remaining();
+        }
+        long inicio = canal.position();
+        try {
+            // Uma escrita agrupada pode gravar só parte dos buffers; repete até acabar
+            while (restante > 0) {
+                restante -= canal.write(buffers);
+            }
+            canal.force(false);
+        } catch (IOException e) {
+            desfazer(inicio, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Descarta o que o lote que falhou chegou a gravar. Se não conseguir, desativa o armazenamento.
+     */
+    private void desfazer(long inicio, IOException erro) {
+        try {
+            canal.truncate(inicio);
+            canal.position(inicio);
+            canal.force(true);
+        } catch (IOException e) {
+            erro.addSuppressed(e);
+            falha = erro;
+        }
+    }
+}
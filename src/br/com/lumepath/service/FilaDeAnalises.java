@@ -0,0 +1,305 @@
+package br.com.lumepath.service;
+
+import br.com.lumepath.bean.AnalisePatologica;
+import br.com.lumepath.bean.PatologistaResponsavel;
+import br.com.lumepath.repository.IndicePacientes;
+import br.com.lumepath.repository.Laboratorio;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fila de análises pendentes distribuídas entre os patologistas.
+ *
+ * <p>Há uma fila por especialidade, ordenada por prioridade (maior primeiro) e ordem de
+ * chegada. Um patologista reivindica a próxima análise da sua especialidade; se não houver,
+ * pega uma de {@value #ESPECIALIDADE_GERAL}, que qualquer patologista pode atender. Cada
+ * patologista tem um limite de análises em andamento, o que distribui a carga entre eles.</p>
+ *
+ * <p>Uma reivindicação tem prazo. Se não for concluída a tempo, a análise volta para a fila
+ * na mesma posição de antes, pela varredura de {@link #devolverExpiradas()}.</p>
+ *
+ * <p>As análises em andamento são identificadas pelo laboratório e pelo ID, já que os IDs só
+ * são únicos dentro de cada laboratório. Uma análise só passa para o patologista depois que a
+ * reivindicação é registrada; se a mesma análise foi enfileirada duas vezes e já está em
+ * andamento, a cópia retirada da fila é descartada sem alterar a análise.</p>
+ *
+ * <p>As filas são {@link ConcurrentSkipListSet} e os controles de carga e reivindicações
+ * usam estruturas concorrentes sem trava global, então muitos patologistas podem
+ * reivindicar ao mesmo tempo.</p>
+ *
+ * @author Ricardo
+ * @version 1.0
+ */
+public class FilaDeAnalises {
+
+    /** Especialidade padrão de {@link PatologistaResponsavel#setEspecialidade(String)}. */
+    public static final String ESPECIALIDADE_GERAL = "Patologia Geral";
+
+    private final int capacidadePorPatologista;
+    private final long prazoMillis;
+
+    private final AtomicLong sequencia = new AtomicLong();
+    private final AtomicInteger pendentes = new AtomicInteger();
+    private final Map<String, ConcurrentSkipListSet<Item>> filas = new ConcurrentHashMap<>();
+    private final Map<Integer, AtomicInteger> cargas = new ConcurrentHashMap<>();
+    /** Reivindicações por laboratório e ID da análise. */
+    private final Map<String, Reivindicacao> emAndamento = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService varredura;
+
+    /**
+     * @param capacidadePorPatologista análises simultâneas permitidas a cada patologista.
+     * @param prazoMillis tempo máximo de uma reivindicação antes de voltar para a fila.
+     */
+    public FilaDeAnalises(int capacidadePorPatologista, long prazoMillis) {
+        if (capacidadePorPatologista <= 0 || prazoMillis <= 0) {
+            throw new IllegalArgumentException("Capacidade e prazo devem ser maiores que zero.");
+        }
+        this.capacidadePorPatologista = capacidadePorPatologista;
+        this.prazoMillis = prazoMillis;
+    }
+
+    /**
+     * Coloca a análise do laboratório padrão na fila da especialidade.
+     *
+     * @param analise análise pendente.
+     * @param especialidade especialidade exigida; vazia ou nula significa patologia geral.
+     * @param prioridade quanto maior, mais cedo a análise é atendida.
+     */
+    public void enfileirar(AnalisePatologica analise, String especialidade, int prioridade) {
+        enfileirar(Laboratorio.CODIGO_PADRAO, analise, especialidade, prioridade);
+    }
+
+    /**
+     * Coloca a análise na fila da especialidade.
+     *
+     * @param laboratorio código do laboratório da análise.
+     * @param analise análise pendente.
+     * @param especialidade especialidade exigida; vazia ou nula significa patologia geral.
+     * @param prioridade quanto maior, mais cedo a análise é atendida.
+     */
+    public void enfileirar(String laboratorio, AnalisePatologica analise, String especialidade, int prioridade) {
+        inserir(new Item(laboratorio, analise, chave(especialidade), prioridade, sequencia.incrementAndGet()));
+    }
+
+    /**
+     * Entrega ao patologista a próxima análise que ele pode atender.
+     *
+     * <p>A análise passa a ter o patologista como responsável.</p>
+     *
+     * @return reivindicação, ou {@code null} se não houver análise disponível ou se o
+     * patologista já estiver no limite de análises em andamento.
+     */
+    public Reivindicacao reivindicar(PatologistaResponsavel patologista) {
+        AtomicInteger carga = cargas.computeIfAbsent(patologista.getId(), id -> new AtomicInteger());
+        if (!ocuparVaga(carga)) {
+            return null;
+        }
+
+        while (true) {
+            Item item = retirar(chave(patologista.getEspecialidade()));
+            if (item == null) {
+                item = retirar(chave(ESPECIALIDADE_GERAL));
+            }
+            if (item == null) {
+                carga.decrementAndGet();
+                return null;
+            }
+
+            Reivindicacao reivindicacao = new Reivindicacao(item, patologista, System.currentTimeMillis() + prazoMillis);
+            // O responsável só muda depois que a reivindicação é registrada; uma cópia da mesma
+            // análise já em andamento sai da fila sem tocar na análise
+            if (emAndamento.putIfAbsent(item.chave, reivindicacao) == null) {
+                item.analise.setPatologista(patologista);
+                return reivindicacao;
+            }
+        }
+    }
+
+    /**
+     * Marca a análise como concluída e libera a vaga do patologista.
+     *
+     * @return {@code false} se a reivindicação já tinha expirado ou não existia.
+     */
+    public boolean concluir(Reivindicacao reivindicacao) {
+        if (!emAndamento.remove(reivindicacao.item.chave, reivindicacao)) {
+            return false;
+        }
+        liberarVaga(reivindicacao);
+        return true;
+    }
+
+    /**
+     * Devolve a análise à fila antes do prazo, na mesma posição de antes.
+     *
+     * @return {@code false} se a reivindicação já tinha expirado ou não existia.
+     */
+    public boolean devolver(Reivindicacao reivindicacao) {
+        if (!emAndamento.remove(reivindicacao.item.chave, reivindicacao)) {
+            return false;
+        }
+        liberarVaga(reivindicacao);
+        inserir(reivindicacao.item);
+        return true;
+    }
+
+    /**
+     * Devolve à fila as reivindicações com prazo vencido.
+     *
+     * @return quantidade de análises devolvidas.
+     */
+    public int devolverExpiradas() {
+        long agora = System.currentTimeMillis();
+        int devolvidas = 0;
+        for (Reivindicacao reivindicacao : emAndamento.values()) {
+            if (reivindicacao.prazo <= agora && devolver(reivindicacao)) {
+                devolvidas++;
+            }
+        }
+        return devolvidas;
+    }
+
+    /**
+     * Agenda {@link #devolverExpiradas()} periodicamente em uma thread própria.
+     */
+    public synchronized void iniciarVarredura(long periodoMillis) {
+        if (varredura != null) {
+            return;
+        }
+        varredura = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "fila-analises-varredura");
+            thread.setDaemon(true);
+            return thread;
+        });
+        varredura.scheduleAtFixedRate(this::devolverExpiradas, periodoMillis, periodoMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void encerrar() {
+        if (varredura != null) {
+            varredura.shutdownNow();
+            varredura = null;
+        }
+    }
+
+    public int getPendentes() {
+        return pendentes.get();
+    }
+
+    public int getEmAndamento() {
+        return emAndamento.size();
+    }
+
+    public int getCarga(PatologistaResponsavel patologista) {
+        AtomicInteger carga = cargas.get(patologista.getId());
+        return carga == null ? 0 : carga.get();
+    }
+
+    private boolean ocuparVaga(AtomicInteger carga) {
+        while (true) {
+            int atual = carga.get();
+            if (atual >= capacidadePorPatologista) {
+                return false;
+            }
+            if (carga.compareAndSet(atual, atual + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private void liberarVaga(Reivindicacao reivindicacao) {
+        cargas.get(reivindicacao.patologista.getId()).decrementAndGet();
+    }
+
+    private void inserir(Item item) {
+        filas.computeIfAbsent(item.especialidade, e -> new ConcurrentSkipListSet<>()).add(item);
+        pendentes.incrementAndGet();
+    }
+
+    private Item retirar(String especialidade) {
+        ConcurrentSkipListSet<Item> fila = filas.get(especialidade);
+        Item item = fila == null ? null : fila.pollFirst();
+        if (item != null) {
+            pendentes.decrementAndGet();
+        }
+        return item;
+    }
+
+    private static String chave(String especialidade) {
+        if (especialidade == null || especialidade.trim().isEmpty()) {
+            especialidade = ESPECIALIDADE_GERAL;
+        }
+        return IndicePacientes.normalizar(especialidade);
+    }
+
+    /**
+     * Análise na fila. A sequência de chegada é mantida ao voltar para a fila.
+     */
+    private static final class Item implements Comparable<Item> {
+        private final String laboratorio;
+        /** Laboratório e ID da análise, chave das reivindicações em andamento. */
+        private final String chave;
+        private final AnalisePatologica analise;
+        private final String especialidade;
+        private final int prioridade;
+        private final long sequencia;
+
+        private Item(String laboratorio, AnalisePatologica analise, String especialidade, int prioridade,
+                     long sequencia) {
+            this.laboratorio = laboratorio;
+            this.chave = laboratorio + ":" + analise.getId();
+            this.analise = analise;
+            this.especialidade = especialidade;
+            this.prioridade = prioridade;
+            this.sequencia = sequencia;
+        }
+
+        @Override
+        public int compareTo(Item outro) {
+            int c = Integer.compare(outro.prioridade, prioridade);
+            return c != 0 ? c : Long.compare(sequencia, outro.sequencia);
+        }
+    }
+
+    /**
+     * Análise entregue a um patologista, com prazo para conclusão.
+     */
+    public static final class Reivindicacao {
+        private final Item item;
+        private final PatologistaResponsavel patologista;
+        private final long prazo;
+
+        private Reivindicacao(Item item, PatologistaResponsavel patologista, long prazo) {
+            this.item = item;
+            this.patologista = patologista;
+            this.prazo = prazo;
+        }
+
+        public AnalisePatologica getAnalise() {
+            return item.analise;
+        }
+
+        public String getLaboratorio() {
+            return item.laboratorio;
+        }
+
+        public PatologistaResponsavel getPatologista() {
+            return patologista;
+        }
+
+        public int getPrioridade() {
+            return item.prioridade;
+        }
+
+        /** Instante (em ms) em que a reivindicação expira. */
+        public long getPrazo() {
+            return prazo;
+        }
+    }
+}
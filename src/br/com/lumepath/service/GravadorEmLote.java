@@ -0,0 +1,313 @@
+package br.com.lumepath.service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Agrupa gravações enviadas por várias threads em lotes gravados de uma só vez.
+ *
+ * <p>Uma thread própria retira o primeiro item pendente e continua juntando itens até o lote
+ * atingir o tamanho máximo ou o prazo de espera vencer. O lote inteiro vai para o
+ * {@link Destino}, que grava e sincroniza uma única vez, e o futuro de cada item é concluído
+ * em seguida. Assim o custo do {@code fsync} é dividido entre todos os itens do lote, e a
+ * vazão cresce com o número de estações gravando ao mesmo tempo.</p>
+ *
+ * <p>A fila de entrada é limitada: quando está cheia, {@link #enviar(Object)} bloqueia até
+ * haver espaço. Uma falha do destino, verificada ou não, conclui com erro só os futuros do seu
+ * lote; se a thread do gravador terminar por qualquer outro motivo, o gravador é encerrado e os
+ * itens pendentes são concluídos com erro, para que ninguém espere para sempre.</p>
+ *
+ * @param <T> tipo dos itens gravados.
+ * @author Ricardo
+ * @version 1.0
+ */
+public class GravadorEmLote<T> implements Closeable {
+
+    /** Grava um lote de itens, sempre a partir da thread do gravador. */
+    public interface Destino<T> {
+        void gravar(List<T> lote) throws IOException;
+    }
+
+    /** Marca o fim da fila ao encerrar o gravador. */
+    private static final Pedido<Object> FIM = new Pedido<>(null);
+
+    private final Destino<T> destino;
+    private final int tamanhoMaximoLote;
+    private final long prazoNanos;
+
+    private final BlockingQueue<Pedido<T>> fila;
+    private final Thread gravador;
+    private volatile boolean fechado;
+
+    private final LongAdder lotes = new LongAdder();
+    private final LongAdder itens = new LongAdder();
+    private final AtomicLong maiorLote = new AtomicLong();
+    private final LongAdder somaCommitNanos = new LongAdder();
+    private final AtomicLong maiorCommitNanos = new AtomicLong();
+    private final LongAdder somaEsperaNanos = new LongAdder();
+    private final LongAdder falhas = new LongAdder();
+
+    /**
+     * @param nome nome da thread do gravador.
+     * @param destino onde os lotes são gravados.
+     * @param tamanhoMaximoLote máximo de itens por lote.
+     * @param prazoMicros tempo máximo que o primeiro item de um lote espera por outros; com
+     *                    zero, o lote leva apenas o que já estiver na fila.
+     * @param capacidadeFila máximo de itens aguardando gravação.
+     */
+    public GravadorEmLote(String nome, Destino<T> destino, int tamanhoMaximoLote, long prazoMicros, int capacidadeFila) {
+        if (tamanhoMaximoLote <= 0 || capacidadeFila <= 0 || prazoMicros < 0) {
+            throw new IllegalArgumentException("Tamanho do lote e capacidade devem ser maiores que zero e o prazo não pode ser negativo.");
+        }
+        this.destino = destino;
+        this.tamanhoMaximoLote = tamanhoMaximoLote;
+        this.prazoNanos = TimeUnit.MICROSECONDS.toNanos(prazoMicros);
+        this.fila = new ArrayBlockingQueue<>(capacidadeFila);
+        this.gravador = new Thread(this::gravarEmLotes, nome);
+        this.gravador.setDaemon(true);
+        this.gravador.start();
+    }
+
+    /**
+     * Enfileira o item para gravação, bloqueando se a fila estiver cheia.
+     *
+     * @return futuro concluído quando o lote que contém o item for gravado.
+     */
+    public CompletableFuture<Void> enviar(T item) {
+        if (fechado) {
+            throw new IllegalStateException("Gravador encerrado.");
+        }
+        Pedido<T> pedido = new Pedido<>(item);
+        try {
+            fila.put(pedido);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pedido.concluido.completeExceptionally(e);
+        }
+        if (!gravador.isAlive()) {
+            // O gravador terminou depois da verificação acima; ninguém mais vai retirar o pedido
+            falharPendentes();
+        }
+        return pedido.concluido;
+    }
+
+    /**
+     * Grava os itens pendentes e encerra a thread do gravador.
+     */
+    @Override
+    public void close() {
+        if (fechado) {
+            return;
+        }
+        fechado = true;
+        try {
+            fila.put(fim());
+            gravador.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public Metricas getMetricas() {
+        return new Metricas(lotes.sum(), itens.sum(), maiorLote.get(), somaCommitNanos.sum(),
+                maiorCommitNanos.get(), somaEsperaNanos.sum(), falhas.sum());
+    }
+
+    private void gravarEmLotes() {
+        List<Pedido<T>> lote = new ArrayList<>(tamanhoMaximoLote);
+        try {
+            boolean continuar = true;
+            while (continuar) {
+                try {
+                    continuar = juntarLote(lote);
+                } catch (InterruptedException e) {
+                    continuar = false;
+                }
+                if (!lote.isEmpty()) {
+                    gravar(lote);
+                    lote.clear();
+                }
+            }
+            // Itens enviados enquanto o gravador era encerrado
+            while (fila.drainTo(lote, tamanhoMaximoLote) > 0) {
+                lote.remove(FIM);
+                gravar(lote);
+                lote.clear();
+            }
+        } finally {
+            fechado = true;
+            IllegalStateException erro = new IllegalStateException("Gravador encerrado antes de gravar o item.");
+            for (Pedido<T> pedido : lote) {
+                pedido.concluido.completeExceptionally(erro);
+            }
+            falharPendentes();
+        }
+    }
+
+    /**
+     * Conclui com erro os pedidos que ficaram na fila depois que a thread do gravador terminou.
+     */
+    private void falharPendentes() {
+        IllegalStateException erro = new IllegalStateException("Gravador encerrado antes de gravar o item.");
+        Pedido<T> pedido;
+        while ((pedido = fila.poll()) != null) {
+            if (pedido != FIM) {
+                pedido.concluido.completeExceptionally(erro);
+            }
+        }
+    }
+
+    /**
+     * @return {@code false} se o gravador foi encerrado.
+     */
+    private boolean juntarLote(List<Pedido<T>> lote) throws InterruptedException {
+        Pedido<T> primeiro = fila.take();
+        if (primeiro == FIM) {
+            return false;
+        }
+        lote.add(primeiro);
+        long limite = System.nanoTime() + prazoNanos;
+        while (lote.size() < tamanhoMaximoLote) {
+            Pedido<T> proximo = fila.poll();
+            if (proximo == null) {
+                long restante = limite - System.nanoTime();
+                if (restante <= 0) {
+                    break;
+                }
+                proximo = fila.poll(restante, TimeUnit.NANOSECONDS);
+                if (proximo == null) {
+                    break;
+                }
+            }
+            if (proximo == FIM) {
+                return false;
+            }
+            lote.add(proximo);
+        }
+        return true;
+    }
+
+    private void gravar(List<Pedido<T>> lote) {
+        List<T> conteudo = new ArrayList<>(lote.size());
+        for (Pedido<T> pedido : lote) {
+            conteudo.add(pedido.item);
+        }
+
+        long inicio = System.nanoTime();
+        Exception erro = null;
+        try {
+            destino.gravar(conteudo);
+        } catch (IOException | RuntimeException e) {
+            // Uma falha inesperada do destino não pode derrubar a thread do gravador
+            erro = e;
+        }
+        long fim = System.nanoTime();
+
+        lotes.increment();
+        itens.add(lote.size());
+        maiorLote.accumulateAndGet(lote.size(), Math::max);
+        somaCommitNanos.add(fim - inicio);
+        maiorCommitNanos.accumulateAndGet(fim - inicio, Math::max);
+        for (Pedido<T> pedido : lote) {
+            somaEsperaNanos.add(fim - pedido.enviadoEm);
+            if (erro == null) {
+                pedido.concluido.complete(null);
+            } else {
+                pedido.concluido.completeExceptionally(erro);
+            }
+        }
+        if (erro != null) {
+            falhas.add(lote.size());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Pedido<T> fim() {
+        return (Pedido<T>) FIM;
+    }
+
+    private static final class Pedido<T> {
+        private final T item;
+        private final long enviadoEm = System.nanoTime();
+        private final CompletableFuture<Void> concluido = new CompletableFuture<>();
+
+        private Pedido(T item) {
+            this.item = item;
+        }
+    }
+
+    /**
+     * Retrato das métricas acumuladas desde a criação do gravador.
+     */
+    public static final class Metricas {
+        private final long lotes;
+        private final long itens;
+        private final long maiorLote;
+        private final long somaCommitNanos;
+        private final long maiorCommitNanos;
+        private final long somaEsperaNanos;
+        private final long falhas;
+
+        Metricas(long lotes, long itens, long maiorLote, long somaCommitNanos, long maiorCommitNanos,
+                 long somaEsperaNanos, long falhas) {
+            this.lotes = lotes;
+            this.itens = itens;
+            this.maiorLote = maiorLote;
+            this.somaCommitNanos = somaCommitNanos;
+            this.maiorCommitNanos = maiorCommitNanos;
+            this.somaEsperaNanos = somaEsperaNanos;
+            this.falhas = falhas;
+        }
+
+        public long getLotes() {
+            return lotes;
+        }
+
+        public long getItens() {
+            return itens;
+        }
+
+        /** Itens cuja gravação falhou. */
+        public long getFalhas() {
+            return falhas;
+        }
+
+        public double getTamanhoMedioLote() {
+            return lotes == 0 ? 0 : (double) itens / lotes;
+        }
+
+        public long getMaiorLote() {
+            return maiorLote;
+        }
+
+        /** Tempo médio de gravação de um lote no destino, em microssegundos. */
+        public double getCommitMedioMicros() {
+            return lotes == 0 ? 0 : somaCommitNanos / 1e3 / lotes;
+        }
+
+        public double getMaiorCommitMicros() {
+            return maiorCommitNanos / 1e3;
+        }
+
+        /** Tempo médio entre o envio de um item e a conclusão do seu lote, em microssegundos. */
+        public double getLatenciaMediaMicros() {
+            return itens == 0 ? 0 : somaEsperaNanos / 1e3 / itens;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d itens em %d lotes (média %.1f, maior %d). Commit médio %.0f µs, maior %.0f µs. "
+                            + "Latência média %.0f µs. Falhas: %d",
+                    itens, lotes, getTamanhoMedioLote(), maiorLote, getCommitMedioMicros(), getMaiorCommitMicros(),
+                    getLatenciaMediaMicros(), falhas);
+        }
+    }
+}
@@ -0,0 +1,333 @@
+package br.com.lumepath.service;
+
+import br.com.lumepath.bean.Amostra;
+import br.com.lumepath.bean.AnalisePatologica;
+import br.com.lumepath.bean.Paciente;
+import br.com.lumepath.codec.CodecBinario;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Journal (write-ahead log) das etapas de cada sessão de análise.
+ *
+ * <p>Cada etapa concluída na estação (paciente cadastrado, amostra cadastrada, leituras
+ * confirmadas, análise criada, laudo emitido) é gravada antes de seguir para a próxima.
+ * Se a estação cair, {@link #getSessoesPendentes()} devolve as sessões sem laudo emitido
+ * com os dados já gravados, para que sejam retomadas.</p>
+ *
+ * <p>Formato de cada registro: tamanho (int), CRC32 (int), etapa (byte), sessão (long) e os
+ * dados da etapa no {@link CodecBinario}. Na abertura, o arquivo é lido até o primeiro
+ * registro incompleto ou corrompido, e o restante é descartado.</p>
+ *
+ * <p>Cada registro é limitado a {@value #TAMANHO_MAXIMO_REGISTRO} bytes: dados maiores são
+ * recusados com {@link IllegalArgumentException} antes de entrar na fila.</p>
+ *
+ * <p>As gravações são agrupadas pelo {@link GravadorEmLote}: todos os registros pendentes
+ * são gravados de uma vez, com um único {@code fsync} para o lote. Um lote que falha é
+ * desfeito, voltando o arquivo ao tamanho anterior; se nem isso for possível, o journal recusa
+ * as gravações seguintes, que a abertura seguinte descartaria.</p>
+ *
+ * @author Ricardo
+ * @version 1.0
+ */
+public class Journal implements Closeable {
+
+    /** Etapas de uma sessão, na ordem em que acontecem. */
+    public enum Etapa {
+        PACIENTE_REGISTRADO, AMOSTRA_REGISTRADA, LEITURAS_CONFIRMADAS, ANALISE_CRIADA, LAUDO_EMITIDO,
+        /** Sessão pendente que o usuário optou por não retomar. */
+        SESSAO_DESCARTADA
+    }
+
+    /** Tamanho, CRC, etapa e sessão. */
+    private static final int CABECALHO = 4 + 4 + 1 + 8;
+    private static final int TAMANHO_MAXIMO_REGISTRO = 1 << 20;
+    private static final int TAMANHO_LOTE = 512;
+    private static final int CAPACIDADE_FILA = 4096;
+
+    private final FileChannel canal;
+    private final Map<Long, SessaoRecuperada> pendentes;
+    private final AtomicLong proximaSessao;
+
+    private final GravadorEmLote<ByteBuffer> gravador;
+    /** Falha que impediu desfazer um lote; a partir dela nenhuma gravação é aceita. */
+    private volatile IOException falha;
+
+    private Journal(FileChannel canal, Map<Long, SessaoRecuperada> pendentes, long proximaSessao) {
+        this.canal = canal;
+        this.pendentes = pendentes;
+        this.proximaSessao = new AtomicLong(proximaSessao);
+        this.gravador = new GravadorEmLote<>("journal-gravador", this::gravarLote, TAMANHO_LOTE, 0, CAPACIDADE_FILA);
+    }
+
+    /**
+     * Abre (ou cria) o journal, recuperando as sessões que não chegaram ao laudo.
+     *
+     * @param arquivo caminho do journal.
+     * @return journal pronto para gravação.
+     * @throws IOException se o arquivo não puder ser lido ou gravado.
+     */
+    public static Journal abrir(Path arquivo) throws IOException {
+        FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        Map<Long, SessaoRecuperada> sessoes = new LinkedHashMap<>();
+        long maiorSessao = 0;
+        long posicao = 0;
+
+        ByteBuffer cabecalho = ByteBuffer.allocate(CABECALHO);
+        while (true) {
+            cabecalho.clear();
+            if (lerTudo(canal, cabecalho, posicao) < CABECALHO) {
+                break;
+            }
+            cabecalho.flip();
+            int tamanho = cabecalho.getInt();
+            int crc = cabecalho.getInt();
+            int etapa = cabecalho.get();
+            long sessao = cabecalho.getLong();
+            if (tamanho < 0 || tamanho > TAMANHO_MAXIMO_REGISTRO || etapa < 0 || etapa >= Etapa.values().length) {
+                break;
+            }
+            ByteBuffer dados = ByteBuffer.allocate(tamanho);
+            if (lerTudo(canal, dados, posicao + CABECALHO) < tamanho) {
+                break;
+            }
+            dados.flip();
+            if (crc(etapa, sessao, dados) != crc) {
+                break;
+            }
+
+            aplicar(sessoes, Etapa.values()[etapa], sessao, dados);
+            maiorSessao = Math.max(maiorSessao, sessao);
+            posicao += CABECALHO + tamanho;
+        }
+
+        // Sem sessões pendentes, o histórico não é mais necessário
+        canal.truncate(sessoes.isEmpty() ? 0 : posicao);
+        canal.position(canal.size());
+        canal.force(true);
+        return new Journal(canal, sessoes, maiorSessao + 1);
+    }
+
+    /**
+     * Sessões sem laudo emitido encontradas na abertura, na ordem em que começaram.
+     */
+    public Collection<SessaoRecuperada> getSessoesPendentes() {
+        return new ArrayList<>(pendentes.values());
+    }
+
+    /**
+     * Reserva o identificador de uma nova sessão.
+     */
+    public long novaSessao() {
+        return proximaSessao.getAndIncrement();
+    }
+
+    public CompletableFuture<Void> pacienteRegistrado(long sessao, Paciente paciente) {
+        ByteBuffer dados = novoBuffer(Etapa.PACIENTE_REGISTRADO, CodecBinario.tamanhoMaximo(paciente));
+        new CodecBinario().escreverPaciente(dados, paciente);
+        return registrar(Etapa.PACIENTE_REGISTRADO, sessao, dados);
+    }
+
+    public CompletableFuture<Void> amostraRegistrada(long sessao, Amostra amostra) {
+        ByteBuffer dados = novoBuffer(Etapa.AMOSTRA_REGISTRADA, CodecBinario.tamanhoMaximo(amostra));
+        new CodecBinario().escreverAmostra(dados, amostra);
+        return registrar(Etapa.AMOSTRA_REGISTRADA, sessao, dados);
+    }
+
+    /**
+     * Grava a amostra já com as medidas confirmadas pelos sensores.
+     */
+    public CompletableFuture<Void> leiturasConfirmadas(long sessao, Amostra amostra) {
+        ByteBuffer dados = novoBuffer(Etapa.LEITURAS_CONFIRMADAS, CodecBinario.tamanhoMaximo(amostra));
+        new CodecBinario().escreverAmostra(dados, amostra);
+        return registrar(Etapa.LEITURAS_CONFIRMADAS, sessao, dados);
+    }
+
+    public CompletableFuture<Void> analiseCriada(long sessao, AnalisePatologica analise) {
+        ByteBuffer dados = novoBuffer(Etapa.ANALISE_CRIADA, CodecBinario.tamanhoMaximo(analise));
+        new CodecBinario().escreverAnalise(dados, analise);
+        return registrar(Etapa.ANALISE_CRIADA, sessao, dados);
+    }
+
+    public CompletableFuture<Void> laudoEmitido(long sessao) {
+        return registrar(Etapa.LAUDO_EMITIDO, sessao, ByteBuffer.allocate(0));
+    }
+
+    public CompletableFuture<Void> descartar(long sessao) {
+        return registrar(Etapa.SESSAO_DESCARTADA, sessao, ByteBuffer.allocate(0));
+    }
+
+    /**
+     * Enfileira o registro para gravação.
+     *
+     * @return futuro concluído quando o registro estiver gravado em disco.
+     */
+    CompletableFuture<Void> registrar(Etapa etapa, long sessao, ByteBuffer dados) {
+        if (falha != null) {
+            return CompletableFuture.failedFuture(new IOException("Journal desativado após falha de gravação.", falha));
+        }
+        dados.flip();
+        ByteBuffer registro = ByteBuffer.allocate(CABECALHO + dados.remaining());
+        registro.putInt(dados.remaining());
+        registro.putInt(crc(etapa.ordinal(), sessao, dados.duplicate()));
+        registro.put((byte) etapa.ordinal());
+        registro.putLong(sessao);
+        registro.put(dados);
+        registro.flip();
+
+        return gravador.enviar(registro);
+    }
+
+    public GravadorEmLote.Metricas getMetricas() {
+        return gravador.getMetricas();
+    }
+
+    /**
+     * Grava os registros pendentes e encerra o journal.
+     */
+    @Override
+    public void close() throws IOException {
+        gravador.close();
+        canal.close();
+    }
+
+    private void gravarLote(List<ByteBuffer> registros) throws IOException {
+        if (falha != null) {
+            throw new IOException("Journal desativado após falha de gravação.", falha);
+        }
+        long inicio = canal.position();
+        try {
+            for (ByteBuffer registro : registros) {
+                while (registro.hasRemaining()) {
+                    canal.write(registro);
+                }
+            }
+            canal.force(false);
+        } catch (IOException e) {
+            desfazer(inicio, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Descarta o que o lote que falhou chegou a gravar. Se não conseguir, desativa o journal.
+     */
+    private void desfazer(long inicio, IOException erro) {
+        try {
+            canal.truncate(inicio);
+            canal.position(inicio);
+            canal.force(true);
+        } catch (IOException e) {
+            erro.addSuppressed(e);
+            falha = erro;
+        }
+    }
+
+    private static void aplicar(Map<Long, SessaoRecuperada> sessoes, Etapa etapa, long sessao, ByteBuffer dados) {
+        if (etapa == Etapa.LAUDO_EMITIDO || etapa == Etapa.SESSAO_DESCARTADA) {
+            sessoes.remove(sessao);
+            return;
+        }
+        SessaoRecuperada recuperada = sessoes.computeIfAbsent(sessao, SessaoRecuperada::new);
+        CodecBinario codec = new CodecBinario();
+        switch (etapa) {
+            case PACIENTE_REGISTRADO:
+                recuperada.paciente = codec.lerPaciente(dados);
+                break;
+            case AMOSTRA_REGISTRADA:
+            case LEITURAS_CONFIRMADAS:
+                recuperada.amostra = codec.lerAmostra(dados);
+                break;
+            case ANALISE_CRIADA:
+                recuperada.analise = codec.lerAnalise(dados);
+                break;
+            default:
+                break;
+        }
+        recuperada.ultimaEtapa = etapa;
+    }
+
+    private static int lerTudo(FileChannel canal, ByteBuffer destino, long posicao) throws IOException {
+        int total = 0;
+        while (destino.hasRemaining()) {
+            int lidos = canal.read(destino, posicao + total);
+            if (lidos < 0) {
+                break;
+            }
+            total += lidos;
+        }
+        return total;
+    }
+
+    private static int crc(int etapa, long sessao, ByteBuffer dados) {
+        CRC32 crc = new CRC32();
+        crc.update(etapa);
+        crc.update(ByteBuffer.allocate(8).putLong(0, sessao));
+        crc.update(dados.duplicate());
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Buffer do tamanho máximo que os dados da etapa podem ocupar.
+     *
+     * @throws IllegalArgumentException se os dados não couberem em um registro do journal.
+     */
+    private static ByteBuffer novoBuffer(Etapa etapa, long tamanhoMaximo) {
+        if (tamanhoMaximo > TAMANHO_MAXIMO_REGISTRO) {
+            throw new IllegalArgumentException(String.format("Os dados de %s ocupariam até %d bytes no journal, "
+                    + "acima do máximo de %d bytes por registro. Reduza os textos longos (descrição, diagnóstico, nomes).",
+                    etapa, tamanhoMaximo, TAMANHO_MAXIMO_REGISTRO));
+        }
+        return ByteBuffer.allocate((int) tamanhoMaximo);
+    }
+
+    /**
+     * Dados de uma sessão interrompida antes do laudo.
+     */
+    public static final class SessaoRecuperada {
+        private final long sessao;
+        private Etapa ultimaEtapa;
+        private Paciente paciente;
+        private Amostra amostra;
+        private AnalisePatologica analise;
+
+        private SessaoRecuperada(long sessao) {
+            this.sessao = sessao;
+        }
+
+        public long getSessao() {
+            return sessao;
+        }
+
+        /** Última etapa gravada; a sessão deve continuar a partir da seguinte. */
+        public Etapa getUltimaEtapa() {
+            return ultimaEtapa;
+        }
+
+        public Paciente getPaciente() {
+            return paciente;
+        }
+
+        public Amostra getAmostra() {
+            return amostra;
+        }
+
+        public AnalisePatologica getAnalise() {
+            return analise;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package br.com.lumepath.service;
+
+import br.com.lumepath.repository.Laboratorio;
+import br.com.lumepath.utils.FeedAlteracoes;
+import br.com.lumepath.utils.LaudoCache;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Partições de uma instalação que atende vários laboratórios.
+ *
+ * <p>Cada laboratório, identificado por um código, recebe sua {@link Particao}: um
+ * {@link Laboratorio} próprio (IDs, índices, agregados e lock independentes), um
+ * {@link LaudoCache} com peso máximo próprio e, se houver diretório de armazenamento, seu
+ * próprio arquivo do {@link Armazenamento} ({@code <codigo>.dat}). Uma importação em massa ou
+ * um lote de relatórios de um laboratório não descarta os laudos em cache dos outros nem
+ * disputa os mesmos locks.</p>
+ *
+ * <p>As partições são criadas no primeiro uso do código. O peso do cache de um laboratório
+ * pode ser definido antes disso com {@link #definirPesoLaudos(String, long)}.</p>
+ *
+ * @author Ricardo
+ * @version 1.0
+ */
+public class Laboratorios implements Closeable {
+
+    /**
+     * Códigos aceitos; o código também dá nome ao arquivo de armazenamento. Maiúsculas e
+     * minúsculas não distinguem laboratórios: o código é guardado em minúsculas, para que
+     * {@code LAB1} e {@code lab1} não virem duas partições gravando em arquivos que, em sistemas
+     * de arquivos sem distinção de caixa, são o mesmo.
+     */
+    private static final Pattern CODIGO = Pattern.compile("[A-Za-z0-9_-]{1,32}");
+
+    private final Path diretorio;
+    private final long pesoLaudosPadrao;
+    private final Map<String, Long> pesosLaudos = new ConcurrentHashMap<>();
+    private final Map<String, Particao> particoes = new ConcurrentHashMap<>();
+    private final String codigoPadrao;
+    private volatile FeedAlteracoes feed;
+
+    /**
+     * @param diretorio onde fica o arquivo de armazenamento de cada laboratório; {@code null}
+     *                  para não gravar.
+     * @param pesoLaudosPadrao peso máximo do cache de laudos de cada laboratório.
+     * @param codigoPadrao laboratório das solicitações que não informam um.
+     */
+    public Laboratorios(Path diretorio, long pesoLaudosPadrao, String codigoPadrao) throws IOException {
+        if (pesoLaudosPadrao <= 0) {
+            throw new IllegalArgumentException("Peso máximo dos laudos deve ser maior que zero.");
+        }
+        this.diretorio = diretorio == null ? null : Files.createDirectories(diretorio);
+        this.pesoLaudosPadrao = pesoLaudosPadrao;
+        this.codigoPadrao = validar(codigoPadrao);
+    }
+
+    /**
+     * Partições com um único laboratório já existente, para quem não usa vários laboratórios.
+     */
+    private Laboratorios(Laboratorio laboratorio, Armazenamento armazenamento) {
+        this.diretorio = null;
+        this.pesoLaudosPadrao = laboratorio.getLaudos().getPesoMaximo();
+        this.codigoPadrao = laboratorio.getCodigo();
+        particoes.put(codigoPadrao, new Particao(laboratorio, armazenamento));
+    }
+
+    /**
+     * @param armazenamento destino das gravações do laboratório; {@code null} para não gravar.
+     */
+    public static Laboratorios unico(Laboratorio laboratorio, Armazenamento armazenamento) {
+        return new Laboratorios(laboratorio, armazenamento);
+    }
+
+    /**
+     * Define o peso máximo do cache de laudos de um laboratório ainda não usado.
+     */
+    public void definirPesoLaudos(String codigo, long pesoMaximo) {
+        if (pesoMaximo <= 0) {
+            throw new IllegalArgumentException("Peso máximo dos laudos deve ser maior que zero.");
+        }
+        String chave = validar(codigo);
+        if (particoes.containsKey(chave)) {
+            throw new IllegalStateException("Laboratório " + chave + " já está em uso.");
+        }
+        pesosLaudos.put(chave, pesoMaximo);
+    }
+
+    /**
+     * Partição do laboratório, criada no primeiro uso.
+     *
+     * @param codigo código do laboratório, sem distinção de caixa; {@code null} para o
+     *               laboratório padrão.
+     * @throws IllegalArgumentException se o código tiver caracteres fora de {@code [A-Za-z0-9_-]}.
+     * @throws UncheckedIOException se o arquivo de armazenamento não puder ser aberto.
+     */
+    public Particao obter(String codigo) {
+        String chave = codigo == null ? codigoPadrao : codigo;
+        Particao particao = particoes.get(chave);
+        if (particao != null) {
+            return particao;
+        }
+        chave = validar(chave);
+        return particoes.computeIfAbsent(chave, this::criar);
+    }
+
+    /**
+     * Publica no feed as alterações de todos os laboratórios, inclusive dos criados depois.
+     */
+    public void publicarEm(FeedAlteracoes feed) {
+        this.feed = feed;
+        for (Particao particao : particoes.values()) {
+            particao.laboratorio.publicarEm(feed);
+        }
+    }
+
+    public Laboratorio getLaboratorio(String codigo) {
+        return obter(codigo).getLaboratorio();
+    }
+
+    public String getCodigoPadrao() {
+        return codigoPadrao;
+    }
+
+    public List<Particao> getParticoes() {
+        return new ArrayList<>(particoes.values());
+    }
+
+    /**
+     * Fecha o armazenamento de todas as partições, esperando as gravações pendentes.
+     */
+    @Override
+    public void close() throws IOException {
+        IOException primeira = null;
+        for (Particao particao : particoes.values()) {
+            if (particao.armazenamento == null) {
+                continue;
+            }
+            try {
+                particao.armazenamento.close();
+            } catch (IOException e) {
+                if (primeira == null) {
+                    primeira = e;
+                }
+            }
+        }
+        if (primeira != null) {
+            throw primeira;
+        }
+    }
+
+    private Particao criar(String codigo) {
+        Laboratorio laboratorio = new Laboratorio(codigo,
+                new LaudoCache(pesosLaudos.getOrDefault(codigo, pesoLaudosPadrao)));
+        laboratorio.publicarEm(feed);
+        try {
+            Armazenamento armazenamento = diretorio == null ? null : new Armazenamento(diretorio.resolve(codigo + ".dat"));
+            return new Particao(laboratorio, armazenamento);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Não foi possível abrir o armazenamento do laboratório " + codigo, e);
+        }
+    }
+
+    /**
+     * @return o código em minúsculas, usado como chave das partições e nome do arquivo.
+     */
+    private static String validar(String codigo) {
+        if (codigo == null || !CODIGO.matcher(codigo).matches()) {
+            throw new IllegalArgumentException("Código de laboratório inválido: " + codigo);
+        }
+        return codigo.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Laboratório e armazenamento de um código.
+     */
+    public static final class Particao {
+        private final Laboratorio laboratorio;
+        private final Armazenamento armazenamento;
+
+        private Particao(Laboratorio laboratorio, Armazenamento armazenamento) {
+            this.laboratorio = laboratorio;
+            this.armazenamento = armazenamento;
+        }
+
+        public String getCodigo() {
+            return laboratorio.getCodigo();
+        }
+
+        public Laboratorio getLaboratorio() {
+            return laboratorio;
+        }
+
+        /** Armazenamento do laboratório; {@code null} se as gravações estiverem desligadas. */
+        public Armazenamento getArmazenamento() {
+            return armazenamento;
+        }
+
+        @Override
+        public String toString() {
+            LaudoCache laudos = laboratorio.getLaudos();
+            return String.format("%s: %d laudos em cache (%d/%d caracteres), %d acertos, %d falhas",
+                    getCodigo(), laudos.getTamanho(), laudos.getPesoAtual(), laudos.getPesoMaximo(),
+                    laudos.getAcertos(), laudos.getFalhas());
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package br.com.lumepath.service;
+
+import br.com.lumepath.bean.AnalisePatologica;
+import br.com.lumepath.bean.PatologistaResponsavel;
+import br.com.lumepath.utils.EscritorPdf;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Emissão em lote de laudos, usada no fechamento do dia.
+ *
+ * <p>Os laudos são renderizados em paralelo e gravados, na ordem de entrada, em um único
+ * arquivo: um zip com um arquivo de texto por análise, um PDF ou um texto concatenado.
+ * No máximo {@code janela} laudos ficam em memória ao mesmo tempo, independente do
+ * tamanho do lote.</p>
+ *
+ * <p>O lote usa {@link AnalisePatologica#renderizarLaudo()} em vez de
+ * {@link AnalisePatologica#emitirLaudo()} para não expulsar do cache os laudos consultados
+ * pelo portal.</p>
+ *
+ * @author Ricardo
+ * @version 1.0
+ */
+public class LoteLaudos {
+
+    private final int paralelismo;
+    private final int janela;
+
+    /**
+     * Cria um lote usando todos os núcleos disponíveis.
+     */
+    public LoteLaudos() {
+        this(Runtime.getRuntime().availableProcessors(), Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    /**
+     * @param paralelismo quantidade de threads de renderização.
+     * @param janela quantidade máxima de laudos renderizados aguardando gravação.
+     */
+    public LoteLaudos(int paralelismo, int janela) {
+        if (paralelismo <= 0 || janela <= 0) {
+            throw new IllegalArgumentException("Paralelismo e janela devem ser maiores que zero.");
+        }
+        this.paralelismo = paralelismo;
+        this.janela = janela;
+    }
+
+    /**
+     * Filtra as análises assinadas pelo patologista informado.
+     *
+     * @param analises análises candidatas.
+     * @param patologista patologista responsável.
+     * @return análises do patologista, na ordem original.
+     */
+    public static List<AnalisePatologica> doPatologista(Collection<AnalisePatologica> analises,
+                                                        PatologistaResponsavel patologista) {
+        List<AnalisePatologica> selecionadas = new ArrayList<>();
+        for (AnalisePatologica analise : analises) {
+            if (analise.getPatologistaResponsavel() == patologista) {
+                selecionadas.add(analise);
+            }
+        }
+        return selecionadas;
+    }
+
+    /**
+     * Renderiza os laudos e grava todos em um arquivo zip, um arquivo {@code laudo-<id>.txt}
+     * por análise. Os IDs só são únicos dentro de um laboratório, então um lote com análises de
+     * laboratórios diferentes pode repetir um ID; as repetições recebem um sufixo
+     * ({@code laudo-<id>-2.txt}, ...) na ordem de entrada, em vez de interromper o arquivo.
+     *
+     * @param analises análises a serem emitidas.
+     * @param destino caminho do arquivo zip.
+     * @return resumo da execução, com vazão e itens que falharam.
+     * @throws IOException se não for possível gravar o arquivo.
+     */
+    public Resultado exportarZip(Collection<AnalisePatologica> analises, Path destino) throws IOException {
+        try (ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(destino)))) {
+            // Ocorrências de cada ID já gravadas; usado só pela thread que grava
+            Map<Integer, Integer> ocorrencias = new HashMap<>();
+            return executar(analises, (analise, laudo) -> {
+                int ocorrencia = ocorrencias.merge(analise.getId(), 1, Integer::sum);
+                String sufixo = ocorrencia == 1 ? "" : "-" + ocorrencia;
+                zip.putNextEntry(new ZipEntry("laudo-" + analise.getId() + sufixo + ".txt"));
+                zip.write(laudo.getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+            });
+        }
+    }
+
+    /**
+     * Renderiza os laudos e grava todos em um único PDF, uma página (ou mais) por laudo.
+     *
+     * @param analises análises a serem emitidas.
+     * @param destino caminho do arquivo PDF.
+     * @return resumo da execução, com vazão e itens que falharam.
+     * @throws IOException se não for possível gravar o arquivo.
+     */
+    public Resultado exportarPdf(Collection<AnalisePatologica> analises, Path destino) throws IOException {
+        try (EscritorPdf pdf = new EscritorPdf(new BufferedOutputStream(Files.newOutputStream(destino)))) {
+            return executar(analises, (analise, laudo) -> pdf.escreverLaudo(laudo));
+        }
+    }
+
+    /**
+     * Renderiza os laudos e grava todos concatenados em um único fluxo de texto.
+     *
+     * @param analises análises a serem emitidas.
+     * @param saida fluxo que receberá os laudos; não é fechado por este metodo.
+     * @return resumo da execução, com vazão e itens que falharam.
+     * @throws IOException se não for possível gravar no fluxo.
+     */
+    public Resultado exportarTexto(Collection<AnalisePatologica> analises, OutputStream saida) throws IOException {
+        return executar(analises, (analise, laudo) -> {
+            saida.write(laudo.getBytes(StandardCharsets.UTF_8));
+            saida.write('\n');
+        });
+    }
+
+    /**
+     * Núcleo do lote: mantém até {@code janela} renderizações em andamento e entrega
+     * os laudos prontos ao destino na ordem em que as análises foram recebidas.
+     */
+    Resultado executar(Collection<AnalisePatologica> analises, Destino destino) throws IOException {
+        long inicio = System.nanoTime();
+        List<Integer> falhas = new ArrayList<>();
+        int gravados = 0;
+
+        ExecutorService executor = Executors.newFixedThreadPool(paralelismo);
+        ArrayDeque<Pendente> pendentes = new ArrayDeque<>(janela);
+        try {
+            for (AnalisePatologica analise : analises) {
+                if (pendentes.size() == janela) {
+                    gravados += concluir(pendentes.poll(), destino, falhas);
+                }
+                pendentes.add(new Pendente(analise, executor.submit(() -> renderizar(analise))));
+            }
+            while (!pendentes.isEmpty()) {
+                gravados += concluir(pendentes.poll(), destino, falhas);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        return new Resultado(analises.size(), gravados, falhas, System.nanoTime() - inicio);
+    }
+
+    private static String renderizar(AnalisePatologica analise) {
+        if (analise.getAmostra() == null || analise.getPatologistaResponsavel() == null) {
+            throw new IllegalStateException("Amostra ou Patologista não associados.");
+        }
+        return analise.renderizarLaudo();
+    }
+
+    private static int concluir(Pendente pendente, Destino destino, List<Integer> falhas) throws IOException {
+        String laudo;
+        try {
+            laudo = pendente.futuro.get();
+        } catch (ExecutionException e) {
+            falhas.add(pendente.analise.getId());
+            return 0;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Lote interrompido.", e);
+        }
+        destino.gravar(pendente.analise, laudo);
+        return 1;
+    }
+
+    /** Recebe cada laudo pronto, sempre a partir da mesma thread. */
+    interface Destino {
+        void gravar(AnalisePatologica analise, String laudo) throws IOException;
+    }
+
+    private static final class Pendente {
+        private final AnalisePatologica analise;
+        private final Future<String> futuro;
+
+        private Pendente(AnalisePatologica analise, Future<String> futuro) {
+            this.analise = analise;
+            this.futuro = futuro;
+        }
+    }
+
+    /**
+     * Resumo da execução de um lote.
+     */
+    public static final class Resultado {
+        private final int total;
+        private final int gravados;
+        private final List<Integer> falhas;
+        private final long duracaoNanos;
+
+        Resultado(int total, int gravados, List<Integer> falhas, long duracaoNanos) {
+            this.total = total;
+            this.gravados = gravados;
+            this.falhas = Collections.unmodifiableList(falhas);
+            this.duracaoNanos = duracaoNanos;
+        }
+
+        public int getTotal() {
+            return total;
+        }
+
+        public int getGravados() {
+            return gravados;
+        }
+
+        /** IDs das análises que não puderam ser emitidas. */
+        public List<Integer> getFalhas() {
+            return falhas;
+        }
+
+        public long getDuracaoMillis() {
+            return duracaoNanos / 1_000_000;
+        }
+
+        /** Laudos gravados por segundo. */
+        public double getVazao() {
+            return duracaoNanos == 0 ? 0 : gravados / (duracaoNanos / 1e9);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d de %d laudos gravados em %d ms (%.1f laudos/s). Falhas: %s",
+                    gravados, total, getDuracaoMillis(), getVazao(), falhas);
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package br.com.lumepath.service;
+
+import br.com.lumepath.bean.ISensor;
+
+/**
+ * Acompanha a saúde de um sensor a cada leitura, comparando-a com uma referência.
+ *
+ * <p>A referência é a leitura de outro sensor da mesma amostra (a câmera, para o laser) ou a
+ * medida conhecida de um bloco padrão. O monitor trabalha sobre o resíduo
+ * {@code leitura - referência}:</p>
+ * <ul>
+ *     <li>as primeiras leituras (aquecimento) estabelecem a média e o desvio normais do resíduo;</li>
+ *     <li>um CUSUM bilateral sobre o resíduo padronizado detecta deriva persistente, mesmo pequena;</li>
+ *     <li>uma média móvel exponencial (EWMA) do resíduo informa o tamanho atual da deriva;</li>
+ *     <li>leituras ausentes, não positivas ou inválidas seguidas indicam falha de leitura;</li>
+ *     <li>a mesma leitura repetida várias vezes seguidas indica sensor travado.</li>
+ * </ul>
+ *
+ * <p>Ao detectar deriva ou travamento, chama {@link ISensor#calibrar()} e recomeça o
+ * aquecimento. Todo o estado é um punhado de números por sensor, então o custo por leitura é
+ * constante e não há histórico guardado.</p>
+ *
+ * @author Ricardo
+ * @version 1.0
+ */
+public class MonitorSensor {
+
+    /** Situação do sensor após uma leitura. */
+    public enum Estado {
+        /** Ainda estabelecendo o comportamento normal do resíduo. */
+        AQUECENDO,
+        NORMAL,
+        /** Resíduo deslocado de forma persistente; o sensor foi recalibrado. */
+        DERIVA,
+        /** Leitura repetida além do limite; o sensor foi recalibrado. */
+        TRAVADO,
+        /** Leituras inválidas seguidas além do limite. */
+        FALHA_LEITURA
+    }
+
+    public static final double ALFA_PADRAO = 0.1;
+    public static final double FOLGA_PADRAO = 0.5;
+    public static final double LIMIAR_PADRAO = 5;
+    public static final int AQUECIMENTO_PADRAO = 50;
+    public static final int REPETICOES_PADRAO = 5;
+    public static final int FALHAS_PADRAO = 3;
+
+    /** Desvio mínimo do resíduo, em mm, para não dividir por zero com sensores sem ruído. */
+    private static final double DESVIO_MINIMO = 0.01;
+
+    private final ISensor sensor;
+    private final double alfa;
+    private final double folga;
+    private final double limiar;
+    private final int aquecimento;
+    private final int repeticoesTravado;
+    private final int falhasSeguidas;
+
+    // Aquecimento (Welford)
+    private int amostrasAquecimento;
+    private double mediaAquecimento;
+    private double m2Aquecimento;
+
+    // Referência estabelecida no aquecimento
+    private double mediaResiduo;
+    private double desvioResiduo;
+
+    private double ewma;
+    private double cusumPositivo;
+    private double cusumNegativo;
+
+    private double ultimaLeitura = Double.NaN;
+    private int repeticoes;
+    private int falhas;
+    private Estado estado = Estado.AQUECENDO;
+
+    private long leituras;
+    private long derivas;
+    private long travamentos;
+    private long falhasDeLeitura;
+    private long recalibracoes;
+
+    public MonitorSensor(ISensor sensor) {
+        this(sensor, ALFA_PADRAO, FOLGA_PADRAO, LIMIAR_PADRAO, AQUECIMENTO_PADRAO, REPETICOES_PADRAO, FALHAS_PADRAO);
+    }
+
+    /**
+     * @param sensor sensor monitorado, recalibrado ao detectar deriva ou travamento.
+     * @param alfa peso da leitura mais recente na EWMA, entre 0 e 1.
+     * @param folga folga do CUSUM, em desvios; desvios menores que ela não acumulam.
+     * @param limiar valor do CUSUM, em desvios, a partir do qual há deriva.
+     * @param aquecimento leituras usadas para estabelecer o resíduo normal.
+     * @param repeticoesTravado leituras iguais seguidas que indicam sensor travado.
+     * @param falhasSeguidas leituras inválidas seguidas que indicam falha de leitura.
+     */
+    public MonitorSensor(ISensor sensor, double alfa, double folga, double limiar, int aquecimento,
+                         int repeticoesTravado, int falhasSeguidas) {
+        if (alfa <= 0 || alfa > 1) {
+            throw new IllegalArgumentException("Alfa deve estar entre 0 e 1.");
+        }
+        if (aquecimento < 2 || repeticoesTravado < 2 || falhasSeguidas < 1 || limiar <= 0 || folga < 0) {
+            throw new IllegalArgumentException("Parâmetros do monitor fora dos limites.");
+        }
+        this.sensor = sensor;
+        this.alfa = alfa;
+        this.folga = folga;
+        this.limiar = limiar;
+        this.aquecimento = aquecimento;
+        this.repeticoesTravado = repeticoesTravado;
+        this.falhasSeguidas = falhasSeguidas;
+    }
+
+    /**
+     * Registra uma leitura do sensor e a referência correspondente.
+     *
+     * @param leitura valor medido pelo sensor monitorado.
+     * @param referencia valor esperado, de outro sensor ou de um bloco padrão.
+     * @return situação do sensor após a leitura.
+     */
+    public synchronized Estado observar(double leitura, double referencia) {
+        leituras++;
+        if (!(leitura > 0) || Double.isInfinite(leitura) || !(referencia > 0) || Double.isInfinite(referencia)) {
+            falhas++;
+            if (falhas >= falhasSeguidas) {
+                falhasDeLeitura++;
+                estado = Estado.FALHA_LEITURA;
+            }
+            return estado;
+        }
+        falhas = 0;
+        if (estado == Estado.FALHA_LEITURA) {
+            estado = amostrasAquecimento < aquecimento ? Estado.AQUECENDO : Estado.NORMAL;
+        }
+
+        repeticoes = leitura == ultimaLeitura ? repeticoes + 1 : 1;
+        ultimaLeitura = leitura;
+        if (repeticoes >= repeticoesTravado) {
+            travamentos++;
+            recalibrar();
+            return estado = Estado.TRAVADO;
+        }
+
+        double residuo = leitura - referencia;
+        if (amostrasAquecimento < aquecimento) {
+            aquecer(residuo);
+            return estado = Estado.AQUECENDO;
+        }
+
+        ewma += alfa * (residuo - ewma);
+        double z = (residuo - mediaResiduo) / desvioResiduo;
+        cusumPositivo = Math.max(0, cusumPositivo + z - folga);
+        cusumNegativo = Math.max(0, cusumNegativo - z - folga);
+        if (cusumPositivo > limiar || cusumNegativo > limiar) {
+            derivas++;
+            recalibrar();
+            return estado = Estado.DERIVA;
+        }
+        return estado = Estado.NORMAL;
+    }
+
+    /**
+     * Recomeça o aquecimento, como após uma recalibração feita fora do monitor.
+     */
+    public synchronized void reiniciar() {
+        amostrasAquecimento = 0;
+        mediaAquecimento = 0;
+        m2Aquecimento = 0;
+        ewma = 0;
+        cusumPositivo = 0;
+        cusumNegativo = 0;
+        repeticoes = 0;
+        ultimaLeitura = Double.NaN;
+        estado = Estado.AQUECENDO;
+    }
+
+    public ISensor getSensor() {
+        return sensor;
+    }
+
+    public synchronized Estado getEstado() {
+        return estado;
+    }
+
+    /** Média recente do resíduo, em mm; zero durante o aquecimento. */
+    public synchronized double getDerivaAtual() {
+        return amostrasAquecimento < aquecimento ? 0 : ewma - mediaResiduo;
+    }
+
+    public synchronized double getCusumPositivo() {
+        return cusumPositivo;
+    }
+
+    public synchronized double getCusumNegativo() {
+        return cusumNegativo;
+    }
+
+    public synchronized long getLeituras() {
+        return leituras;
+    }
+
+    public synchronized long getDerivas() {
+        return derivas;
+    }
+
+    public synchronized long getTravamentos() {
+        return travamentos;
+    }
+
+    public synchronized long getFalhasDeLeitura() {
+        return falhasDeLeitura;
+    }
+
+    public synchronized long getRecalibracoes() {
+        return recalibracoes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%s após %d leituras: %d derivas, %d travamentos, %d falhas, %d recalibrações. Deriva atual %.3f mm",
+                estado, leituras, derivas, travamentos, falhasDeLeitura, recalibracoes, getDerivaAtual());
+    }
+
+    private void aquecer(double residuo) {
+        amostrasAquecimento++;
+        double delta = residuo - mediaAquecimento;
+        mediaAquecimento += delta / amostrasAquecimento;
+        m2Aquecimento += delta * (residuo - mediaAquecimento);
+        if (amostrasAquecimento == aquecimento) {
+            mediaResiduo = mediaAquecimento;
+            desvioResiduo = Math.max(DESVIO_MINIMO, Math.sqrt(m2Aquecimento / (aquecimento - 1)));
+            ewma = mediaResiduo;
+            cusumPositivo = 0;
+            cusumNegativo = 0;
+        }
+    }
+
+    private void recalibrar() {
+        sensor.calibrar();
+        recalibracoes++;
+        reiniciar();
+    }
+}
@@ -0,0 +1,439 @@
+package br.com.lumepath.service;
+
+import br.com.lumepath.bean.Amostra;
+import br.com.lumepath.bean.AnalisePatologica;
+import br.com.lumepath.bean.ISensor;
+import br.com.lumepath.bean.Leitor;
+import br.com.lumepath.bean.Paciente;
+import br.com.lumepath.bean.PatologistaResponsavel;
+import br.com.lumepath.repository.Laboratorio;
+import br.com.lumepath.utils.Auditoria;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fluxo da leitura dos sensores até o laudo gravado, dividido em etapas assíncronas.
+ *
+ * <p>Cada {@link Etapa} tem sua fila limitada e suas próprias threads. Uma solicitação passa
+ * de uma fila para a seguinte: aquisição das leituras, verificação da precisão, montagem da
+ * análise, renderização do laudo e persistência. Quando a fila de uma etapa enche, a etapa
+ * anterior espera, e a espera se propaga até {@link #enviar(Solicitacao)}; assim um
+ * renderizador lento segura a entrada de novas solicitações em vez de acumular memória, sem
+ * travar leituras já em andamento.</p>
+ *
+ * <p>Uma falha em qualquer etapa conclui a solicitação com erro e ela sai do fluxo.</p>
+ *
+ * <p>Cada solicitação é registrada, tem o laudo emitido e é gravada na partição do seu
+ * laboratório em {@link Laboratorios}; as etapas são compartilhadas.</p>
+ *
+ * <p>As leituras, a análise nova e o laudo de uma solicitação só são publicados no feed do
+ * laboratório depois que a etapa de persistência confirma a gravação; uma solicitação concluída
+ * com erro não publica nada.</p>
+ *
+ * <p>As alterações feitas nas etapas são atribuídas, na {@link Auditoria}, ao autor da thread
+ * que criou a solicitação e ao laboratório da solicitação.</p>
+ *
+ * @author Ricardo
+ * @version 1.0
+ */
+public class PipelineAnalises {
+
+    /** Etapas do fluxo, na ordem em que são executadas. */
+    public enum Etapa {
+        AQUISICAO, PRECISAO, MONTAGEM, RENDERIZACAO, PERSISTENCIA
+    }
+
+    private final Laboratorios laboratorios;
+    private final int capacidadeFila;
+    private final double limitePrecisao;
+
+    private final Map<Etapa, Integer> threads = new EnumMap<>(Etapa.class);
+    private final Map<Etapa, Estagio> estagios = new EnumMap<>(Etapa.class);
+    private final Map<ISensor, MonitorSensor> monitores = new ConcurrentHashMap<>();
+    private final AtomicInteger emAndamento = new AtomicInteger();
+    private volatile boolean aceitando;
+
+    /**
+     * @param laboratorio onde pacientes, amostras, leituras e análises são registrados.
+     * @param armazenamento destino das leituras e análises; {@code null} para não gravar.
+     * @param capacidadeFila solicitações que cada etapa pode ter aguardando.
+     * @param limitePrecisao maior diferença aceita entre laser e câmera; acima dela a
+     *                       solicitação é recusada na etapa de precisão.
+     */
+    public PipelineAnalises(Laboratorio laboratorio, Armazenamento armazenamento, int capacidadeFila,
+                            double limitePrecisao) {
+        this(Laboratorios.unico(laboratorio, armazenamento), capacidadeFila, limitePrecisao);
+    }
+
+    /**
+     * @param laboratorios partições onde cada solicitação é registrada e gravada, conforme o
+     *                     laboratório dela.
+     * @param capacidadeFila solicitações que cada etapa pode ter aguardando.
+     * @param limitePrecisao maior diferença aceita entre laser e câmera.
+     */
+    public PipelineAnalises(Laboratorios laboratorios, int capacidadeFila, double limitePrecisao) {
+        if (capacidadeFila <= 0) {
+            throw new IllegalArgumentException("Capacidade das filas deve ser maior que zero.");
+        }
+        this.laboratorios = laboratorios;
+        this.capacidadeFila = capacidadeFila;
+        this.limitePrecisao = limitePrecisao;
+        for (Etapa etapa : Etapa.values()) {
+            threads.put(etapa, 1);
+        }
+    }
+
+    /**
+     * Define quantas threads atendem a etapa. Deve ser chamado antes de {@link #iniciar()}.
+     */
+    public void definirThreads(Etapa etapa, int quantidade) {
+        if (quantidade <= 0) {
+            throw new IllegalArgumentException("Quantidade de threads deve ser maior que zero.");
+        }
+        if (!estagios.isEmpty()) {
+            throw new IllegalStateException("Pipeline já iniciado.");
+        }
+        threads.put(etapa, quantidade);
+    }
+
+    /**
+     * Passa a acompanhar o sensor do monitor na etapa de precisão, usando a câmera como
+     * referência. Leituras feitas com o sensor em deriva, travado ou falhando são recusadas.
+     */
+    public void monitorar(MonitorSensor monitor) {
+        monitores.put(monitor.getSensor(), monitor);
+    }
+
+    public synchronized void iniciar() {
+        if (!estagios.isEmpty()) {
+            return;
+        }
+        Estagio proximo = null;
+        Etapa[] etapas = Etapa.values();
+        for (int i = etapas.length - 1; i >= 0; i--) {
+            Estagio estagio = new Estagio(etapas[i], proximo);
+            estagios.put(etapas[i], estagio);
+            proximo = estagio;
+        }
+        for (Estagio estagio : estagios.values()) {
+            estagio.iniciar(threads.get(estagio.etapa));
+        }
+        aceitando = true;
+    }
+
+    /**
+     * Coloca a solicitação na fila de aquisição, esperando se ela estiver cheia.
+     *
+     * @return futuro concluído com a análise quando o laudo estiver gravado.
+     * @throws IllegalArgumentException se o código de laboratório da solicitação for inválido.
+     */
+    public CompletableFuture<AnalisePatologica> enviar(Solicitacao solicitacao) throws InterruptedException {
+        if (!aceitando) {
+            throw new IllegalStateException("Pipeline não está aceitando solicitações.");
+        }
+        solicitacao.particao = laboratorios.obter(solicitacao.laboratorio);
+        emAndamento.incrementAndGet();
+        solicitacao.concluida.whenComplete((analise, erro) -> emAndamento.decrementAndGet());
+        estagios.get(Etapa.AQUISICAO).fila.put(solicitacao);
+        return solicitacao.concluida;
+    }
+
+    /**
+     * Para de aceitar solicitações, espera as que estão em andamento terminarem e encerra as threads.
+     *
+     * @return {@code false} se o prazo acabou antes de todas terminarem.
+     */
+    public boolean encerrar(long prazoMillis) throws InterruptedException {
+        aceitando = false;
+        long limite = System.currentTimeMillis() + prazoMillis;
+        while (emAndamento.get() > 0 && System.currentTimeMillis() < limite) {
+            Thread.sleep(10);
+        }
+        boolean concluido = emAndamento.get() == 0;
+        for (Estagio estagio : estagios.values()) {
+            estagio.executor.shutdownNow();
+        }
+        for (Estagio estagio : estagios.values()) {
+            estagio.executor.awaitTermination(Math.max(0, limite - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        }
+        return concluido;
+    }
+
+    public int getEmAndamento() {
+        return emAndamento.get();
+    }
+
+    /**
+     * Situação de cada etapa, na ordem do fluxo.
+     */
+    public List<Estagio> getEstagios() {
+        return Collections.unmodifiableList(new ArrayList<>(estagios.values()));
+    }
+
+    public Laboratorios getLaboratorios() {
+        return laboratorios;
+    }
+
+    private void processar(Etapa etapa, Solicitacao solicitacao) {
+        Laboratorio laboratorio = solicitacao.particao.getLaboratorio();
+        switch (etapa) {
+            case AQUISICAO:
+                laboratorio.registrarAmostra(solicitacao.paciente, solicitacao.amostra);
+                solicitacao.leitorLaser.lerSensor();
+                solicitacao.leitorCamera.lerSensor();
+                solicitacao.leituraLaser = laboratorio.registrarLeitura(solicitacao.leitorLaser);
+                solicitacao.leituraCamera = laboratorio.registrarLeitura(solicitacao.leitorCamera);
+                break;
+            case PRECISAO:
+                verificarSaude(solicitacao);
+                solicitacao.leitorLaser.calcPrecisao(solicitacao.leitorCamera);
+                if (solicitacao.leitorLaser.getPrecisao() > limitePrecisao) {
+                    throw new IllegalStateException(String.format("Precisão %.2f acima do limite %.2f.",
+                            solicitacao.leitorLaser.getPrecisao(), limitePrecisao));
+                }
+                break;
+            case MONTAGEM:
+                AnalisePatologica analise = solicitacao.idAnalise > 0
+                        ? new AnalisePatologica(solicitacao.idAnalise, solicitacao.descricao, solicitacao.diagnostico)
+                        : new AnalisePatologica(solicitacao.descricao, solicitacao.diagnostico);
+                analise.setAmostra(solicitacao.amostra);
+                analise.setPatologista(solicitacao.patologista);
+                solicitacao.analiseNova = laboratorio.registrarAnalise(analise);
+                solicitacao.analise = analise;
+                break;
+            case RENDERIZACAO:
+                solicitacao.laudo = laboratorio.emitirLaudo(solicitacao.analise);
+                break;
+            case PERSISTENCIA:
+                Armazenamento armazenamento = solicitacao.particao.getArmazenamento();
+                if (armazenamento == null) {
+                    publicar(solicitacao);
+                    solicitacao.concluida.complete(solicitacao.analise);
+                    break;
+                }
+                // Não espera o fsync: o lote é concluído pelo gravador
+                CompletableFuture.allOf(
+                        armazenamento.gravarLeitura(solicitacao.leitorLaser),
+                        armazenamento.gravarLeitura(solicitacao.leitorCamera),
+                        armazenamento.gravarAnalise(solicitacao.analise)
+                ).whenComplete((ok, erro) -> {
+                    if (erro == null) {
+                        publicar(solicitacao);
+                        solicitacao.concluida.complete(solicitacao.analise);
+                    } else {
+                        solicitacao.concluida.completeExceptionally(erro);
+                    }
+                });
+                break;
+            default:
+                throw new IllegalArgumentException("Etapa desconhecida: " + etapa);
+        }
+    }
+
+    /**
+     * Publica no feed do laboratório o que a solicitação gravou.
+     */
+    private static void publicar(Solicitacao solicitacao) {
+        Laboratorio laboratorio = solicitacao.particao.getLaboratorio();
+        laboratorio.publicarLeitura(solicitacao.leitorLaser, solicitacao.leituraLaser);
+        laboratorio.publicarLeitura(solicitacao.leitorCamera, solicitacao.leituraCamera);
+        if (solicitacao.analiseNova) {
+            laboratorio.publicarAnalise(solicitacao.analise);
+        }
+        laboratorio.publicarLaudo(solicitacao.analise);
+    }
+
+    private void verificarSaude(Solicitacao solicitacao) {
+        Leitor laser = solicitacao.leitorLaser;
+        MonitorSensor monitor = monitores.get(laser.getSensor());
+        if (monitor == null) {
+            return;
+        }
+        Leitor camera = solicitacao.leitorCamera;
+        MonitorSensor.Estado estado = monitor.observar(
+                (laser.getLeituraAltura() + laser.getLeituraComprimento()) / 2,
+                (camera.getLeituraCameraAltura() + camera.getLeituraCameraComprimento()) / 2);
+        if (estado == MonitorSensor.Estado.DERIVA || estado == MonitorSensor.Estado.TRAVADO
+                || estado == MonitorSensor.Estado.FALHA_LEITURA) {
+            throw new IllegalStateException("Leitura recusada: sensor em " + estado + ".");
+        }
+    }
+
+    /**
+     * Etapa em execução: fila de entrada, threads e contadores.
+     */
+    public final class Estagio {
+        private final Etapa etapa;
+        private final Estagio proximo;
+        private final BlockingQueue<Solicitacao> fila = new ArrayBlockingQueue<>(capacidadeFila);
+        private final LongAdder processadas = new LongAdder();
+        private final LongAdder falhas = new LongAdder();
+        private final LongAdder tempoNanos = new LongAdder();
+        private ExecutorService executor;
+
+        private Estagio(Etapa etapa, Estagio proximo) {
+            this.etapa = etapa;
+            this.proximo = proximo;
+        }
+
+        private void iniciar(int quantidade) {
+            String nome = "pipeline-" + etapa.name().toLowerCase();
+            AtomicInteger contador = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(quantidade, r -> {
+                Thread thread = new Thread(r, nome + "-" + contador.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            for (int i = 0; i < quantidade; i++) {
+                executor.execute(this::atender);
+            }
+        }
+
+        private void atender() {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    Solicitacao solicitacao = fila.take();
+                    long inicio = System.nanoTime();
+                    Auditoria.definirAtor(solicitacao.ator);
+                    Auditoria.definirLaboratorio(solicitacao.laboratorio);
+                    try {
+                        processar(etapa, solicitacao);
+                    } catch (RuntimeException e) {
+                        falhas.increment();
+                        solicitacao.concluida.completeExceptionally(e);
+                        continue;
+                    } finally {
+                        Auditoria.definirAtor(null);
+                        Auditoria.definirLaboratorio(null);
+                        tempoNanos.add(System.nanoTime() - inicio);
+                        processadas.increment();
+                    }
+                    if (proximo != null) {
+                        proximo.fila.put(solicitacao);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        public Etapa getEtapa() {
+            return etapa;
+        }
+
+        public int getNaFila() {
+            return fila.size();
+        }
+
+        public long getProcessadas() {
+            return processadas.sum();
+        }
+
+        public long getFalhas() {
+            return falhas.sum();
+        }
+
+        /** Tempo médio de processamento de uma solicitação na etapa, em microssegundos. */
+        public double getTempoMedioMicros() {
+            long total = processadas.sum();
+            return total == 0 ? 0 : tempoNanos.sum() / 1e3 / total;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d processadas, %d falhas, %d na fila, %.0f µs em média",
+                    etapa, getProcessadas(), getFalhas(), getNaFila(), getTempoMedioMicros());
+        }
+    }
+
+    /**
+     * Dados de entrada de uma análise e o que cada etapa produziu.
+     */
+    public static final class Solicitacao {
+        private final String laboratorio;
+        private final String ator = Auditoria.getAtor();
+        private final Paciente paciente;
+        private final Amostra amostra;
+        private final Leitor leitorLaser;
+        private final Leitor leitorCamera;
+        private final PatologistaResponsavel patologista;
+        private final int idAnalise;
+        private final String descricao;
+        private final String diagnostico;
+
+        private volatile Laboratorios.Particao particao;
+        private volatile int leituraLaser;
+        private volatile int leituraCamera;
+        private volatile boolean analiseNova;
+        private volatile AnalisePatologica analise;
+        private volatile String laudo;
+        private final CompletableFuture<AnalisePatologica> concluida = new CompletableFuture<>();
+
+        public Solicitacao(Paciente paciente, Amostra amostra, ISensor sensorLaser, ISensor sensorCamera,
+                           PatologistaResponsavel patologista, int idAnalise, String descricao, String diagnostico) {
+            this(null, paciente, amostra, sensorLaser, sensorCamera, patologista, idAnalise, descricao, diagnostico);
+        }
+
+        /**
+         * @param laboratorio código do laboratório da solicitação; {@code null} para o padrão.
+         * @param idAnalise ID da análise; zero para gerar pelo {@link br.com.lumepath.utils.GeradorId}.
+         */
+        public Solicitacao(String laboratorio, Paciente paciente, Amostra amostra, ISensor sensorLaser,
+                           ISensor sensorCamera, PatologistaResponsavel patologista, int idAnalise,
+                           String descricao, String diagnostico) {
+            this.laboratorio = laboratorio;
+            this.paciente = paciente;
+            this.amostra = amostra;
+            this.leitorLaser = new Leitor(sensorLaser, amostra);
+            this.leitorCamera = new Leitor(sensorCamera, amostra);
+            this.patologista = patologista;
+            this.idAnalise = idAnalise;
+            this.descricao = descricao;
+            this.diagnostico = diagnostico;
+        }
+
+        /** Código do laboratório informado; {@code null} para o padrão. */
+        public String getLaboratorio() {
+            return laboratorio;
+        }
+
+        public Amostra getAmostra() {
+            return amostra;
+        }
+
+        public Leitor getLeitorLaser() {
+            return leitorLaser;
+        }
+
+        public Leitor getLeitorCamera() {
+            return leitorCamera;
+        }
+
+        /** Análise montada; {@code null} antes da etapa de montagem. */
+        public AnalisePatologica getAnalise() {
+            return analise;
+        }
+
+        /** Laudo renderizado; {@code null} antes da etapa de renderização. */
+        public String getLaudo() {
+            return laudo;
+        }
+
+        public CompletableFuture<AnalisePatologica> getConcluida() {
+            return concluida;
+        }
+    }
+}
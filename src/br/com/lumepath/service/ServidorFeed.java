@@ -0,0 +1,343 @@
+package br.com.lumepath.service;
+
+import br.com.lumepath.utils.FeedAlteracoes;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Expõe um {@link FeedAlteracoes} por HTTP, para o LIS e os painéis acompanharem as novidades
+ * sem consultar o repositório.
+ *
+ * <ul>
+ *     <li>{@code GET /alteracoes?desde=C&maximo=M&espera=ms}: consulta longa. Responde assim que
+ *     houver alterações depois do cursor {@code C} (ou ao fim da espera, com a lista vazia):
+ *     {@code {"cursor":..,"perdidas":..,"cursorPerdido":..,"alteracoes":[..]}}. O cliente repete
+ *     a consulta com {@code desde} igual ao cursor recebido. Sem {@code desde}, espera as
+ *     próximas; com {@code desde=0}, recebe todas as retidas.</li>
+ *     <li>{@code GET /alteracoes/eventos?desde=C}: server-sent events, um evento por alteração,
+ *     com o cursor como {@code id}. Ao reconectar, o cabeçalho {@code Last-Event-ID} enviado
+ *     pelo navegador tem precedência sobre {@code desde}. Alterações perdidas por atraso geram
+ *     o evento {@code perdidas}.</li>
+ * </ul>
+ *
+ * <p>O cursor é {@code <época>-<sequência>}, com a {@link FeedAlteracoes#getEpoca() época} do
+ * feed. Um cursor de outro feed (depois de reiniciar o processo, por exemplo) ou à frente da
+ * última publicação recomeça das alterações retidas e é sinalizado com
+ * {@code "cursorPerdido":true} ou com o evento {@code cursor-perdido}: o cliente deve recarregar
+ * o estado pelo repositório.</p>
+ *
+ * <p>O feed não tem autenticação: por padrão só atende conexões locais ({@value #ENDERECO_PADRAO}),
+ * e expô-lo na rede é uma escolha explícita do endereço, de preferência atrás de um proxy que
+ * controle o acesso.</p>
+ *
+ * <p>Os dois aceitam {@code laboratorio} e {@code tipo} (separados por vírgula) para filtrar.
+ * Cada conexão de eventos ocupa uma thread do servidor enquanto estiver aberta; o JSON de cada
+ * alteração é gerado uma vez e enviado a todos os assinantes.</p>
+ *
+ * @author Ricardo
+ * @version 1.0
+ */
+public class ServidorFeed implements Closeable {
+
+    /** Endereço padrão: só a própria máquina. */
+    public static final String ENDERECO_PADRAO = "127.0.0.1";
+
+    private static final int MAXIMO_POR_CONSULTA = 1000;
+    private static final long ESPERA_PADRAO_MILLIS = 25_000;
+    private static final long ESPERA_MAXIMA_MILLIS = 60_000;
+    /** Intervalo do comentário enviado nas conexões de eventos paradas, para detectar clientes que saíram. */
+    private static final long BATIMENTO_MILLIS = 15_000;
+    private static final int LOTE_EVENTOS = 256;
+
+    private final FeedAlteracoes feed;
+    private final HttpServer servidor;
+    private final ExecutorService executor;
+    private final AtomicInteger conexoes = new AtomicInteger();
+    private volatile boolean aberto = true;
+
+    /**
+     * Inicia o servidor na porta informada, aceitando só conexões locais.
+     *
+     * @param porta porta TCP; 0 para uma porta livre qualquer.
+     */
+    public ServidorFeed(FeedAlteracoes feed, int porta) throws IOException {
+        this(feed, ENDERECO_PADRAO, porta);
+    }
+
+    /**
+     * @param endereco endereço local em que o servidor escuta; {@code 0.0.0.0} para todas as
+     *                 interfaces.
+     * @param porta porta TCP; 0 para uma porta livre qualquer.
+     */
+    public ServidorFeed(FeedAlteracoes feed, String endereco, int porta) throws IOException {
+        this.feed = feed;
+        this.servidor = HttpServer.create(new InetSocketAddress(InetAddress.getByName(endereco), porta), 0);
+        AtomicInteger contador = new AtomicInteger();
+        this.executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "feed-http-" + contador.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        servidor.createContext("/alteracoes", this::atender);
+        servidor.setExecutor(executor);
+        servidor.start();
+    }
+
+    public int getPorta() {
+        return servidor.getAddress().getPort();
+    }
+
+    public InetSocketAddress getEndereco() {
+        return servidor.getAddress();
+    }
+
+    /** Conexões de eventos abertas. */
+    public int getConexoes() {
+        return conexoes.get();
+    }
+
+    /**
+     * Para de aceitar conexões e encerra as abertas.
+     */
+    @Override
+    public void close() {
+        aberto = false;
+        servidor.stop(0);
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void atender(HttpExchange troca) throws IOException {
+        try (troca) {
+            if (!"GET".equals(troca.getRequestMethod())) {
+                responder(troca, 405, "{\"erro\":\"use GET\"}");
+                return;
+            }
+            Map<String, String> parametros = parametros(troca.getRequestURI().getRawQuery());
+            Filtro filtro;
+            Cursor desde;
+            try {
+                filtro = new Filtro(parametros.get("laboratorio"), parametros.get("tipo"));
+                String ultimo = troca.getRequestHeaders().getFirst("Last-Event-ID");
+                desde = Cursor.ler(ultimo != null ? ultimo : parametros.get("desde"), feed.getEpoca());
+            } catch (IllegalArgumentException e) {
+                responder(troca, 400, "{\"erro\":\"parâmetro inválido\"}");
+                return;
+            }
+            String caminho = troca.getRequestURI().getPath();
+            if (caminho.equals("/alteracoes")) {
+                consultar(troca, parametros, filtro, desde);
+            } else if (caminho.equals("/alteracoes/eventos")) {
+                transmitir(troca, filtro, desde);
+            } else {
+                responder(troca, 404, "{\"erro\":\"não encontrado\"}");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void consultar(HttpExchange troca, Map<String, String> parametros, Filtro filtro, Cursor desde)
+            throws IOException, InterruptedException {
+        int maximo;
+        long espera;
+        try {
+            maximo = Math.min(MAXIMO_POR_CONSULTA, Integer.parseInt(parametros.getOrDefault("maximo", "100")));
+            espera = Math.min(ESPERA_MAXIMA_MILLIS,
+                    Long.parseLong(parametros.getOrDefault("espera", String.valueOf(ESPERA_PADRAO_MILLIS))));
+        } catch (NumberFormatException e) {
+            responder(troca, 400, "{\"erro\":\"parâmetro inválido\"}");
+            return;
+        }
+        if (maximo <= 0) {
+            responder(troca, 400, "{\"erro\":\"maximo deve ser maior que zero\"}");
+            return;
+        }
+        try (FeedAlteracoes.Assinante assinante = assinar(desde)) {
+            long limite = System.currentTimeMillis() + espera;
+            List<FeedAlteracoes.Alteracao> alteracoes;
+            // Alterações descartadas pelo filtro não contam: continua esperando até o prazo
+            do {
+                alteracoes = assinante.proximas(maximo, Math.max(0, limite - System.currentTimeMillis()));
+                alteracoes.removeIf(alteracao -> !filtro.aceita(alteracao));
+            } while (alteracoes.isEmpty() && !assinante.isCursorPerdido() && System.currentTimeMillis() < limite
+                    && aberto);
+
+            troca.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            troca.getResponseHeaders().set("Cache-Control", "no-store");
+            troca.sendResponseHeaders(200, 0);
+            OutputStream saida = troca.getResponseBody();
+            saida.write(("{\"cursor\":\"" + cursor(assinante.getCursor()) + "\",\"perdidas\":"
+                    + assinante.getPerdidas() + ",\"cursorPerdido\":" + assinante.isCursorPerdido()
+                    + ",\"alteracoes\":[").getBytes(StandardCharsets.UTF_8));
+            for (int i = 0; i < alteracoes.size(); i++) {
+                if (i > 0) {
+                    saida.write(',');
+                }
+                saida.write(alteracoes.get(i).toJson());
+            }
+            saida.write(']');
+            saida.write('}');
+        }
+    }
+
+    private void transmitir(HttpExchange troca, Filtro filtro, Cursor desde) throws IOException, InterruptedException {
+        troca.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+        troca.getResponseHeaders().set("Cache-Control", "no-store");
+        troca.sendResponseHeaders(200, 0);
+        OutputStream saida = troca.getResponseBody();
+        conexoes.incrementAndGet();
+        try (FeedAlteracoes.Assinante assinante = assinar(desde)) {
+            saida.write("retry: 2000\n\n".getBytes(StandardCharsets.UTF_8));
+            if (assinante.isCursorPerdido()) {
+                saida.write("event: cursor-perdido\ndata: {}\n\n".getBytes(StandardCharsets.UTF_8));
+            }
+            saida.flush();
+            long perdidas = 0;
+            while (aberto) {
+                List<FeedAlteracoes.Alteracao> alteracoes = assinante.proximas(LOTE_EVENTOS, BATIMENTO_MILLIS);
+                if (assinante.getPerdidas() > perdidas) {
+                    saida.write(("event: perdidas\ndata: {\"perdidas\":" + (assinante.getPerdidas() - perdidas)
+                            + "}\n\n").getBytes(StandardCharsets.UTF_8));
+                    perdidas = assinante.getPerdidas();
+                }
+                if (alteracoes.isEmpty()) {
+                    saida.write(':');
+                    saida.write('\n');
+                    saida.write('\n');
+                }
+                for (FeedAlteracoes.Alteracao alteracao : alteracoes) {
+                    if (filtro.aceita(alteracao)) {
+                        saida.write(("id: " + cursor(alteracao.getSequencia()) + "\nevent: "
+                                + alteracao.getTipo().name().toLowerCase() + "\ndata: ").getBytes(StandardCharsets.UTF_8));
+                        saida.write(alteracao.toJson());
+                        saida.write('\n');
+                        saida.write('\n');
+                    }
+                }
+                // Um flush por lote, não por alteração
+                saida.flush();
+            }
+        } catch (IOException e) {
+            // Cliente desconectou
+        } finally {
+            conexoes.decrementAndGet();
+        }
+    }
+
+    private FeedAlteracoes.Assinante assinar(Cursor desde) {
+        return desde == null ? feed.assinar() : feed.assinar(desde.epoca, desde.sequencia);
+    }
+
+    private String cursor(long sequencia) {
+        return feed.getEpoca() + "-" + sequencia;
+    }
+
+    private static void responder(HttpExchange troca, int status, String corpo) throws IOException {
+        byte[] bytes = corpo.getBytes(StandardCharsets.UTF_8);
+        troca.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        troca.sendResponseHeaders(status, bytes.length);
+        troca.getResponseBody().write(bytes);
+    }
+
+    private static Map<String, String> parametros(String consulta) {
+        Map<String, String> parametros = new HashMap<>();
+        if (consulta == null || consulta.isEmpty()) {
+            return parametros;
+        }
+        for (String par : consulta.split("&")) {
+            int igual = par.indexOf('=');
+            String nome = URLDecoder.decode(igual < 0 ? par : par.substring(0, igual), StandardCharsets.UTF_8);
+            String valor = igual < 0 ? "" : URLDecoder.decode(par.substring(igual + 1), StandardCharsets.UTF_8);
+            parametros.put(nome, valor.trim());
+        }
+        return parametros;
+    }
+
+    /**
+     * Posição informada pelo cliente: {@code <época>-<sequência>}, ou {@code 0} para todas as
+     * alterações retidas do feed atual.
+     */
+    private static final class Cursor {
+        private final long epoca;
+        private final long sequencia;
+
+        private Cursor(long epoca, long sequencia) {
+            this.epoca = epoca;
+            this.sequencia = sequencia;
+        }
+
+        /**
+         * @return {@code null} se o cliente não informou cursor.
+         * @throws NumberFormatException se o cursor for inválido.
+         */
+        private static Cursor ler(String texto, long epocaAtual) {
+            if (texto == null || texto.trim().isEmpty()) {
+                return null;
+            }
+            texto = texto.trim();
+            int separador = texto.indexOf('-');
+            if (separador < 0) {
+                // Sem época, só o 0 se refere ao feed atual; outro número é de um feed que não
+                // existe mais e será tratado como perdido (nenhum feed tem época 0)
+                long sequencia = Long.parseLong(texto);
+                if (sequencia < 0) {
+                    throw new NumberFormatException("Sequência negativa: " + texto);
+                }
+                return new Cursor(sequencia == 0 ? epocaAtual : 0, sequencia);
+            }
+            long sequencia = Long.parseLong(texto.substring(separador + 1));
+            if (sequencia < 0) {
+                throw new NumberFormatException("Sequência negativa: " + texto);
+            }
+            return new Cursor(Long.parseLong(texto.substring(0, separador)), sequencia);
+        }
+    }
+
+    /**
+     * Laboratório e tipos pedidos pelo cliente; ausentes aceitam tudo.
+     */
+    private static final class Filtro {
+        private final String laboratorio;
+        private final Set<FeedAlteracoes.Tipo> tipos;
+
+        private Filtro(String laboratorio, String tipos) {
+            this.laboratorio = laboratorio == null || laboratorio.isEmpty() ? null : laboratorio;
+            if (tipos == null || tipos.isEmpty()) {
+                this.tipos = EnumSet.allOf(FeedAlteracoes.Tipo.class);
+            } else {
+                this.tipos = EnumSet.noneOf(FeedAlteracoes.Tipo.class);
+                for (String tipo : tipos.split(",")) {
+                    this.tipos.add(FeedAlteracoes.Tipo.valueOf(tipo.trim().toUpperCase()));
+                }
+            }
+        }
+
+        private boolean aceita(FeedAlteracoes.Alteracao alteracao) {
+            return tipos.contains(alteracao.getTipo())
+                    && (laboratorio == null || laboratorio.equals(alteracao.getLaboratorio()));
+        }
+    }
+}
@@ -0,0 +1,363 @@
+package br.com.lumepath.service;
+
+import br.com.lumepath.utils.Auditoria;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Grava em arquivo, somente por acréscimo, os eventos capturados pela {@link Auditoria}.
+ *
+ * <p>Uma thread própria esvazia a fila da auditoria em lotes, acrescenta o lote ao arquivo e
+ * força a gravação em disco antes de buscar o próximo; com a fila vazia, dorme um intervalo
+ * curto. Os setters nunca esperam pelo disco. Enquanto a trilha estiver aberta, a captura fica
+ * ligada.</p>
+ *
+ * <p>Se uma gravação falhar, a trilha para na hora: desliga a captura, deixa de esvaziar a fila
+ * e avisa quem a abriu, em vez de continuar descartando eventos sem que ninguém saiba. Os
+ * eventos do lote que falhou se perdem; os que ainda estavam na fila continuam nela.</p>
+ *
+ * <p>Cada registro tem o tamanho ({@code int}), o instante ({@code long}), o ID da entidade
+ * ({@code int}); o autor, o laboratório, a entidade e o campo como textos UTF-8 precedidos do tamanho
+ * ({@code -1} para nulo); e os valores anterior e novo, cada um com um byte de tipo (nulo,
+ * texto, inteiro ou decimal) seguido do valor. Ao abrir, a trilha é conferida até o primeiro
+ * registro incompleto ou malformado (queda ou falha durante a gravação), e o restante é
+ * descartado antes de acrescentar eventos novos; sem isso, os eventos seguintes seriam lidos
+ * como o corpo do registro rasgado.</p>
+ *
+ * @author Ricardo
+ * @version 1.0
+ */
+public class TrilhaAuditoria implements Closeable {
+
+    private static final int TAMANHO_BUFFER = 256 * 1024;
+    private static final long ESPERA_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+
+    private static final byte NULO = 0;
+    private static final byte TEXTO = 1;
+    private static final byte INTEIRO = 2;
+    private static final byte DECIMAL = 3;
+
+    private final FileChannel canal;
+    private final Consumer<IOException> aoFalhar;
+    private final Thread thread;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(TAMANHO_BUFFER);
+
+    /** Nomes de entidades, campos e autores já codificados; usado só pela thread da trilha. */
+    private final Map<String, byte[]> nomes = new HashMap<>();
+    private volatile boolean aberta = true;
+    private volatile IOException erro;
+    private long gravados;
+    private long lotes;
+
+    /**
+     * Abre (ou cria) o arquivo da trilha e liga a captura. Uma falha de gravação é informada na
+     * saída de erro.
+     *
+     * @throws IllegalStateException se a captura já estiver ligada por outra trilha.
+     */
+    public TrilhaAuditoria(Path arquivo) throws IOException {
+        this(arquivo, e -> System.err.println(e.getMessage()));
+    }
+
+    /**
+     * @param aoFalhar recebe, na thread da trilha, a falha que encerrou a gravação.
+     * @throws IllegalStateException se a captura já estiver ligada por outra trilha.
+     */
+    public TrilhaAuditoria(Path arquivo, Consumer<IOException> aoFalhar) throws IOException {
+        if (Auditoria.isAtiva()) {
+            throw new IllegalStateException("Já existe uma trilha de auditoria aberta.");
+        }
+        this.canal = FileChannel.open(arquivo, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        long fim = percorrer(canal, null);
+        if (fim < canal.size()) {
+            canal.truncate(fim);
+            canal.force(true);
+        }
+        canal.position(fim);
+        this.aoFalhar = aoFalhar;
+        this.thread = new Thread(this::executar, "auditoria");
+        thread.setDaemon(true);
+        Auditoria.ativar(true);
+        thread.start();
+    }
+
+    /**
+     * Desliga a captura, grava os eventos que restaram na fila e fecha o arquivo.
+     *
+     * @throws IOException se alguma gravação tiver falhado.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!aberta) {
+            return;
+        }
+        Auditoria.ativar(false);
+        aberta = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        canal.close();
+        if (erro != null) {
+            throw erro;
+        }
+    }
+
+    /** Eventos gravados em disco. */
+    public synchronized long getGravados() {
+        return gravados;
+    }
+
+    public synchronized long getLotes() {
+        return lotes;
+    }
+
+    /** Falha que encerrou a gravação; {@code null} enquanto não houver. */
+    public IOException getErro() {
+        return erro;
+    }
+
+    /**
+     * Lê os eventos de uma trilha, na ordem em que foram gravados, até o primeiro registro
+     * incompleto ou malformado.
+     */
+    public static void percorrer(Path arquivo, Consumer<Auditoria.Evento> consumidor) throws IOException {
+        try (FileChannel leitura = FileChannel.open(arquivo, StandardOpenOption.READ)) {
+            percorrer(leitura, consumidor);
+        }
+    }
+
+    /**
+     * @param consumidor recebe cada evento válido; {@code null} para apenas conferir.
+     * @return posição logo após o último registro válido.
+     */
+    private static long percorrer(FileChannel leitura, Consumer<Auditoria.Evento> consumidor) throws IOException {
+        ByteBuffer tamanhoRegistro = ByteBuffer.allocate(Integer.BYTES);
+        // Todo registro gravado coube no buffer da trilha
+        ByteBuffer registro = ByteBuffer.allocate(TAMANHO_BUFFER);
+        long tamanhoArquivo = leitura.size();
+        long posicao = 0;
+        while (true) {
+            tamanhoRegistro.clear();
+            if (lerTudo(leitura, tamanhoRegistro, posicao) < Integer.BYTES) {
+                return posicao;
+            }
+            int tamanho = tamanhoRegistro.getInt(0);
+            if (tamanho <= 0 || tamanho > TAMANHO_BUFFER - Integer.BYTES
+                    || tamanho > tamanhoArquivo - posicao - Integer.BYTES) {
+                return posicao;
+            }
+            registro.clear().limit(tamanho);
+            if (lerTudo(leitura, registro, posicao + Integer.BYTES) < tamanho) {
+                return posicao;
+            }
+            registro.flip();
+            Auditoria.Evento evento;
+            try {
+                evento = lerEvento(registro);
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                return posicao;
+            }
+            if (registro.hasRemaining()) {
+                return posicao;
+            }
+            if (consumidor != null) {
+                consumidor.accept(evento);
+            }
+            posicao += Integer.BYTES + tamanho;
+        }
+    }
+
+    /**
+     * @throws BufferUnderflowException se o registro terminar antes do evento.
+     * @throws IllegalArgumentException se um tipo ou tamanho do registro for inválido.
+     */
+    private static Auditoria.Evento lerEvento(ByteBuffer registro) {
+        long instante = registro.getLong();
+        int id = registro.getInt();
+        String ator = lerTexto(registro);
+        String laboratorio = lerTexto(registro);
+        String entidade = lerTexto(registro);
+        String campo = lerTexto(registro);
+        Object anterior = lerValor(registro);
+        Object novo = lerValor(registro);
+        return new Auditoria.Evento(instante, ator, laboratorio, entidade, id, campo, anterior, novo);
+    }
+
+    private static int lerTudo(FileChannel leitura, ByteBuffer destino, long posicao) throws IOException {
+        int total = 0;
+        while (destino.hasRemaining()) {
+            int lidos = leitura.read(destino, posicao + total);
+            if (lidos < 0) {
+                break;
+            }
+            total += lidos;
+        }
+        return total;
+    }
+
+    private void executar() {
+        while (true) {
+            boolean encerrando = !aberta;
+            int quantidade = 0;
+            Auditoria.Evento evento;
+            while ((evento = Auditoria.retirar()) != null) {
+                if (!escrever(evento)) {
+                    // Buffer cheio: grava o que já tem e recomeça com o evento atual
+                    quantidade = descarregar(quantidade);
+                    if (erro != null) {
+                        aoFalhar.accept(erro);
+                        return;
+                    }
+                    escrever(evento);
+                }
+                quantidade++;
+            }
+            descarregar(quantidade);
+            if (erro != null) {
+                aoFalhar.accept(erro);
+                return;
+            }
+            if (encerrando) {
+                return;
+            }
+            LockSupport.parkNanos(ESPERA_NANOS);
+        }
+    }
+
+    /**
+     * @return {@code false} se o evento não couber no espaço restante do buffer.
+     */
+    private boolean escrever(Auditoria.Evento evento) {
+        int inicio = buffer.position();
+        try {
+            buffer.position(inicio + Integer.BYTES);
+            buffer.putLong(evento.getInstante());
+            buffer.putInt(evento.getId());
+            escreverNome(evento.getAtor());
+            escreverNome(evento.getLaboratorio());
+            escreverNome(evento.getEntidade());
+            escreverNome(evento.getCampo());
+            escreverValor(evento.getValorAnterior());
+            escreverValor(evento.getValorNovo());
+            buffer.putInt(inicio, buffer.position() - inicio - Integer.BYTES);
+            return true;
+        } catch (BufferOverflowException | IllegalArgumentException e) {
+            buffer.position(inicio);
+            if (inicio == 0) {
+                // Nem sozinho cabe: grava o evento com os valores truncados
+                return escrever(new Auditoria.Evento(evento.getInstante(), evento.getAtor(), evento.getLaboratorio(),
+                        evento.getEntidade(), evento.getId(), evento.getCampo(), truncar(evento.getAnterior()),
+                        truncar(evento.getNovo())));
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Grava o buffer e força a gravação em disco. Se falhar, desliga a captura e guarda o erro.
+     *
+     * @return zero, para reiniciar a contagem do lote.
+     */
+    private int descarregar(int quantidade) {
+        if (buffer.position() == 0) {
+            return 0;
+        }
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                canal.write(buffer);
+            }
+            canal.force(false);
+            synchronized (this) {
+                gravados += quantidade;
+                lotes++;
+            }
+        } catch (IOException e) {
+            Auditoria.ativar(false);
+            erro = new IOException("Falha ao gravar a trilha de auditoria; captura desligada e " + quantidade
+                    + " alterações perdidas: " + e.getMessage(), e);
+        } finally {
+            buffer.clear();
+        }
+        return 0;
+    }
+
+    private void escreverNome(String nome) {
+        if (nome == null) {
+            buffer.putInt(-1);
+            return;
+        }
+        byte[] bytes = nomes.get(nome);
+        if (bytes == null) {
+            bytes = nome.getBytes(StandardCharsets.UTF_8);
+            if (nomes.size() < 4096) {
+                nomes.put(nome, bytes);
+            }
+        }
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private void escreverValor(Object valor) {
+        if (valor == null) {
+            buffer.put(NULO);
+        } else if (valor instanceof Integer) {
+            buffer.put(INTEIRO).putInt((Integer) valor);
+        } else if (valor instanceof Double) {
+            buffer.put(DECIMAL).putDouble((Double) valor);
+        } else {
+            byte[] bytes = valor.toString().getBytes(StandardCharsets.UTF_8);
+            buffer.put(TEXTO).putInt(bytes.length).put(bytes);
+        }
+    }
+
+    private static Object lerValor(ByteBuffer registro) {
+        byte tipo = registro.get();
+        switch (tipo) {
+            case NULO:
+                return null;
+            case INTEIRO:
+                return registro.getInt();
+            case DECIMAL:
+                return registro.getDouble();
+            case TEXTO:
+                return lerTexto(registro);
+            default:
+                throw new IllegalArgumentException("Tipo de valor desconhecido: " + tipo);
+        }
+    }
+
+    private static String lerTexto(ByteBuffer registro) {
+        int tamanho = registro.getInt();
+        if (tamanho < 0) {
+            return null;
+        }
+        if (tamanho > registro.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        byte[] bytes = new byte[tamanho];
+        registro.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String truncar(String texto) {
+        return texto == null || texto.length() <= 1024 ? texto : texto.substring(0, 1024) + "...";
+    }
+}
@@ -0,0 +1,204 @@
+package br.com.lumepath.utils;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Captura das alterações feitas pelos setters dos beans, para a trilha de auditoria.
+ *
+ * <p>Cada alteração bem-sucedida vira um {@link Evento} (entidade, ID, campo, valor anterior,
+ * valor novo, instante, autor e laboratório) colocado em uma fila sem locks; quem grava os eventos é outra
+ * thread, que esvazia a fila. No setter resta uma comparação e uma inserção na fila, e nada
+ * disso acontece enquanto a captura estiver desligada.</p>
+ *
+ * <p>O autor e o laboratório são os da thread que chamou o setter, definidos por
+ * {@link #definirAtor(String)} e {@link #definirLaboratorio(String)}; como os IDs só são únicos
+ * dentro de um laboratório, o código dele é o que identifica a entidade na trilha.
+ * Valores iguais ao anterior não geram evento. Os valores são guardados como recebidos e só
+ * convertidos em texto por quem grava, então devem ser imutáveis (textos, números, datas,
+ * IDs de entidades relacionadas).</p>
+ *
+ * @author Ricardo
+ * @version 1.0
+ */
+public final class Auditoria {
+
+    private static final ConcurrentLinkedQueue<Evento> FILA = new ConcurrentLinkedQueue<>();
+    private static final ThreadLocal<String> ATOR = new ThreadLocal<>();
+    private static final ThreadLocal<String> LABORATORIO = new ThreadLocal<>();
+    private static final LongAdder REGISTRADOS = new LongAdder();
+    private static final LongAdder RETIRADOS = new LongAdder();
+
+    private static volatile boolean ativa;
+
+    private Auditoria() {
+    }
+
+    /**
+     * Liga ou desliga a captura. Eventos já capturados continuam na fila.
+     */
+    public static void ativar(boolean ativar) {
+        ativa = ativar;
+    }
+
+    public static boolean isAtiva() {
+        return ativa;
+    }
+
+    /**
+     * Define o autor das alterações feitas pela thread atual; {@code null} para limpar.
+     */
+    public static void definirAtor(String ator) {
+        if (ator == null) {
+            ATOR.remove();
+        } else {
+            ATOR.set(ator);
+        }
+    }
+
+    /** Autor das alterações feitas pela thread atual; {@code null} se não definido. */
+    public static String getAtor() {
+        return ATOR.get();
+    }
+
+    /**
+     * Define o código do laboratório das alterações feitas pela thread atual; {@code null} para limpar.
+     */
+    public static void definirLaboratorio(String laboratorio) {
+        if (laboratorio == null) {
+            LABORATORIO.remove();
+        } else {
+            LABORATORIO.set(laboratorio);
+        }
+    }
+
+    /** Laboratório das alterações feitas pela thread atual; {@code null} se não definido. */
+    public static String getLaboratorio() {
+        return LABORATORIO.get();
+    }
+
+    public static void registrar(String entidade, int id, String campo, Object anterior, Object novo) {
+        if (ativa && !Objects.equals(anterior, novo)) {
+            enfileirar(entidade, id, campo, anterior, novo);
+        }
+    }
+
+    public static void registrar(String entidade, int id, String campo, double anterior, double novo) {
+        if (ativa && Double.compare(anterior, novo) != 0) {
+            enfileirar(entidade, id, campo, anterior, novo);
+        }
+    }
+
+    public static void registrar(String entidade, int id, String campo, int anterior, int novo) {
+        if (ativa && anterior != novo) {
+            enfileirar(entidade, id, campo, anterior, novo);
+        }
+    }
+
+    /**
+     * Retira o evento mais antigo da fila.
+     *
+     * @return evento, ou {@code null} se a fila estiver vazia.
+     */
+    public static Evento retirar() {
+        Evento evento = FILA.poll();
+        if (evento != null) {
+            RETIRADOS.increment();
+        }
+        return evento;
+    }
+
+    /** Eventos capturados e ainda não retirados. */
+    public static long getPendentes() {
+        return REGISTRADOS.sum() - RETIRADOS.sum();
+    }
+
+    public static long getRegistrados() {
+        return REGISTRADOS.sum();
+    }
+
+    private static void enfileirar(String entidade, int id, String campo, Object anterior, Object novo) {
+        FILA.offer(new Evento(System.currentTimeMillis(), ATOR.get(), LABORATORIO.get(), entidade, id, campo,
+                anterior, novo));
+        REGISTRADOS.increment();
+    }
+
+    /**
+     * Alteração de um campo de uma entidade.
+     */
+    public static final class Evento {
+        private final long instante;
+        private final String ator;
+        private final String laboratorio;
+        private final String entidade;
+        private final int id;
+        private final String campo;
+        private final Object anterior;
+        private final Object novo;
+
+        public Evento(long instante, String ator, String laboratorio, String entidade, int id, String campo,
+                      Object anterior, Object novo) {
+            this.instante = instante;
+            this.ator = ator;
+            this.laboratorio = laboratorio;
+            this.entidade = entidade;
+            this.id = id;
+            this.campo = campo;
+            this.anterior = anterior;
+            this.novo = novo;
+        }
+
+        /** Momento da alteração, em epoch ms. */
+        public long getInstante() {
+            return instante;
+        }
+
+        /** Autor da alteração; {@code null} se não definido. */
+        public String getAtor() {
+            return ator;
+        }
+
+        /** Código do laboratório da entidade; {@code null} se não definido. */
+        public String getLaboratorio() {
+            return laboratorio;
+        }
+
+        public String getEntidade() {
+            return entidade;
+        }
+
+        /** ID da entidade no momento da alteração. */
+        public int getId() {
+            return id;
+        }
+
+        public String getCampo() {
+            return campo;
+        }
+
+        /** Valor anterior como texto; {@code null} se não havia valor. */
+        public String getAnterior() {
+            return anterior == null ? null : anterior.toString();
+        }
+
+        public String getNovo() {
+            return novo == null ? null : novo.toString();
+        }
+
+        /** Valor anterior como recebido pelo setter. */
+        public Object getValorAnterior() {
+            return anterior;
+        }
+
+        public Object getValorNovo() {
+            return novo;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%tFT%<tT.%<tL %s %s %s#%d.%s: %s -> %s", instante, ator == null ? "-" : ator,
+                    laboratorio == null ? "-" : laboratorio, entidade, id, campo, anterior, novo);
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package br.com.lumepath.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Escritor de PDF que grava os laudos página a página diretamente no fluxo de saída.
+ *
+ * <p>Cada página é enviada assim que fica pronta; em memória ficam apenas a página atual
+ * e a tabela de deslocamentos dos objetos, então exportar milhares de laudos usa memória
+ * constante. A fonte usada é a Helvetica padrão do PDF, que não precisa ser embutida, e o
+ * modelo de página é montado uma única vez e compartilhado por todos os documentos.</p>
+ *
+ * <p>Cada laudo começa em uma nova página e quebra para páginas seguintes se não couber.</p>
+ *
+ * @author Ricardo
+ * @version 1.0
+ */
+public class EscritorPdf implements Closeable {
+
+    /** Página A4 em pontos. */
+    private static final int LARGURA_PAGINA = 595;
+    private static final int ALTURA_PAGINA = 842;
+    private static final int MARGEM = 50;
+    private static final int TAMANHO_FONTE = 10;
+    private static final int ENTRELINHA = 14;
+    private static final int LINHAS_POR_PAGINA = (ALTURA_PAGINA - 2 * MARGEM) / ENTRELINHA;
+    private static final int CARACTERES_POR_LINHA = 95;
+
+    private static final int OBJ_CATALOGO = 1;
+    private static final int OBJ_PAGINAS = 2;
+    private static final int OBJ_FONTE = 3;
+
+    /** Trechos fixos do documento, montados uma vez e reaproveitados. */
+    private static final byte[] CABECALHO = latin1("%PDF-1.4\n%âãÏÓ\n");
+    private static final byte[] FONTE = latin1(OBJ_FONTE + " 0 obj\n<< /Type /Font /Subtype /Type1 "
+            + "/BaseFont /Helvetica /Encoding /WinAnsiEncoding >>\nendobj\n");
+    private static final byte[] INICIO_TEXTO = latin1("BT\n/F1 " + TAMANHO_FONTE + " Tf\n" + ENTRELINHA
+            + " TL\n" + MARGEM + " " + (ALTURA_PAGINA - MARGEM) + " Td\n");
+    private static final byte[] FIM_TEXTO = latin1("ET\n");
+    private static final String DICIONARIO_PAGINA = " 0 obj\n<< /Type /Page /Parent " + OBJ_PAGINAS
+            + " 0 R /MediaBox [0 0 " + LARGURA_PAGINA + " " + ALTURA_PAGINA + "] "
+            + "/Resources << /Font << /F1 " + OBJ_FONTE + " 0 R >> >> /Contents ";
+
+    private final ContadorBytes saida;
+    private final ByteArrayOutputStream conteudo = new ByteArrayOutputStream(8192);
+
+    /** Deslocamento de cada objeto no arquivo, indexado pelo número do objeto. */
+    private long[] deslocamentos = new long[64];
+    private int[] paginas = new int[64];
+    private int quantidadePaginas;
+    private int proximoObjeto = OBJ_FONTE + 1;
+    private int linhasNaPagina;
+    private boolean fechado;
+
+    /**
+     * Inicia um novo documento no fluxo informado.
+     *
+     * @param destino fluxo que receberá o PDF; é fechado junto com o escritor.
+     * @throws IOException se não for possível gravar o cabeçalho.
+     */
+    public EscritorPdf(OutputStream destino) throws IOException {
+        this.saida = new ContadorBytes(destino);
+        saida.write(CABECALHO);
+        deslocamentos[OBJ_FONTE] = saida.getTotal();
+        saida.write(FONTE);
+    }
+
+    /**
+     * Escreve um laudo a partir de uma nova página.
+     *
+     * @param laudo texto do laudo, com linhas separadas por {@code \n}.
+     * @throws IOException se não for possível gravar no fluxo.
+     */
+    public void escreverLaudo(String laudo) throws IOException {
+        if (fechado) {
+            throw new IllegalStateException("Documento já foi fechado.");
+        }
+        finalizarPagina();
+        for (String linha : laudo.split("\n", -1)) {
+            do {
+                int fim = Math.min(linha.length(), CARACTERES_POR_LINHA);
+                escreverLinha(linha.substring(0, fim));
+                linha = linha.substring(fim);
+            } while (!linha.isEmpty());
+        }
+    }
+
+    public int getQuantidadePaginas() {
+        return quantidadePaginas + (linhasNaPagina > 0 ? 1 : 0);
+    }
+
+    /**
+     * Grava a árvore de páginas, a tabela de referências cruzadas e fecha o fluxo.
+     */
+    @Override
+    public void close() throws IOException {
+        if (fechado) {
+            return;
+        }
+        fechado = true;
+        try {
+            finalizarPagina();
+
+            StringBuilder filhos = new StringBuilder();
+            for (int i = 0; i < quantidadePaginas; i++) {
+                filhos.append(paginas[i]).append(" 0 R ");
+            }
+            iniciarObjeto(OBJ_PAGINAS);
+            saida.write(latin1(OBJ_PAGINAS + " 0 obj\n<< /Type /Pages /Kids [" + filhos
+                    + "] /Count " + quantidadePaginas + " >>\nendobj\n"));
+            iniciarObjeto(OBJ_CATALOGO);
+            saida.write(latin1(OBJ_CATALOGO + " 0 obj\n<< /Type /Catalog /Pages " + OBJ_PAGINAS
+                    + " 0 R >>\nendobj\n"));
+
+            long inicioXref = saida.getTotal();
+            StringBuilder xref = new StringBuilder("xref\n0 ").append(proximoObjeto).append("\n0000000000 65535 f \n");
+            for (int i = 1; i < proximoObjeto; i++) {
+                xref.append(String.format("%010d 00000 n \n", deslocamentos[i]));
+            }
+            xref.append("trailer\n<< /Size ").append(proximoObjeto).append(" /Root ").append(OBJ_CATALOGO)
+                    .append(" 0 R >>\nstartxref\n").append(inicioXref).append("\n%%EOF\n");
+            saida.write(latin1(xref.toString()));
+        } finally {
+            saida.close();
+        }
+    }
+
+    private void escreverLinha(String linha) throws IOException {
+        if (linhasNaPagina == LINHAS_POR_PAGINA) {
+            finalizarPagina();
+        }
+        if (linhasNaPagina == 0) {
+            conteudo.write(INICIO_TEXTO);
+        }
+        conteudo.write('(');
+        for (int i = 0; i < linha.length(); i++) {
+            char c = linha.charAt(i);
+            if (c == '(' || c == ')' || c == '\\') {
+                conteudo.write('\\');
+            }
+            conteudo.write(c < 256 ? c : '?');
+        }
+        conteudo.write(')');
+        conteudo.write(' ');
+        conteudo.write('\'');
+        conteudo.write('\n');
+        linhasNaPagina++;
+    }
+
+    /**
+     * Envia a página atual (conteúdo e dicionário) para o fluxo e libera o buffer.
+     */
+    private void finalizarPagina() throws IOException {
+        if (linhasNaPagina == 0) {
+            return;
+        }
+        conteudo.write(FIM_TEXTO);
+
+        int objConteudo = reservarObjeto();
+        iniciarObjeto(objConteudo);
+        saida.write(latin1(objConteudo + " 0 obj\n<< /Length " + conteudo.size() + " >>\nstream\n"));
+        conteudo.writeTo(saida);
+        saida.write(latin1("\nendstream\nendobj\n"));
+
+        int objPagina = reservarObjeto();
+        iniciarObjeto(objPagina);
+        saida.write(latin1(objPagina + DICIONARIO_PAGINA + objConteudo + " 0 R >>\nendobj\n"));
+
+        if (quantidadePaginas == paginas.length) {
+            paginas = Arrays.copyOf(paginas, paginas.length * 2);
+        }
+        paginas[quantidadePaginas++] = objPagina;
+
+        conteudo.reset();
+        linhasNaPagina = 0;
+    }
+
+    private int reservarObjeto() {
+        if (proximoObjeto == deslocamentos.length) {
+            deslocamentos = Arrays.copyOf(deslocamentos, deslocamentos.length * 2);
+        }
+        return proximoObjeto++;
+    }
+
+    private void iniciarObjeto(int numero) {
+        deslocamentos[numero] = saida.getTotal();
+    }
+
+    private static byte[] latin1(String texto) {
+        return texto.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Fluxo que conta os bytes gravados, necessário para montar a tabela de referências.
+     */
+    private static final class ContadorBytes extends FilterOutputStream {
+        private long total;
+
+        private ContadorBytes(OutputStream destino) {
+            super(destino);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            total++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            total += len;
+        }
+
+        private long getTotal() {
+            return total;
+        }
+    }
+}
@@ -0,0 +1,374 @@
+package br.com.lumepath.utils;
+
+import br.com.lumepath.bean.AnalisePatologica;
+import br.com.lumepath.bean.Leitor;
+import br.com.lumepath.codec.EscritorJson;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Feed das novidades do laboratório (análises criadas, laudos emitidos e leituras registradas),
+ * para sistemas que precisam reagir a elas sem consultar o repositório de tempos em tempos.
+ *
+ * <p>As alterações ficam em um anel de tamanho fixo, compartilhado por todos os assinantes,
+ * como no Disruptor: quem publica reserva a próxima sequência com uma única operação atômica e
+ * grava a alteração na posição {@code sequencia % capacidade}; cada {@link Assinante} tem seu
+ * próprio cursor e lê as posições seguintes, sem copiar nada e sem disputar lock com os outros.
+ * A própria alteração, que carrega sua sequência, indica se a posição já foi publicada.</p>
+ *
+ * <p>Quem publica nunca espera por assinantes. Um assinante que ficar mais de uma volta do anel
+ * atrasado perde as alterações sobrescritas: ele continua da mais antiga ainda disponível e as
+ * perdidas são contadas em {@link Assinante#getPerdidas()}, para que recarregue o estado pelo
+ * repositório se precisar.</p>
+ *
+ * <p>As sequências recomeçam a cada feed criado (a cada início do processo, por exemplo), e
+ * cada feed tem sua {@link #getEpoca() época}. Um cursor de outra época, ou à frente da última
+ * publicação, não diz nada sobre o que o assinante perdeu: ele é tratado como perdido
+ * ({@link Assinante#isCursorPerdido()}) e o assinante recomeça da mais antiga retida.</p>
+ *
+ * @author Ricardo
+ * @version 1.0
+ */
+public class FeedAlteracoes {
+
+    /** Tipo de alteração publicada. */
+    public enum Tipo {
+        ANALISE_CRIADA, LAUDO_EMITIDO, LEITURA_REGISTRADA
+    }
+
+    public static final int CAPACIDADE_PADRAO = 65536;
+
+    private final long epoca = System.currentTimeMillis();
+    private final int mascara;
+    private final AtomicReferenceArray<Alteracao> anel;
+    /** Última sequência reservada; a primeira alteração tem sequência 1. */
+    private final AtomicLong reservada = new AtomicLong();
+    private final AtomicInteger esperando = new AtomicInteger();
+    private final Object sinal = new Object();
+    private final Set<Assinante> assinantes = ConcurrentHashMap.newKeySet();
+
+    public FeedAlteracoes() {
+        this(CAPACIDADE_PADRAO);
+    }
+
+    /**
+     * @param capacidade alterações retidas no anel; arredondada para a potência de 2 seguinte.
+     */
+    public FeedAlteracoes(int capacidade) {
+        if (capacidade <= 0 || capacidade > 1 << 30) {
+            throw new IllegalArgumentException("Capacidade do feed deve estar entre 1 e 2^30.");
+        }
+        int tamanho = Integer.highestOneBit(capacidade);
+        if (tamanho < capacidade) {
+            tamanho <<= 1;
+        }
+        this.mascara = tamanho - 1;
+        this.anel = new AtomicReferenceArray<>(tamanho);
+    }
+
+    public void publicarAnalise(String laboratorio, AnalisePatologica analise) {
+        int amostra = analise.getAmostra() == null ? 0 : analise.getAmostra().getId();
+        int paciente = analise.getAmostra() == null || analise.getAmostra().getPaciente() == null
+                ? 0 : analise.getAmostra().getPaciente().getId();
+        publicar(Tipo.ANALISE_CRIADA, laboratorio, analise.getId(), amostra, paciente, 0, null);
+    }
+
+    public void publicarLaudo(String laboratorio, AnalisePatologica analise) {
+        int amostra = analise.getAmostra() == null ? 0 : analise.getAmostra().getId();
+        publicar(Tipo.LAUDO_EMITIDO, laboratorio, analise.getId(), amostra, 0, 0, null);
+    }
+
+    /**
+     * @param numero número sequencial da leitura na amostra.
+     */
+    public void publicarLeitura(String laboratorio, Leitor leitor, int numero) {
+        int amostra = leitor.getAmostra() == null ? 0 : leitor.getAmostra().getId();
+        publicar(Tipo.LEITURA_REGISTRADA, laboratorio, 0, amostra, 0, numero,
+                leitor.getSensor() == null ? null : leitor.getSensor().getClass().getSimpleName());
+    }
+
+    private void publicar(Tipo tipo, String laboratorio, int analise, int amostra, int paciente, int leitura,
+                          String sensor) {
+        long sequencia = reservada.incrementAndGet();
+        anel.set((int) sequencia & mascara, new Alteracao(sequencia, System.currentTimeMillis(), tipo, laboratorio,
+                analise, amostra, paciente, leitura, sensor));
+        if (esperando.get() > 0) {
+            synchronized (sinal) {
+                sinal.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Assina a partir da próxima alteração publicada.
+     */
+    public Assinante assinar() {
+        return assinar(reservada.get());
+    }
+
+    /**
+     * Assina a partir da alteração seguinte a {@code desde}, neste feed; se ela já saiu do anel,
+     * a partir da mais antiga retida, contando as anteriores como perdidas.
+     *
+     * @param desde última sequência já recebida pelo assinante; 0 para todas as retidas.
+     */
+    public Assinante assinar(long desde) {
+        return assinar(epoca, desde);
+    }
+
+    /**
+     * Assina a partir de um cursor guardado pelo cliente. Se o cursor for de outra época ou
+     * estiver à frente da última publicação, o assinante começa da mais antiga retida, com
+     * {@link Assinante#isCursorPerdido()} ligado.
+     *
+     * @param epoca época do feed que entregou o cursor.
+     * @param desde última sequência já recebida pelo assinante; 0 para todas as retidas.
+     */
+    public Assinante assinar(long epoca, long desde) {
+        boolean perdido = epoca != this.epoca || desde > reservada.get();
+        Assinante assinante = new Assinante(perdido ? 0 : Math.max(0, desde), perdido);
+        assinantes.add(assinante);
+        return assinante;
+    }
+
+    /** Identifica este feed; sequências de épocas diferentes não são comparáveis. */
+    public long getEpoca() {
+        return epoca;
+    }
+
+    /** Sequência da última alteração reservada para publicação. */
+    public long getSequencia() {
+        return reservada.get();
+    }
+
+    public int getCapacidade() {
+        return mascara + 1;
+    }
+
+    public List<Assinante> getAssinantes() {
+        return new ArrayList<>(assinantes);
+    }
+
+    /**
+     * Leitor do feed com cursor próprio. Deve ser usado por uma thread de cada vez.
+     */
+    public final class Assinante implements AutoCloseable {
+        /** Última sequência entregue. */
+        private volatile long cursor;
+        private volatile long perdidas;
+        private final boolean cursorPerdido;
+
+        private Assinante(long cursor, boolean cursorPerdido) {
+            this.cursor = cursor;
+            this.cursorPerdido = cursorPerdido;
+        }
+
+        /**
+         * Retorna as alterações seguintes ao cursor, esperando até haver alguma.
+         *
+         * @param maximo quantidade máxima de alterações retornadas.
+         * @param esperaMillis tempo máximo de espera; 0 para não esperar.
+         * @return alterações em ordem de sequência; vazia se o prazo acabou sem novidades.
+         */
+        public List<Alteracao> proximas(int maximo, long esperaMillis) throws InterruptedException {
+            List<Alteracao> alteracoes = new ArrayList<>(Math.min(maximo, 64));
+            coletar(alteracoes, maximo);
+            if (!alteracoes.isEmpty() || esperaMillis <= 0) {
+                return alteracoes;
+            }
+            long limite = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(esperaMillis);
+            esperando.incrementAndGet();
+            try {
+                synchronized (sinal) {
+                    // A contagem de quem espera é incrementada antes de conferir o anel, então
+                    // uma publicação feita depois da conferência sempre avisa
+                    while (!disponivel()) {
+                        long restante = limite - System.nanoTime();
+                        if (restante <= 0) {
+                            return alteracoes;
+                        }
+                        TimeUnit.NANOSECONDS.timedWait(sinal, restante);
+                    }
+                }
+            } finally {
+                esperando.decrementAndGet();
+            }
+            coletar(alteracoes, maximo);
+            return alteracoes;
+        }
+
+        private boolean disponivel() {
+            Alteracao alteracao = anel.get((int) (cursor + 1) & mascara);
+            return alteracao != null && alteracao.sequencia > cursor;
+        }
+
+        private void coletar(List<Alteracao> destino, int maximo) {
+            long atual = cursor;
+            while (destino.size() < maximo) {
+                long proxima = atual + 1;
+                Alteracao alteracao = anel.get((int) proxima & mascara);
+                if (alteracao == null || alteracao.sequencia < proxima) {
+                    // Ainda não publicada
+                    break;
+                }
+                if (alteracao.sequencia > proxima) {
+                    // Sobrescrita: recomeça da mais antiga que ainda pode estar no anel
+                    long antiga = Math.max(proxima, reservada.get() - mascara);
+                    perdidas += antiga - proxima;
+                    atual = antiga - 1;
+                    if (antiga == proxima) {
+                        break;
+                    }
+                    continue;
+                }
+                destino.add(alteracao);
+                atual = proxima;
+            }
+            cursor = atual;
+        }
+
+        /** Sequência da última alteração entregue. */
+        public long getCursor() {
+            return cursor;
+        }
+
+        /** Alterações publicadas e ainda não entregues a este assinante. */
+        public long getAtraso() {
+            return reservada.get() - cursor;
+        }
+
+        /** Alterações sobrescritas antes de serem lidas. */
+        public long getPerdidas() {
+            return perdidas;
+        }
+
+        /**
+         * Indica que o cursor pedido não era deste feed (outra época, ou à frente da última
+         * publicação): não há como saber o que foi perdido, e o cliente deve recarregar o estado
+         * pelo repositório.
+         */
+        public boolean isCursorPerdido() {
+            return cursorPerdido;
+        }
+
+        /**
+         * Remove o assinante da lista do feed.
+         */
+        @Override
+        public void close() {
+            assinantes.remove(this);
+        }
+    }
+
+    /**
+     * Alteração publicada no feed. Os campos que não se aplicam ao tipo ficam zerados.
+     */
+    public static final class Alteracao {
+        private final long sequencia;
+        private final long instante;
+        private final Tipo tipo;
+        private final String laboratorio;
+        private final int idAnalise;
+        private final int idAmostra;
+        private final int idPaciente;
+        private final int numeroLeitura;
+        private final String sensor;
+        /** JSON gerado no primeiro pedido e reaproveitado pelos demais assinantes. */
+        private volatile byte[] json;
+
+        private Alteracao(long sequencia, long instante, Tipo tipo, String laboratorio, int idAnalise, int idAmostra,
+                          int idPaciente, int numeroLeitura, String sensor) {
+            this.sequencia = sequencia;
+            this.instante = instante;
+            this.tipo = tipo;
+            this.laboratorio = laboratorio;
+            this.idAnalise = idAnalise;
+            this.idAmostra = idAmostra;
+            this.idPaciente = idPaciente;
+            this.numeroLeitura = numeroLeitura;
+            this.sensor = sensor;
+        }
+
+        public long getSequencia() {
+            return sequencia;
+        }
+
+        /** Momento da publicação, em epoch ms. */
+        public long getInstante() {
+            return instante;
+        }
+
+        public Tipo getTipo() {
+            return tipo;
+        }
+
+        public String getLaboratorio() {
+            return laboratorio;
+        }
+
+        public int getIdAnalise() {
+            return idAnalise;
+        }
+
+        public int getIdAmostra() {
+            return idAmostra;
+        }
+
+        /** Paciente da amostra; só nas análises criadas. */
+        public int getIdPaciente() {
+            return idPaciente;
+        }
+
+        /** Número sequencial da leitura na amostra; só nas leituras. */
+        public int getNumeroLeitura() {
+            return numeroLeitura;
+        }
+
+        /** Classe do sensor; só nas leituras. */
+        public String getSensor() {
+            return sensor;
+        }
+
+        /**
+         * Alteração em JSON (UTF-8). O array é compartilhado e não deve ser modificado.
+         */
+        public byte[] toJson() {
+            byte[] bytes = json;
+            if (bytes == null) {
+                EscritorJson escritor = EscritorJson.local().inicioObjeto()
+                        .campo("sequencia").valor(sequencia)
+                        .campo("instante").valor(instante)
+                        .campo("tipo").valor(tipo.name())
+                        .campo("laboratorio").valor(laboratorio);
+                if (idAnalise != 0) {
+                    escritor.campo("analise").valor(idAnalise);
+                }
+                if (idAmostra != 0) {
+                    escritor.campo("amostra").valor(idAmostra);
+                }
+                if (idPaciente != 0) {
+                    escritor.campo("paciente").valor(idPaciente);
+                }
+                if (numeroLeitura != 0) {
+                    escritor.campo("leitura").valor(numeroLeitura).campo("sensor").valor(sensor);
+                }
+                bytes = escritor.fimObjeto().toByteArray();
+                json = bytes;
+            }
+            return bytes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("#%d %tFT%<tT.%<tL %s %s analise=%d amostra=%d", sequencia, instante, tipo,
+                    laboratorio, idAnalise, idAmostra);
+        }
+    }
+}
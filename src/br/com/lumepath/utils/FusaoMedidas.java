@@ -0,0 +1,90 @@
+package br.com.lumepath.utils;
+
+import br.com.lumepath.bean.Amostra;
+
+/**
+ * Combina as leituras de vários sensores em uma única estimativa de cada medida da amostra.
+ *
+ * <p>Cada medida da {@link Amostra} guarda a estimativa atual e sua incerteza (desvio padrão).
+ * Uma nova leitura, com a incerteza do sensor que a fez, é incorporada com peso inversamente
+ * proporcional à variância, como na atualização de um filtro de Kalman para um valor
+ * constante:</p>
+ * <pre>
+ *     K = P / (P + R)
+ *     x = x + K (z - x)
+ *     P = (1 - K) P
+ * </pre>
+ * <p>onde {@code x} é a estimativa, {@code P} sua variância, {@code z} a leitura e {@code R} a
+ * variância do sensor. A primeira leitura de uma medida vira a estimativa inicial. Como o
+ * estado fica na própria amostra, cada leitura custa um punhado de operações, sem histórico.</p>
+ *
+ * @author Ricardo
+ * @version 1.0
+ */
+public final class FusaoMedidas {
+
+    /** Medidas físicas da amostra. */
+    public enum Medida {
+        ALTURA, COMPRIMENTO, PROFUNDIDADE
+    }
+
+    private FusaoMedidas() {
+    }
+
+    /**
+     * Incorpora a leitura à estimativa da medida na amostra.
+     *
+     * @param amostra amostra medida; recebe a nova estimativa e incerteza.
+     * @param medida medida lida.
+     * @param leitura valor lido, em mm.
+     * @param incertezaSensor desvio padrão do sensor, em mm; deve ser maior que zero.
+     */
+    public static void incorporar(Amostra amostra, Medida medida, double leitura, double incertezaSensor) {
+        if (!(incertezaSensor > 0)) {
+            throw new IllegalArgumentException("Incerteza do sensor deve ser maior que zero.");
+        }
+        synchronized (amostra) {
+            double estimativa;
+            double incerteza;
+            switch (medida) {
+                case ALTURA:
+                    estimativa = amostra.getAltura();
+                    incerteza = amostra.getIncertezaAltura();
+                    break;
+                case COMPRIMENTO:
+                    estimativa = amostra.getComprimento();
+                    incerteza = amostra.getIncertezaComprimento();
+                    break;
+                default:
+                    estimativa = amostra.getProfundidade();
+                    incerteza = amostra.getIncertezaProfundidade();
+                    break;
+            }
+
+            if (incerteza == 0) {
+                estimativa = leitura;
+                incerteza = incertezaSensor;
+            } else {
+                double variancia = incerteza * incerteza;
+                double ganho = variancia / (variancia + incertezaSensor * incertezaSensor);
+                estimativa += ganho * (leitura - estimativa);
+                incerteza = Math.sqrt((1 - ganho) * variancia);
+            }
+
+            switch (medida) {
+                case ALTURA:
+                    amostra.setAltura(estimativa);
+                    amostra.setIncertezaAltura(incerteza);
+                    break;
+                case COMPRIMENTO:
+                    amostra.setComprimento(estimativa);
+                    amostra.setIncertezaComprimento(incerteza);
+                    break;
+                default:
+                    amostra.setProfundidade(estimativa);
+                    amostra.setIncertezaProfundidade(incerteza);
+                    break;
+            }
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package br.com.lumepath.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Gera IDs de entidades sem sequência central, para que várias estações criem registros ao
+ * mesmo tempo sem colisão.
+ *
+ * <p>Os IDs continuam sendo {@code int} positivos (31 bits), para não mudar os beans, os
+ * índices e os formatos gravados. Cada estação tem seu contador, e o número da estação fica
+ * nos bits mais baixos:</p>
+ * <pre>
+ *     | contador da estação | estação |
+ *     |       27 bits       | 4 bits  |
+ * </pre>
+ * <p>Com a divisão padrão cabem 16 estações e cerca de 134 milhões de IDs por estação e tipo
+ * de entidade. Os IDs de uma estação são crescentes, e os das várias estações se intercalam,
+ * então os índices recebem inserções quase em ordem. Quem precisar de outra divisão usa o
+ * construtor completo.</p>
+ *
+ * <p>O contador é reservado em blocos: o fim do bloco reservado fica gravado no arquivo de
+ * estado, que é atualizado (e forçado em disco) só quando um bloco acaba. Um gerador
+ * reiniciado continua depois do último bloco reservado, sem repetir IDs e sem depender do
+ * relógio; os IDs não usados do bloco anterior são descartados. A vazão não tem limite de
+ * tempo: uma importação em massa grava o estado uma vez a cada bloco.</p>
+ *
+ * <p>Cada tipo de entidade tem seu gerador, ou seja, seu próprio espaço de IDs. A estação é
+ * lida da propriedade de sistema {@value #PROPRIEDADE_ESTACAO}, obrigatória para gerar IDs,
+ * e os arquivos de estado ficam no diretório da propriedade {@value #PROPRIEDADE_DIRETORIO}
+ * (padrão, o diretório atual).</p>
+ *
+ * @author Ricardo
+ * @version 1.0
+ */
+public final class GeradorId implements Closeable {
+
+    public static final String PROPRIEDADE_ESTACAO = "lumepath.estacao";
+    public static final String PROPRIEDADE_DIRETORIO = "lumepath.ids";
+
+    public static final int BITS_ESTACAO_PADRAO = 4;
+
+    /** IDs reservados de cada vez no arquivo de estado. */
+    public static final int BLOCO_PADRAO = 1024;
+
+    private static final int BITS_ID = 31;
+
+    private static final Map<String, GeradorId> PADROES = new ConcurrentHashMap<>();
+
+    private final int estacao;
+    private final int bitsEstacao;
+    private final int tamanhoBloco;
+    private final long maiorContador;
+    private final FileChannel estado;
+    private final ByteBuffer registro = ByteBuffer.allocate(Long.BYTES);
+
+    /** Próximo valor do contador. */
+    private long contador;
+    /** Fim (exclusivo) do bloco reservado. */
+    private long limite;
+
+    /**
+     * Gerador com a divisão padrão.
+     *
+     * @param estacao número da estação, de 0 a 15.
+     * @param arquivoEstado onde o fim do bloco reservado é gravado; {@code null} para não
+     *                      gravar, caso em que um gerador reiniciado repete os IDs.
+     */
+    public GeradorId(int estacao, Path arquivoEstado) throws IOException {
+        this(estacao, BITS_ESTACAO_PADRAO, BLOCO_PADRAO, arquivoEstado);
+    }
+
+    /**
+     * @param estacao número da estação, menor que {@code 2^bitsEstacao}.
+     * @param bitsEstacao bits reservados para a estação.
+     * @param tamanhoBloco IDs reservados de cada vez no arquivo de estado.
+     * @param arquivoEstado onde o fim do bloco reservado é gravado; {@code null} para não gravar.
+     */
+    public GeradorId(int estacao, int bitsEstacao, int tamanhoBloco, Path arquivoEstado) throws IOException {
+        if (bitsEstacao < 0 || bitsEstacao > BITS_ID - 16) {
+            throw new IllegalArgumentException("Divisão de bits deixa menos de 16 bits para o contador.");
+        }
+        if (estacao < 0 || estacao >= 1 << bitsEstacao) {
+            throw new IllegalArgumentException("Estação deve estar entre 0 e " + ((1 << bitsEstacao) - 1) + ".");
+        }
+        if (tamanhoBloco <= 0) {
+            throw new IllegalArgumentException("Tamanho do bloco deve ser maior que zero.");
+        }
+        this.estacao = estacao;
+        this.bitsEstacao = bitsEstacao;
+        this.tamanhoBloco = tamanhoBloco;
+        this.maiorContador = (1L << (BITS_ID - bitsEstacao)) - 1;
+
+        // O contador começa em 1 para que a estação 0 nunca gere o ID 0
+        long reservado = 1;
+        if (arquivoEstado == null) {
+            this.estado = null;
+        } else {
+            this.estado = FileChannel.open(arquivoEstado, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            if (estado.size() >= Long.BYTES) {
+                estado.read(registro, 0);
+                reservado = Math.max(1, registro.flip().getLong());
+            }
+        }
+        this.contador = reservado;
+        this.limite = reservado;
+    }
+
+    /**
+     * @return próximo ID, sempre maior que os anteriores deste gerador.
+     * @throws IllegalStateException se o contador passou do que cabe nos bits.
+     * @throws UncheckedIOException se o arquivo de estado não puder ser gravado.
+     */
+    public synchronized int proximo() {
+        if (contador > maiorContador) {
+            throw new IllegalStateException("IDs da estação " + estacao + " esgotados.");
+        }
+        if (contador >= limite) {
+            long novoLimite = Math.min(contador + tamanhoBloco, maiorContador + 1);
+            // Grava antes de entregar qualquer ID do bloco
+            gravarEstado(novoLimite);
+            limite = novoLimite;
+        }
+        return (int) (contador++ << bitsEstacao) | estacao;
+    }
+
+    public static int proximoPaciente() {
+        return padrao("paciente").proximo();
+    }
+
+    public static int proximaAmostra() {
+        return padrao("amostra").proximo();
+    }
+
+    public static int proximaAnalise() {
+        return padrao("analise").proximo();
+    }
+
+    /**
+     * Estação configurada em {@value #PROPRIEDADE_ESTACAO}.
+     *
+     * @throws IllegalStateException se a propriedade não estiver definida, não for um número ou
+     *                               estiver fora do intervalo da divisão padrão.
+     */
+    public static int getEstacaoConfigurada() {
+        String estacao = System.getProperty(PROPRIEDADE_ESTACAO);
+        int maior = (1 << BITS_ESTACAO_PADRAO) - 1;
+        if (estacao == null || estacao.trim().isEmpty()) {
+            throw new IllegalStateException("Estação não configurada: defina -D" + PROPRIEDADE_ESTACAO
+                    + " com um número de 0 a " + maior + ", diferente em cada estação.");
+        }
+        int numero;
+        try {
+            numero = Integer.parseInt(estacao.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException("Estação inválida em -D" + PROPRIEDADE_ESTACAO + ": " + estacao);
+        }
+        if (numero < 0 || numero > maior) {
+            throw new IllegalStateException("Estação em -D" + PROPRIEDADE_ESTACAO + " deve estar entre 0 e "
+                    + maior + ": " + estacao);
+        }
+        return numero;
+    }
+
+    /**
+     * Indica se a propriedade {@value #PROPRIEDADE_ESTACAO} foi definida, ou seja, se esta
+     * estação gera IDs. Não valida o valor.
+     */
+    public static boolean isEstacaoDefinida() {
+        String estacao = System.getProperty(PROPRIEDADE_ESTACAO);
+        return estacao != null && !estacao.trim().isEmpty();
+    }
+
+    /** Estação de um ID gerado com a divisão padrão. */
+    public static int estacao(int id) {
+        return id & ((1 << BITS_ESTACAO_PADRAO) - 1);
+    }
+
+    public int getEstacao() {
+        return estacao;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (estado != null) {
+            estado.close();
+        }
+    }
+
+    private void gravarEstado(long novoLimite) {
+        if (estado == null) {
+            return;
+        }
+        try {
+            registro.clear();
+            registro.putLong(novoLimite).flip();
+            while (registro.hasRemaining()) {
+                estado.write(registro, registro.position());
+            }
+            estado.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Não foi possível gravar o estado do gerador de IDs.", e);
+        }
+    }
+
+    /**
+     * Gerador padrão do tipo de entidade, criado no primeiro uso.
+     *
+     * @throws IllegalStateException se a estação não estiver configurada.
+     */
+    private static GeradorId padrao(String entidade) {
+        GeradorId gerador = PADROES.get(entidade);
+        return gerador != null ? gerador : PADROES.computeIfAbsent(entidade, GeradorId::criarPadrao);
+    }
+
+    private static GeradorId criarPadrao(String entidade) {
+        int estacao = getEstacaoConfigurada();
+        Path diretorio = Path.of(System.getProperty(PROPRIEDADE_DIRETORIO, "."));
+        try {
+            return new GeradorId(estacao, diretorio.resolve("ids-" + entidade + ".estado"));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Não foi possível abrir o estado do gerador de IDs de " + entidade, e);
+        }
+    }
+}
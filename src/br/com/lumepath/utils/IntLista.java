@@ -0,0 +1,152 @@
+package br.com.lumepath.utils;
+
+import java.util.Arrays;
+
+/**
+ * Lista de {@code int} sobre um array que cresce conforme necessário, sem boxing.
+ *
+ * <p>Usada nas listas de adjacência entre entidades (ex.: IDs das análises de um patologista).
+ * Quem guarda uma lista e a expõe entrega {@link #somenteLeitura()}, para que ninguém altere o
+ * índice de fora. Não é thread-safe.</p>
+ *
+ * @author Ricardo
+ * @version 1.0
+ */
+public class IntLista {
+
+    private int[] valores;
+    private int tamanho;
+    /** Visão somente leitura, criada no primeiro pedido. */
+    private IntLista visao;
+
+    public IntLista() {
+        this(4);
+    }
+
+    public IntLista(int capacidadeInicial) {
+        valores = new int[Math.max(1, capacidadeInicial)];
+    }
+
+    public void add(int valor) {
+        if (tamanho == valores.length) {
+            valores = Arrays.copyOf(valores, valores.length * 2);
+        }
+        valores[tamanho++] = valor;
+    }
+
+    public int get(int indice) {
+        if (indice >= tamanho) {
+            throw new IndexOutOfBoundsException("Índice " + indice + ", tamanho " + tamanho);
+        }
+        return valores[indice];
+    }
+
+    public int size() {
+        return tamanho;
+    }
+
+    public boolean isEmpty() {
+        return tamanho == 0;
+    }
+
+    public boolean contains(int valor) {
+        return indexOf(valor) >= 0;
+    }
+
+    public int indexOf(int valor) {
+        for (int i = 0; i < tamanho; i++) {
+            if (valores[i] == valor) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Remove a primeira ocorrência do valor, mantendo a ordem dos demais.
+     *
+     * @return {@code true} se o valor estava na lista.
+     */
+    public boolean removeValor(int valor) {
+        int i = indexOf(valor);
+        if (i < 0) {
+            return false;
+        }
+        System.arraycopy(valores, i + 1, valores, i, tamanho - i - 1);
+        tamanho--;
+        return true;
+    }
+
+    public void clear() {
+        tamanho = 0;
+    }
+
+    public int[] toArray() {
+        return Arrays.copyOf(valores, tamanho);
+    }
+
+    /**
+     * Visão que acompanha esta lista mas recusa alterações com
+     * {@link UnsupportedOperationException}.
+     */
+    public IntLista somenteLeitura() {
+        if (visao == null) {
+            visao = new SomenteLeitura(this);
+        }
+        return visao;
+    }
+
+    private static final class SomenteLeitura extends IntLista {
+        private final IntLista origem;
+
+        private SomenteLeitura(IntLista origem) {
+            super(1);
+            this.origem = origem;
+        }
+
+        @Override
+        public void add(int valor) {
+            throw new UnsupportedOperationException("Lista somente leitura.");
+        }
+
+        @Override
+        public int get(int indice) {
+            return origem.get(indice);
+        }
+
+        @Override
+        public int size() {
+            return origem.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return origem.isEmpty();
+        }
+
+        @Override
+        public int indexOf(int valor) {
+            return origem.indexOf(valor);
+        }
+
+        @Override
+        public boolean removeValor(int valor) {
+            throw new UnsupportedOperationException("Lista somente leitura.");
+        }
+
+        @Override
+        public void clear() {
+            throw new UnsupportedOperationException("Lista somente leitura.");
+        }
+
+        @Override
+        public int[] toArray() {
+            return origem.toArray();
+        }
+
+        @Override
+        public IntLista somenteLeitura() {
+            return this;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package br.com.lumepath.utils;
+
+import java.util.Arrays;
+
+/**
+ * Mapa de chave {@code int} para objeto, com endereçamento aberto e sondagem linear.
+ *
+ * <p>As chaves ficam em um {@code int[]} e os valores em um {@code Object[]} paralelo, sem
+ * boxing e sem um objeto de entrada por elemento. Uma posição está livre quando o valor é
+ * {@code null}, por isso valores nulos não são aceitos. A remoção desloca os elementos
+ * seguintes para trás, então não há marcadores de remoção acumulando.</p>
+ *
+ * <p>Não é thread-safe.</p>
+ *
+ * @param <V> tipo dos valores.
+ * @author Ricardo
+ * @version 1.0
+ */
+public class IntObjetoMap<V> {
+
+    /** Fração máxima de ocupação antes de dobrar a capacidade. */
+    private static final float CARGA_MAXIMA = 0.6f;
+
+    private int[] chaves;
+    private Object[] valores;
+    private int mascara;
+    private int tamanho;
+    private int limite;
+
+    public IntObjetoMap() {
+        this(16);
+    }
+
+    /**
+     * @param capacidadeEsperada quantidade de elementos prevista, evita redimensionamentos.
+     */
+    public IntObjetoMap(int capacidadeEsperada) {
+        int capacidade = Integer.highestOneBit(Math.max(4, (int) (capacidadeEsperada / CARGA_MAXIMA)) * 2 - 1);
+        alocar(capacidade);
+    }
+
+    public int size() {
+        return tamanho;
+    }
+
+    public boolean isEmpty() {
+        return tamanho == 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(int chave) {
+        int i = indice(chave);
+        while (valores[i] != null) {
+            if (chaves[i] == chave) {
+                return (V) valores[i];
+            }
+            i = (i + 1) & mascara;
+        }
+        return null;
+    }
+
+    public boolean containsKey(int chave) {
+        return get(chave) != null;
+    }
+
+    /**
+     * Associa o valor à chave.
+     *
+     * @return valor anterior da chave, ou {@code null}.
+     */
+    @SuppressWarnings("unchecked")
+    public V put(int chave, V valor) {
+        if (valor == null) {
+            throw new IllegalArgumentException("Valor não pode ser nulo.");
+        }
+        int i = indice(chave);
+        while (valores[i] != null) {
+            if (chaves[i] == chave) {
+                V anterior = (V) valores[i];
+                valores[i] = valor;
+                return anterior;
+            }
+            i = (i + 1) & mascara;
+        }
+        chaves[i] = chave;
+        valores[i] = valor;
+        if (++tamanho > limite) {
+            redimensionar(valores.length * 2);
+        }
+        return null;
+    }
+
+    /**
+     * Remove a chave.
+     *
+     * @return valor removido, ou {@code null} se a chave não existia.
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(int chave) {
+        int i = indice(chave);
+        while (valores[i] != null) {
+            if (chaves[i] == chave) {
+                V removido = (V) valores[i];
+                deslocarApos(i);
+                tamanho--;
+                return removido;
+            }
+            i = (i + 1) & mascara;
+        }
+        return null;
+    }
+
+    public void clear() {
+        Arrays.fill(valores, null);
+        tamanho = 0;
+    }
+
+    /**
+     * Percorre todos os pares, em ordem indefinida.
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(Visitante<? super V> visitante) {
+        for (int i = 0; i < valores.length; i++) {
+            if (valores[i] != null) {
+                visitante.visitar(chaves[i], (V) valores[i]);
+            }
+        }
+    }
+
+    /**
+     * Recebe cada par chave/valor em {@link #forEach}.
+     */
+    public interface Visitante<V> {
+        void visitar(int chave, V valor);
+    }
+
+    /**
+     * Remove o elemento na posição {@code livre} e puxa para trás os elementos do mesmo
+     * agrupamento que deixariam de ser encontrados.
+     */
+    private void deslocarApos(int livre) {
+        int i = livre;
+        while (true) {
+            i = (i + 1) & mascara;
+            if (valores[i] == null) {
+                break;
+            }
+            int ideal = indice(chaves[i]);
+            // Move se a posição ideal do elemento não estiver entre a livre e a atual
+            boolean mover = livre <= i ? (ideal <= livre || ideal > i) : (ideal <= livre && ideal > i);
+            if (mover) {
+                chaves[livre] = chaves[i];
+                valores[livre] = valores[i];
+                livre = i;
+            }
+        }
+        valores[livre] = null;
+    }
+
+    private int indice(int chave) {
+        int h = chave * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mascara;
+    }
+
+    private void alocar(int capacidade) {
+        chaves = new int[capacidade];
+        valores = new Object[capacidade];
+        mascara = capacidade - 1;
+        limite = (int) (capacidade * CARGA_MAXIMA);
+    }
+
+    private void redimensionar(int capacidade) {
+        int[] chavesAntigas = chaves;
+        Object[] valoresAntigos = valores;
+        alocar(capacidade);
+        for (int i = 0; i < valoresAntigos.length; i++) {
+            if (valoresAntigos[i] != null) {
+                int j = indice(chavesAntigas[i]);
+                while (valores[j] != null) {
+                    j = (j + 1) & mascara;
+                }
+                chaves[j] = chavesAntigas[i];
+                valores[j] = valoresAntigos[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package br.com.lumepath.utils;
+
+import br.com.lumepath.bean.Amostra;
+import br.com.lumepath.bean.AnalisePatologica;
+import br.com.lumepath.bean.PatologistaResponsavel;
+
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache limitado de laudos já renderizados, indexado pelo ID da {@link AnalisePatologica}.
+ *
+ * <p>Cada entrada guarda referências fracas à análise, à amostra e ao patologista usados na
+ * renderização, junto com suas versões. Só há acerto se forem os mesmos objetos (e não apenas
+ * o mesmo ID, que pode se repetir entre laboratórios ou entre análises diferentes) e nenhum
+ * deles tiver sido alterado desde então: qualquer setter incrementa a versão do objeto, e a
+ * próxima leitura renderiza o laudo novamente. Como as referências são fracas, o cache não
+ * mantém vivos os beans: uma análise descartada em outro lugar deixa só o laudo na entrada,
+ * que não terá mais acerto e sai pela ordem de uso.</p>
+ *
+ * <p>O tamanho é controlado pelo peso: a quantidade de caracteres do laudo mais
+ * {@value #SOBRECARGA_ENTRADA} por entrada, que cobre a entrada, as três referências e o nó do
+ * mapa. Assim o peso máximo limita a memória ocupada pelo cache, mesmo com laudos curtos.
+ * Quando o peso máximo é excedido, as entradas menos usadas recentemente são removidas.</p>
+ *
+ * @author Ricardo
+ * @version 1.0
+ */
+public class LaudoCache {
+
+    /** Peso máximo padrão: cerca de 8 milhões de caracteres. */
+    public static final long PESO_MAXIMO_PADRAO = 8_000_000L;
+
+    /** Peso fixo de cada entrada, em caracteres (cerca de 200 bytes). */
+    public static final int SOBRECARGA_ENTRADA = 100;
+
+    private static final LaudoCache PADRAO = new LaudoCache(PESO_MAXIMO_PADRAO);
+
+    private final long pesoMaximo;
+    private long pesoAtual;
+    private long acertos;
+    private long falhas;
+
+    /** Mapa em ordem de acesso, o primeiro elemento é o menos usado recentemente. */
+    private final LinkedHashMap<Integer, Entrada> entradas = new LinkedHashMap<>(256, 0.75f, true);
+
+    /**
+     * Cria um cache com o peso máximo informado.
+     *
+     * @param pesoMaximo soma máxima do peso das entradas: caracteres dos laudos mais
+     *                   {@value #SOBRECARGA_ENTRADA} por entrada.
+     */
+    public LaudoCache(long pesoMaximo) {
+        if (pesoMaximo <= 0) {
+            throw new IllegalArgumentException("Peso máximo deve ser maior que zero.");
+        }
+        this.pesoMaximo = pesoMaximo;
+    }
+
+    /**
+     * Retorna o cache compartilhado usado por {@link AnalisePatologica#emitirLaudo()}.
+     */
+    public static LaudoCache getPadrao() {
+        return PADRAO;
+    }
+
+    /**
+     * Obtém o laudo da análise, renderizando apenas se não houver entrada válida.
+     *
+     * @param analise análise cujo laudo será emitido.
+     * @return laudo formatado.
+     */
+    public String obter(AnalisePatologica analise) {
+        Amostra amostra = analise.getAmostra();
+        PatologistaResponsavel patologista = analise.getPatologistaResponsavel();
+        int versaoAmostra = amostra == null ? -1 : amostra.getVersao();
+        int versaoPatologista = patologista == null ? -1 : patologista.getVersao();
+
+        synchronized (this) {
+            Entrada entrada = entradas.get(analise.getId());
+            if (entrada != null && entrada.confere(analise, amostra, patologista, analise.getVersao(), versaoAmostra,
+                    versaoPatologista)) {
+                acertos++;
+                return entrada.laudo;
+            }
+            falhas++;
+        }
+
+        // A renderização fica fora do bloqueio para não serializar leitores de outros laudos
+        String laudo = analise.renderizarLaudo();
+        guardar(analise.getId(), new Entrada(analise, amostra, patologista, analise.getVersao(), versaoAmostra,
+                versaoPatologista, laudo));
+        return laudo;
+    }
+
+    /**
+     * Remove a entrada de uma análise, se existir.
+     *
+     * @param idAnalise ID da análise.
+     */
+    public synchronized void invalidar(int idAnalise) {
+        Entrada removida = entradas.remove(idAnalise);
+        if (removida != null) {
+            pesoAtual -= removida.peso();
+        }
+    }
+
+    /**
+     * Remove todas as entradas do cache.
+     */
+    public synchronized void limpar() {
+        entradas.clear();
+        pesoAtual = 0;
+    }
+
+    public synchronized int getTamanho() {
+        return entradas.size();
+    }
+
+    public synchronized long getPesoAtual() {
+        return pesoAtual;
+    }
+
+    public long getPesoMaximo() {
+        return pesoMaximo;
+    }
+
+    public synchronized long getAcertos() {
+        return acertos;
+    }
+
+    public synchronized long getFalhas() {
+        return falhas;
+    }
+
+    private synchronized void guardar(int idAnalise, Entrada nova) {
+        // Laudos maiores que o orçamento inteiro não são guardados
+        if (nova.peso() > pesoMaximo) {
+            return;
+        }
+        Entrada anterior = entradas.put(idAnalise, nova);
+        if (anterior != null) {
+            pesoAtual -= anterior.peso();
+        }
+        pesoAtual += nova.peso();
+
+        Iterator<Map.Entry<Integer, Entrada>> it = entradas.entrySet().iterator();
+        while (pesoAtual > pesoMaximo && it.hasNext()) {
+            pesoAtual -= it.next().getValue().peso();
+            it.remove();
+        }
+    }
+
+    /**
+     * Laudo renderizado junto com os objetos usados para gerá-lo e suas versões.
+     */
+    private static final class Entrada {
+        private final WeakReference<AnalisePatologica> analise;
+        /** {@code null} se a análise não tinha amostra. */
+        private final WeakReference<Amostra> amostra;
+        /** {@code null} se a análise não tinha patologista. */
+        private final WeakReference<PatologistaResponsavel> patologista;
+        private final int versaoAnalise;
+        private final int versaoAmostra;
+        private final int versaoPatologista;
+        private final String laudo;
+
+        private Entrada(AnalisePatologica analise, Amostra amostra, PatologistaResponsavel patologista,
+                        int versaoAnalise, int versaoAmostra, int versaoPatologista, String laudo) {
+            this.analise = new WeakReference<>(analise);
+            this.amostra = amostra == null ? null : new WeakReference<>(amostra);
+            this.patologista = patologista == null ? null : new WeakReference<>(patologista);
+            this.versaoAnalise = versaoAnalise;
+            this.versaoAmostra = versaoAmostra;
+            this.versaoPatologista = versaoPatologista;
+            this.laudo = laudo;
+        }
+
+        private boolean confere(AnalisePatologica analise, Amostra amostra, PatologistaResponsavel patologista,
+                                int versaoAnalise, int versaoAmostra, int versaoPatologista) {
+            return mesmo(this.analise, analise)
+                    && mesmo(this.amostra, amostra)
+                    && mesmo(this.patologista, patologista)
+                    && this.versaoAnalise == versaoAnalise
+                    && this.versaoAmostra == versaoAmostra
+                    && this.versaoPatologista == versaoPatologista;
+        }
+
+        private long peso() {
+            return laudo.length() + SOBRECARGA_ENTRADA;
+        }
+
+        private static boolean mesmo(WeakReference<?> referencia, Object objeto) {
+            return referencia == null ? objeto == null : referencia.get() == objeto;
+        }
+    }
+}
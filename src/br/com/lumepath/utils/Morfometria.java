@@ -0,0 +1,328 @@
+package br.com.lumepath.utils;
+
+import br.com.lumepath.bean.Amostra;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Grandezas derivadas das medidas físicas de uma {@link Amostra}.
+ *
+ * <p>A amostra é aproximada por um elipsoide cujos eixos são a altura, o comprimento e a
+ * profundidade:</p>
+ * <ul>
+ *     <li>volume: {@code π/6 · a · b · c} (fórmula do elipsoide, usual para peças cirúrgicas);</li>
+ *     <li>área superficial: aproximação de Knud Thomsen, com erro relativo abaixo de 1,1%;</li>
+ *     <li>razão de aspecto: maior dimensão sobre a menor;</li>
+ *     <li>esfericidade: área da esfera de mesmo volume sobre a área da amostra (1 para a esfera);</li>
+ *     <li>categoria de tamanho: pela maior dimensão, com limites por local anatômico.</li>
+ * </ul>
+ *
+ * <p>Os cálculos existem por amostra e em lote ({@link Lote}), sobre vetores paralelos de
+ * medidas, para relatórios e conferências sobre o acervo inteiro. O ganho do lote vem do acesso
+ * sequencial a vetores de {@code double} e de resolver os limites de cada local uma só vez. Não
+ * conte com vetorização automática: a soma dos volumes é uma redução em ponto flutuante, que o
+ * JIT não reordena; a área e a esfericidade chamam {@code Math.pow} e {@code Math.cbrt}; e os
+ * testes que produzem {@code NaN} são desvios. Só o laço do volume e o de mínimo e máximo são
+ * candidatos, conforme a JVM.</p>
+ *
+ * @author Ricardo
+ * @version 1.0
+ */
+public final class Morfometria {
+
+    /** Categoria de tamanho da amostra, pela maior dimensão. */
+    public enum Categoria {
+        DIMINUTA, PEQUENA, MEDIA, GRANDE
+    }
+
+    /** Expoente da aproximação de Knud Thomsen para a área do elipsoide. */
+    private static final double P = 1.6075;
+    private static final double INVERSO_P = 1 / P;
+    private static final double SEXTO_PI = Math.PI / 6;
+
+    /** Limites (mm) entre as categorias quando o local anatômico não tem limites próprios. */
+    private static final double[] LIMITES_PADRAO = {2, 10, 30};
+
+    /** Limites por local anatômico normalizado (sem acentos, minúsculo). */
+    private static final Map<String, double[]> LIMITES = new ConcurrentHashMap<>();
+
+    /** Maior quantidade de locais anatômicos, como digitados, guardados em {@link #RESOLVIDOS}. */
+    private static final int MAXIMO_RESOLVIDOS = 1024;
+
+    /**
+     * Limites já resolvidos por local anatômico como digitado, para não normalizar a cada chamada.
+     * O local é texto livre, então o mapa para de crescer em {@link #MAXIMO_RESOLVIDOS}; os
+     * locais seguintes são normalizados a cada chamada.
+     */
+    private static final Map<String, double[]> RESOLVIDOS = new ConcurrentHashMap<>();
+
+    static {
+        definirLimites("Pele", 2, 6, 15);
+        definirLimites("Mama", 5, 20, 50);
+        definirLimites("Próstata", 1, 5, 20);
+    }
+
+    private Morfometria() {
+    }
+
+    /**
+     * Define os limites de tamanho de um local anatômico.
+     *
+     * @param localAnatomico local, comparado sem acentos e sem diferenciar maiúsculas.
+     * @param pequena maior dimensão, em mm, a partir da qual a amostra deixa de ser diminuta.
+     * @param media maior dimensão a partir da qual a amostra é média.
+     * @param grande maior dimensão a partir da qual a amostra é grande.
+     */
+    public static void definirLimites(String localAnatomico, double pequena, double media, double grande) {
+        if (!(pequena > 0 && pequena < media && media < grande)) {
+            throw new IllegalArgumentException("Limites devem ser positivos e crescentes.");
+        }
+        LIMITES.put(normalizar(localAnatomico), new double[]{pequena, media, grande});
+        RESOLVIDOS.clear();
+    }
+
+    public static double volume(double altura, double comprimento, double profundidade) {
+        return SEXTO_PI * altura * comprimento * profundidade;
+    }
+
+    public static double areaSuperficial(double altura, double comprimento, double profundidade) {
+        double a = Math.pow(altura / 2, P);
+        double b = Math.pow(comprimento / 2, P);
+        double c = Math.pow(profundidade / 2, P);
+        return 4 * Math.PI * Math.pow((a * b + a * c + b * c) / 3, INVERSO_P);
+    }
+
+    /**
+     * @return maior dimensão sobre a menor; {@code NaN} se alguma dimensão for zero.
+     */
+    public static double razaoDeAspecto(double altura, double comprimento, double profundidade) {
+        double menor = Math.min(altura, Math.min(comprimento, profundidade));
+        double maior = Math.max(altura, Math.max(comprimento, profundidade));
+        return menor > 0 ? maior / menor : Double.NaN;
+    }
+
+    /**
+     * @return esfericidade entre 0 e 1; {@code NaN} se alguma dimensão for zero.
+     */
+    public static double esfericidade(double altura, double comprimento, double profundidade) {
+        double area = areaSuperficial(altura, comprimento, profundidade);
+        double volume = volume(altura, comprimento, profundidade);
+        return volume > 0 ? Math.cbrt(Math.PI) * Math.pow(6 * volume, 2.0 / 3) / area : Double.NaN;
+    }
+
+    public static Categoria categoria(String localAnatomico, double altura, double comprimento, double profundidade) {
+        double maior = Math.max(altura, Math.max(comprimento, profundidade));
+        double[] limites = limites(localAnatomico);
+        if (maior < limites[0]) {
+            return Categoria.DIMINUTA;
+        }
+        if (maior < limites[1]) {
+            return Categoria.PEQUENA;
+        }
+        return maior < limites[2] ? Categoria.MEDIA : Categoria.GRANDE;
+    }
+
+    public static double volume(Amostra amostra) {
+        return volume(amostra.getAltura(), amostra.getComprimento(), amostra.getProfundidade());
+    }
+
+    public static double areaSuperficial(Amostra amostra) {
+        return areaSuperficial(amostra.getAltura(), amostra.getComprimento(), amostra.getProfundidade());
+    }
+
+    public static double razaoDeAspecto(Amostra amostra) {
+        return razaoDeAspecto(amostra.getAltura(), amostra.getComprimento(), amostra.getProfundidade());
+    }
+
+    public static double esfericidade(Amostra amostra) {
+        return esfericidade(amostra.getAltura(), amostra.getComprimento(), amostra.getProfundidade());
+    }
+
+    public static Categoria categoria(Amostra amostra) {
+        return categoria(amostra.getLocalAnatomico(), amostra.getAltura(), amostra.getComprimento(),
+                amostra.getProfundidade());
+    }
+
+    private static double[] limites(String localAnatomico) {
+        if (localAnatomico == null) {
+            return LIMITES_PADRAO;
+        }
+        double[] limites = RESOLVIDOS.get(localAnatomico);
+        if (limites == null) {
+            limites = LIMITES.getOrDefault(normalizar(localAnatomico), LIMITES_PADRAO);
+            if (RESOLVIDOS.size() < MAXIMO_RESOLVIDOS) {
+                RESOLVIDOS.put(localAnatomico, limites);
+            }
+        }
+        return limites;
+    }
+
+    private static String normalizar(String texto) {
+        return Normalizer.normalize(texto.trim(), Normalizer.Form.NFD).replaceAll("\\p{M}", "").toLowerCase();
+    }
+
+    /**
+     * Medidas de muitas amostras em vetores paralelos (uma posição por amostra) e as grandezas
+     * calculadas sobre elas.
+     *
+     * <p>Guardar cada medida em seu próprio vetor, em vez de percorrer objetos {@link Amostra},
+     * mantém os dados contíguos na memória e deixa cada laço de {@link #calcular()} trabalhar
+     * sobre uma única grandeza. Amostras sem alguma das medidas ficam com razão de aspecto e
+     * esfericidade {@code NaN} e são contadas em {@link #getIncompletas()}.</p>
+     */
+    public static final class Lote {
+
+        private final int tamanho;
+        private final int[] ids;
+        private final double[] alturas;
+        private final double[] comprimentos;
+        private final double[] profundidades;
+
+        /** Limites de tamanho do local anatômico de cada amostra, resolvidos uma vez. */
+        private final double[] limitesPequena;
+        private final double[] limitesMedia;
+        private final double[] limitesGrande;
+
+        private final double[] maiores;
+        private final double[] volumes;
+        private final double[] areas;
+        private final double[] razoes;
+        private final double[] esfericidades;
+        private final Categoria[] categorias;
+
+        private final int[] porCategoria = new int[Categoria.values().length];
+        private double volumeTotal;
+        private int incompletas;
+
+        public Lote(Collection<Amostra> amostras) {
+            this.tamanho = amostras.size();
+            this.ids = new int[tamanho];
+            this.alturas = new double[tamanho];
+            this.comprimentos = new double[tamanho];
+            this.profundidades = new double[tamanho];
+            this.limitesPequena = new double[tamanho];
+            this.limitesMedia = new double[tamanho];
+            this.limitesGrande = new double[tamanho];
+            int i = 0;
+            for (Amostra amostra : amostras) {
+                ids[i] = amostra.getId();
+                alturas[i] = amostra.getAltura();
+                comprimentos[i] = amostra.getComprimento();
+                profundidades[i] = amostra.getProfundidade();
+                double[] limites = limites(amostra.getLocalAnatomico());
+                limitesPequena[i] = limites[0];
+                limitesMedia[i] = limites[1];
+                limitesGrande[i] = limites[2];
+                i++;
+            }
+            this.maiores = new double[tamanho];
+            this.volumes = new double[tamanho];
+            this.areas = new double[tamanho];
+            this.razoes = new double[tamanho];
+            this.esfericidades = new double[tamanho];
+            this.categorias = new Categoria[tamanho];
+        }
+
+        /**
+         * Calcula todas as grandezas do lote.
+         *
+         * @return o próprio lote.
+         */
+        public Lote calcular() {
+            double total = 0;
+            for (int i = 0; i < tamanho; i++) {
+                volumes[i] = SEXTO_PI * alturas[i] * comprimentos[i] * profundidades[i];
+                total += volumes[i];
+            }
+            volumeTotal = total;
+
+            for (int i = 0; i < tamanho; i++) {
+                double menor = Math.min(alturas[i], Math.min(comprimentos[i], profundidades[i]));
+                maiores[i] = Math.max(alturas[i], Math.max(comprimentos[i], profundidades[i]));
+                razoes[i] = menor > 0 ? maiores[i] / menor : Double.NaN;
+            }
+
+            for (int i = 0; i < tamanho; i++) {
+                areas[i] = areaSuperficial(alturas[i], comprimentos[i], profundidades[i]);
+            }
+
+            incompletas = 0;
+            for (int i = 0; i < tamanho; i++) {
+                esfericidades[i] = volumes[i] > 0
+                        ? Math.cbrt(Math.PI) * Math.pow(6 * volumes[i], 2.0 / 3) / areas[i]
+                        : Double.NaN;
+                if (!(volumes[i] > 0)) {
+                    incompletas++;
+                }
+            }
+
+            Arrays.fill(porCategoria, 0);
+            Categoria[] valores = Categoria.values();
+            for (int i = 0; i < tamanho; i++) {
+                int indice = (maiores[i] >= limitesPequena[i] ? 1 : 0) + (maiores[i] >= limitesMedia[i] ? 1 : 0)
+                        + (maiores[i] >= limitesGrande[i] ? 1 : 0);
+                categorias[i] = valores[indice];
+                porCategoria[indice]++;
+            }
+            return this;
+        }
+
+        public int getTamanho() {
+            return tamanho;
+        }
+
+        public int getId(int posicao) {
+            return ids[posicao];
+        }
+
+        public double getVolume(int posicao) {
+            return volumes[posicao];
+        }
+
+        public double getAreaSuperficial(int posicao) {
+            return areas[posicao];
+        }
+
+        public double getRazaoDeAspecto(int posicao) {
+            return razoes[posicao];
+        }
+
+        public double getEsfericidade(int posicao) {
+            return esfericidades[posicao];
+        }
+
+        public Categoria getCategoria(int posicao) {
+            return categorias[posicao];
+        }
+
+        /** Soma dos volumes, em mm³. */
+        public double getVolumeTotal() {
+            return volumeTotal;
+        }
+
+        public int getQuantidade(Categoria categoria) {
+            return porCategoria[categoria.ordinal()];
+        }
+
+        /** Amostras sem alguma das três medidas. */
+        public int getIncompletas() {
+            return incompletas;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder texto = new StringBuilder();
+            texto.append(tamanho).append(" amostras, volume total ")
+                    .append(String.format("%.1f", volumeTotal)).append(" mm³");
+            for (Categoria categoria : Categoria.values()) {
+                texto.append(", ").append(porCategoria[categoria.ordinal()]).append(' ')
+                        .append(categoria.name().toLowerCase());
+            }
+            return texto.append(", ").append(incompletas).append(" incompletas").toString();
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package br.com.lumepath.codec;
+
+import br.com.lumepath.bean.Amostra;
+import br.com.lumepath.bean.AnalisePatologica;
+import br.com.lumepath.bean.Leitor;
+import br.com.lumepath.bean.Paciente;
+import br.com.lumepath.bean.PatologistaResponsavel;
+import br.com.lumepath.utils.Auditoria;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Ida e volta dos registros do {@link CodecBinario}. Roda sem tela: um diálogo aberto pela
+ * leitura falharia com {@code HeadlessException}.
+ *
+ * @author Ricardo
+ * @version 1.0
+ */
+class CodecBinarioTest {
+
+    @BeforeAll
+    static void semTela() {
+        System.setProperty("java.awt.headless", "true");
+    }
+
+    @AfterEach
+    void desligarAuditoria() {
+        Auditoria.ativar(false);
+    }
+
+    @Test
+    void paciente() {
+        Paciente original = new Paciente(10, "Maria Souza", "52998224725", "15-03-1980", "F", 4411);
+
+        Paciente lido = idaEVolta(original, CodecBinario::escreverPaciente, CodecBinario::lerPaciente);
+
+        assertEquals(original.getId(), lido.getId());
+        assertEquals(original.getNome(), lido.getNome());
+        assertEquals(original.getCpf(), lido.getCpf());
+        assertEquals(original.getDataDeNascimento(), lido.getDataDeNascimento());
+        assertEquals(original.getSexo(), lido.getSexo());
+        assertEquals(original.getCodigoProntuario(), lido.getCodigoProntuario());
+    }
+
+    @Test
+    void amostraComIncertezas() {
+        Amostra original = amostra(20, LocalDate.of(2024, 5, 2));
+
+        Amostra lida = idaEVolta(original, CodecBinario::escreverAmostra, CodecBinario::lerAmostra);
+
+        assertAmostra(original, lida);
+    }
+
+    @Test
+    void analiseComAmostraEPatologista() {
+        AnalisePatologica original = analise(30, amostra(31, LocalDate.of(2024, 5, 2)), patologista());
+
+        AnalisePatologica lida = idaEVolta(original, CodecBinario::escreverAnalise, CodecBinario::lerAnalise);
+
+        assertEquals(original.getId(), lida.getId());
+        assertEquals(original.getDataAnalise(), lida.getDataAnalise());
+        assertEquals(original.getDescricao(), lida.getDescricao());
+        assertEquals(original.getDiagnosticoPreliminar(), lida.getDiagnosticoPreliminar());
+        assertAmostra(original.getAmostra(), lida.getAmostra());
+        PatologistaResponsavel patologista = lida.getPatologistaResponsavel();
+        assertEquals(original.getPatologistaResponsavel().getId(), patologista.getId());
+        assertEquals(original.getPatologistaResponsavel().getNome(), patologista.getNome());
+        assertEquals(original.getPatologistaResponsavel().getCrm(), patologista.getCrm());
+        assertEquals(original.getPatologistaResponsavel().getEspecialidade(), patologista.getEspecialidade());
+        assertEquals(original.getPatologistaResponsavel().getEmail(), patologista.getEmail());
+    }
+
+    @Test
+    void analiseSemAmostraNemPatologista() {
+        AnalisePatologica original = AnalisePatologica.restaurar(40, LocalDate.of(2024, 1, 9), "Descrição", null,
+                null, null);
+
+        AnalisePatologica lida = idaEVolta(original, CodecBinario::escreverAnalise, CodecBinario::lerAnalise);
+
+        assertEquals(40, lida.getId());
+        assertEquals("Descrição", lida.getDescricao());
+        assertNull(lida.getDiagnosticoPreliminar());
+        assertNull(lida.getAmostra());
+        assertNull(lida.getPatologistaResponsavel());
+    }
+
+    @Test
+    void leituras() {
+        Leitor original = new Leitor(null, null);
+        original.setLeituraAltura(1.25);
+        original.setLeituraComprimento(3.5);
+        original.setLeituraProfundidade(0.75);
+        original.setLeituraCameraAltura(1.3);
+        original.setLeituraCameraComprimento(3.4);
+        original.setUltimaLeitura(LocalDateTime.of(2024, 5, 2, 14, 30, 15, 123_000_000));
+
+        ByteBuffer buffer = ByteBuffer.allocate(CodecBinario.TAMANHO_MAXIMO_LEITURAS);
+        new CodecBinario().escreverLeituras(buffer, original);
+        buffer.flip();
+        Leitor lido = new Leitor(null, null);
+        new CodecBinario().lerLeituras(buffer, lido);
+
+        assertFalse(buffer.hasRemaining());
+        assertEquals(original.getLeituraAltura(), lido.getLeituraAltura());
+        assertEquals(original.getLeituraComprimento(), lido.getLeituraComprimento());
+        assertEquals(original.getLeituraProfundidade(), lido.getLeituraProfundidade());
+        assertEquals(original.getLeituraCameraAltura(), lido.getLeituraCameraAltura());
+        assertEquals(original.getLeituraCameraComprimento(), lido.getLeituraCameraComprimento());
+        assertEquals(original.getUltimaLeitura(), lido.getUltimaLeitura());
+    }
+
+    @Test
+    void dicionarioEntreRegistros() {
+        PatologistaResponsavel patologista = patologista();
+        AnalisePatologica primeira = analise(50, amostra(51, LocalDate.of(2024, 5, 2)), patologista);
+        AnalisePatologica segunda = analise(52, amostra(53, LocalDate.of(2024, 5, 3)), patologista);
+
+        CodecBinario escrita = new CodecBinario();
+        ByteBuffer buffer = ByteBuffer.allocate((int) (CodecBinario.tamanhoMaximo(primeira)
+                + CodecBinario.tamanhoMaximo(segunda)));
+        escrita.escreverAnalise(buffer, primeira);
+        int tamanhoPrimeira = buffer.position();
+        escrita.escreverAnalise(buffer, segunda);
+        // Os textos repetidos da segunda análise vão como índices do dicionário
+        assertTrue(buffer.position() - tamanhoPrimeira < tamanhoPrimeira);
+        buffer.flip();
+
+        CodecBinario leitura = new CodecBinario();
+        assertEquals(50, leitura.lerAnalise(buffer).getId());
+        AnalisePatologica lida = leitura.lerAnalise(buffer);
+        assertEquals(52, lida.getId());
+        assertEquals(patologista.getNome(), lida.getPatologistaResponsavel().getNome());
+        assertEquals(segunda.getAmostra().getLocalAnatomico(), lida.getAmostra().getLocalAnatomico());
+        assertFalse(buffer.hasRemaining());
+    }
+
+    @Test
+    void tamanhoMaximoCobreTextosLongos() {
+        AnalisePatologica original = AnalisePatologica.restaurar(60, LocalDate.of(2024, 5, 2), "é".repeat(5000),
+                "🔬".repeat(700), amostra(61, LocalDate.of(2024, 5, 2)), patologista());
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) CodecBinario.tamanhoMaximo(original));
+        new CodecBinario().escreverAnalise(buffer, original);
+        buffer.flip();
+        AnalisePatologica lida = new CodecBinario().lerAnalise(buffer);
+
+        assertEquals(original.getDescricao(), lida.getDescricao());
+        assertEquals(original.getDiagnosticoPreliminar(), lida.getDiagnosticoPreliminar());
+    }
+
+    @Test
+    void leituraNaoValidaNemAudita() {
+        // Uma data depois de hoje seria recusada pelo setter com um diálogo
+        LocalDate amanha = LocalDate.now().plusDays(1);
+        AnalisePatologica original = analise(70, amostra(71, amanha), patologista());
+        Auditoria.ativar(true);
+        long registrados = Auditoria.getRegistrados();
+
+        AnalisePatologica lida = idaEVolta(original, CodecBinario::escreverAnalise, CodecBinario::lerAnalise);
+
+        assertEquals(amanha, lida.getAmostra().getDataDeColeta());
+        assertEquals(registrados, Auditoria.getRegistrados());
+        assertEquals(0, lida.getVersao());
+    }
+
+    @Test
+    void pacienteSemDataDeNascimento() {
+        // Restaurado de um JSON sem o campo, ou cadastrado com uma data recusada pelo setter
+        Paciente original = Paciente.restaurar(80, "João Lima", "52998224725", null, "M", 12);
+
+        Paciente lido = idaEVolta(original, CodecBinario::escreverPaciente, CodecBinario::lerPaciente);
+
+        assertNull(lido.getDataDeNascimento());
+        assertEquals("João Lima", lido.getNome());
+    }
+
+    @Test
+    void tipoEspiadoSemConsumir() {
+        ByteBuffer buffer = ByteBuffer.allocate(CodecBinario.TAMANHO_MAXIMO_LEITURAS);
+        new CodecBinario().escreverLeituras(buffer, new Leitor(null, null));
+        buffer.flip();
+
+        assertEquals(CodecBinario.TIPO_LEITURA, CodecBinario.espiarTipo(buffer));
+        assertEquals(0, buffer.position());
+    }
+
+    private interface Escrita<T> {
+        void escrever(CodecBinario codec, ByteBuffer buffer, T valor);
+    }
+
+    private interface Leitura<T> {
+        T ler(CodecBinario codec, ByteBuffer buffer);
+    }
+
+    private static <T> T idaEVolta(T valor, Escrita<T> escrita, Leitura<T> leitura) {
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        escrita.escrever(new CodecBinario(), buffer, valor);
+        buffer.flip();
+        T lido = leitura.ler(new CodecBinario(), buffer);
+        assertFalse(buffer.hasRemaining(), "registro não foi lido até o fim");
+        return lido;
+    }
+
+    private static Amostra amostra(int id, LocalDate dataDeColeta) {
+        return Amostra.restaurar(id, dataDeColeta, "Hospital Central", "Biópsia", "Pele", 12.5, 4.25, 3.0,
+                0.05, 0.02, 0.01);
+    }
+
+    private static PatologistaResponsavel patologista() {
+        return new PatologistaResponsavel(1, "Ana Lima", "SP-123456", "Dermatopatologia", "ana@lumepath.com");
+    }
+
+    private static AnalisePatologica analise(int id, Amostra amostra, PatologistaResponsavel patologista) {
+        return AnalisePatologica.restaurar(id, LocalDate.of(2024, 5, 6), "Lesão pigmentada irregular",
+                "Nevo displásico", amostra, patologista);
+    }
+
+    private static void assertAmostra(Amostra esperada, Amostra lida) {
+        assertEquals(esperada.getId(), lida.getId());
+        assertEquals(esperada.getDataDeColeta(), lida.getDataDeColeta());
+        assertEquals(esperada.getLocalDaColeta(), lida.getLocalDaColeta());
+        assertEquals(esperada.getTipoDeColeta(), lida.getTipoDeColeta());
+        assertEquals(esperada.getLocalAnatomico(), lida.getLocalAnatomico());
+        assertEquals(esperada.getComprimento(), lida.getComprimento());
+        assertEquals(esperada.getProfundidade(), lida.getProfundidade());
+        assertEquals(esperada.getAltura(), lida.getAltura());
+        assertEquals(esperada.getIncertezaComprimento(), lida.getIncertezaComprimento());
+        assertEquals(esperada.getIncertezaProfundidade(), lida.getIncertezaProfundidade());
+        assertEquals(esperada.getIncertezaAltura(), lida.getIncertezaAltura());
+        assertNull(lida.getPaciente());
+    }
+}
@@ -0,0 +1,97 @@
+package br.com.lumepath.service;
+
+import br.com.lumepath.bean.Leitor;
+import br.com.lumepath.codec.CodecBinario;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Gravação do {@link Armazenamento} quando o disco falha no meio de um lote.
+ *
+ * @author Ricardo
+ * @version 1.0
+ */
+class ArmazenamentoTest {
+
+    @TempDir
+    Path pasta;
+
+    @BeforeAll
+    static void semTela() {
+        System.setProperty("java.awt.headless", "true");
+    }
+
+    @Test
+    void loteQueFalhaNaoDerrubaOsSeguintes() throws Exception {
+        Path arquivo = pasta.resolve("leituras.dat");
+        CanalComFalha canal = abrir(arquivo);
+        try (Armazenamento armazenamento = new Armazenamento(canal, 1, 0)) {
+            armazenamento.gravarLeitura(leitor(1.0)).join();
+            canal.armar(false);
+            CompletableFuture<Void> falhou = armazenamento.gravarLeitura(leitor(2.0));
+            assertThrows(CompletionException.class, falhou::join);
+            armazenamento.gravarLeitura(leitor(3.0)).join();
+            armazenamento.gravarLeitura(leitor(4.0)).join();
+        }
+
+        assertEquals(List.of(1.0, 3.0, 4.0), alturas(arquivo));
+
+        // Reabrir não descarta nada e acrescenta depois do último registro
+        try (Armazenamento armazenamento = new Armazenamento(arquivo, 1, 0)) {
+            armazenamento.gravarLeitura(leitor(5.0)).join();
+        }
+        assertEquals(List.of(1.0, 3.0, 4.0, 5.0), alturas(arquivo));
+    }
+
+    @Test
+    void semDesfazerOLoteRecusaAsGravacoesSeguintes() throws Exception {
+        Path arquivo = pasta.resolve("leituras.dat");
+        CanalComFalha canal = abrir(arquivo);
+        try (Armazenamento armazenamento = new Armazenamento(canal, 1, 0)) {
+            armazenamento.gravarLeitura(leitor(1.0)).join();
+            canal.armar(true);
+            assertThrows(CompletionException.class, armazenamento.gravarLeitura(leitor(2.0))::join);
+            CompletionException recusada = assertThrows(CompletionException.class,
+                    armazenamento.gravarLeitura(leitor(3.0))::join);
+            assertTrue(recusada.getCause().getMessage().contains("desativado"));
+        }
+
+        // Nenhuma gravação foi confirmada depois do registro pela metade
+        assertEquals(List.of(1.0), alturas(arquivo));
+    }
+
+    private static CanalComFalha abrir(Path arquivo) throws Exception {
+        return new CanalComFalha(FileChannel.open(arquivo, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE));
+    }
+
+    private static Leitor leitor(double altura) {
+        Leitor leitor = new Leitor(null, null);
+        leitor.setLeituraAltura(altura);
+        return leitor;
+    }
+
+    private static List<Double> alturas(Path arquivo) throws Exception {
+        List<Double> alturas = new ArrayList<>();
+        Armazenamento.percorrer(arquivo, registro -> {
+            Leitor lido = new Leitor(null, null);
+            new CodecBinario().lerLeituras(registro, lido);
+            alturas.add(lido.getLeituraAltura());
+        });
+        return alturas;
+    }
+}
@@ -0,0 +1,142 @@
+package br.com.lumepath.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Canal de arquivo que, quando armado, grava só parte da próxima escrita e falha na seguinte,
+ * como um disco cheio no meio de um lote.
+ *
+ * @author Ricardo
+ * @version 1.0
+ */
+class CanalComFalha extends FileChannel {
+
+    private final FileChannel canal;
+    private boolean armado;
+    private boolean falharEscrita;
+    private boolean falharTruncamento;
+
+    CanalComFalha(FileChannel canal) {
+        this.canal = canal;
+    }
+
+    /**
+     * Faz a próxima escrita gravar metade dos bytes e a seguinte falhar.
+     *
+     * @param falharTruncamento se o truncamento também deve falhar, impedindo desfazer o lote.
+     */
+    void armar(boolean falharTruncamento) {
+        this.armado = true;
+        this.falharTruncamento = falharTruncamento;
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        return (int) write(new ByteBuffer[]{src}, 0, 1);
+    }
+
+    @Override
+    public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+        if (falharEscrita) {
+            falharEscrita = false;
+            throw new IOException("Sem espaço no dispositivo (simulado).");
+        }
+        if (armado) {
+            armado = false;
+            falharEscrita = true;
+            ByteBuffer primeiro = srcs[offset];
+            ByteBuffer metade = primeiro.duplicate();
+            metade.limit(metade.position() + Math.max(1, metade.remaining() / 2));
+            int gravados = canal.write(metade);
+            primeiro.position(primeiro.position() + gravados);
+            return gravados;
+        }
+        return canal.write(srcs, offset, length);
+    }
+
+    @Override
+    public FileChannel truncate(long size) throws IOException {
+        if (falharTruncamento) {
+            throw new IOException("Falha ao truncar (simulada).");
+        }
+        canal.truncate(size);
+        return this;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        return canal.read(dst);
+    }
+
+    @Override
+    public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+        return canal.read(dsts, offset, length);
+    }
+
+    @Override
+    public long position() throws IOException {
+        return canal.position();
+    }
+
+    @Override
+    public FileChannel position(long newPosition) throws IOException {
+        canal.position(newPosition);
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        return canal.size();
+    }
+
+    @Override
+    public void force(boolean metaData) throws IOException {
+        canal.force(metaData);
+    }
+
+    @Override
+    public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+        return canal.transferTo(position, count, target);
+    }
+
+    @Override
+    public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+        return canal.transferFrom(src, position, count);
+    }
+
+    @Override
+    public int read(ByteBuffer dst, long position) throws IOException {
+        return canal.read(dst, position);
+    }
+
+    @Override
+    public int write(ByteBuffer src, long position) throws IOException {
+        return canal.write(src, position);
+    }
+
+    @Override
+    public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+        return canal.map(mode, position, size);
+    }
+
+    @Override
+    public FileLock lock(long position, long size, boolean shared) throws IOException {
+        return canal.lock(position, size, shared);
+    }
+
+    @Override
+    public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+        return canal.tryLock(position, size, shared);
+    }
+
+    @Override
+    protected void implCloseChannel() throws IOException {
+        canal.close();
+    }
+}